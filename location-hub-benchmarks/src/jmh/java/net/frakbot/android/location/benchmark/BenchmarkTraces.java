@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.benchmark;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.util.Random;
+
+/**
+ * Synthetic traces feeding the benchmarks, the same on every run.
+ */
+public final class BenchmarkTraces {
+    public static final double START_LATITUDE = 45.4642;
+    public static final double START_LONGITUDE = 9.1900;
+
+    private static final long SEED = 0x4C484231;
+    private static final double METERS_PER_DEGREE = LocationFix.EARTH_RADIUS * Math.PI / 180;
+
+    private BenchmarkTraces() {
+    }
+
+    /**
+     * Generates a walk at about 1.5 m/s with one fix per second, and GPS-like noise and accuracy.
+     *
+     * @param count The number of fixes.
+     * @return The {@link net.frakbot.android.location.common.LocationFix}es, oldest first.
+     */
+    public static LocationFix[] walk(int count) {
+        Random random = new Random(SEED);
+        LocationFix[] fixes = new LocationFix[count];
+        double latitude = START_LATITUDE;
+        double longitude = START_LONGITUDE;
+        double heading = 0;
+        long time = 1393000000000L;
+        double cos = Math.cos(Math.toRadians(START_LATITUDE));
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.3;
+            latitude += 1.5 * Math.cos(heading) / METERS_PER_DEGREE;
+            longitude += 1.5 * Math.sin(heading) / (METERS_PER_DEGREE * cos);
+            float accuracy = 4 + (float) Math.abs(random.nextGaussian() * 10);
+            double noise = accuracy / METERS_PER_DEGREE;
+            fixes[i] = new LocationFix("gps", time, time * 1000000L,
+                    latitude + random.nextGaussian() * noise, longitude + random.nextGaussian() * noise / cos,
+                    120, accuracy, 1.5f, (float) Math.toDegrees(heading));
+            time += 1000;
+        }
+        return fixes;
+    }
+}
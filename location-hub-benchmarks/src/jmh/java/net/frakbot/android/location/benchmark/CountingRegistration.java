@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.benchmark;
+
+import net.frakbot.android.location.common.LocationFix;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.dispatch.FixRegistration;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link net.frakbot.android.location.dispatch.FixRegistration} of a listener that only counts
+ * what it receives, so the benchmarks measure the delivery path and not the listener.
+ */
+public class CountingRegistration extends FixRegistration<LocationFix> {
+    private long mCount;
+
+    public CountingRegistration(LocationHubRequest request, Executor executor) {
+        super(request, executor, null);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    @Override
+    protected double getLatitude(LocationFix fix) {
+        return fix.getLatitude();
+    }
+
+    @Override
+    protected double getLongitude(LocationFix fix) {
+        return fix.getLongitude();
+    }
+
+    @Override
+    protected long getElapsedAgeNanos(LocationFix fix) {
+        // The trace is synthetic, any age works for the histogram
+        return fix.getElapsedRealtimeNanos() & 0xFFFFFFFL;
+    }
+
+    @Override
+    protected void onFix(LocationFix fix) {
+        mCount++;
+    }
+
+    @Override
+    protected void onFixBatch(List<LocationFix> fixes) {
+        mCount += fixes.size();
+    }
+}
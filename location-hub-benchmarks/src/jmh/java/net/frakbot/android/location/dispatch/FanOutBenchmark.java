@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.benchmark.BenchmarkTraces;
+import net.frakbot.android.location.benchmark.CountingRegistration;
+import net.frakbot.android.location.common.LocationFix;
+import net.frakbot.android.location.common.LocationHubRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the fan-out of a fix to the registered listeners, against the listener count.
+ * <p/>
+ * Each operation delivers one fix to every registration, as the dispatcher does, through the
+ * {@link net.frakbot.android.location.common.DeliveryGate}, the latency histograms and either a
+ * direct call, a {@link net.frakbot.android.location.dispatch.ListenerMailbox} or a batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+    private static final int TRACE_SIZE = 1024;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Param({"1", "4", "16", "64"})
+    public int listenerCount;
+
+    /**
+     * How the fixes reach the listeners: called on the dispatching thread, posted to a mailbox
+     * drained on a direct executor, or buffered in batches of 10.
+     */
+    @Param({"direct", "mailbox", "batched"})
+    public String delivery;
+
+    /**
+     * Smallest displacement of the requests, 0 lets every fix through, 20 suppresses about half.
+     */
+    @Param({"0", "20"})
+    public float smallestDisplacement;
+
+    private CountingRegistration[] mRegistrations;
+    private LocationFix[] mTrace;
+    private int mNext;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        LocationHubRequest request = new LocationHubRequest()
+                .setInterval(1000)
+                .setSmallestDisplacement(smallestDisplacement);
+        if ("batched".equals(delivery)) {
+            request.setBatchSize(10);
+        }
+        Executor executor = "mailbox".equals(delivery) ? DIRECT_EXECUTOR : null;
+        mRegistrations = new CountingRegistration[listenerCount];
+        for (int i = 0; i < listenerCount; i++) {
+            mRegistrations[i] = new CountingRegistration(request, executor);
+        }
+        mTrace = BenchmarkTraces.walk(TRACE_SIZE);
+    }
+
+    @Benchmark
+    public int fanOut() {
+        LocationFix fix = mTrace[mNext];
+        mNext = (mNext + 1) & (TRACE_SIZE - 1);
+        mNow += 1000;
+        int accepted = 0;
+        for (FixRegistration<LocationFix> registration : mRegistrations) {
+            if (registration.deliver(fix, mNow)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
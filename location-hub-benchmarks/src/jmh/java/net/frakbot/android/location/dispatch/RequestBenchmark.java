@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and validating a {@link net.frakbot.android.location.common.LocationHubRequest},
+ * and of mapping the active requests to the coalesced subscription as happens on every listener
+ * registration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+    private static final int[] PRIORITIES = {
+            LocationHubRequest.PRIORITY_HIGH_ACCURACY, LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY,
+            LocationHubRequest.PRIORITY_LOW_POWER, LocationHubRequest.PRIORITY_NO_POWER
+    };
+
+    /**
+     * Number of requests already registered when a listener comes and goes.
+     */
+    @Param({"1", "16", "256"})
+    public int activeRequests;
+
+    private RequestCoalescer mCoalescer;
+    private LocationHubRequest mRequest;
+    private LocationHubRequest mSubscription;
+    private int mPriority;
+    private long mInterval;
+    private float mDisplacement;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(activeRequests);
+        mCoalescer = new RequestCoalescer();
+        for (int i = 0; i < activeRequests; i++) {
+            mCoalescer.add(new LocationHubRequest()
+                    .setPriority(PRIORITIES[random.nextInt(PRIORITIES.length)])
+                    .setInterval(1000 * (1 + random.nextInt(60)))
+                    .setSmallestDisplacement(random.nextInt(50)));
+        }
+        mSubscription = mCoalescer.build();
+        mPriority = LocationHubRequest.PRIORITY_HIGH_ACCURACY;
+        mInterval = 500;
+        mDisplacement = 1;
+        mRequest = buildRequest();
+    }
+
+    /**
+     * Builds a request through the validating setters, as every caller does.
+     */
+    @Benchmark
+    public LocationHubRequest buildRequest() {
+        return new LocationHubRequest()
+                .setPriority(mPriority)
+                .setInterval(mInterval)
+                .setFastestInterval(mInterval / 2)
+                .setSmallestDisplacement(mDisplacement)
+                .setMaxWaitTime(mInterval * 10)
+                .setBatchSize(10);
+    }
+
+    /**
+     * Registers and unregisters a request, rebuilding the subscription and checking whether it
+     * has to be placed again each time.
+     */
+    @Benchmark
+    public boolean coalesce() {
+        mCoalescer.add(mRequest);
+        boolean changed = !RequestCoalescer.isSameRequest(mCoalescer.build(), mSubscription);
+        mCoalescer.remove(mRequest);
+        return RequestCoalescer.isSameRequest(mCoalescer.build(), mSubscription) && changed;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.filter;
+
+import net.frakbot.android.location.benchmark.BenchmarkTraces;
+import net.frakbot.android.location.common.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of the {@link net.frakbot.android.location.filter.KalmanLocationFilter}, through the
+ * allocation-free {@link KalmanLocationFilter#update(double, double, float, long)} and through
+ * {@link KalmanLocationFilter#filter(net.frakbot.android.location.common.LocationFix)}, which
+ * allocates the smoothed fix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalmanLocationFilterBenchmark {
+    private static final int TRACE_SIZE = 1024;
+
+    private KalmanLocationFilter mFilter;
+    private LocationFix[] mTrace;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mFilter = new KalmanLocationFilter();
+        mTrace = BenchmarkTraces.walk(TRACE_SIZE);
+    }
+
+    @Benchmark
+    public boolean update() {
+        LocationFix fix = next();
+        return mFilter.update(fix.getLatitude(), fix.getLongitude(), fix.getAccuracy(), fix.getTime());
+    }
+
+    @Benchmark
+    public LocationFix filter() {
+        return mFilter.filter(next());
+    }
+
+    /**
+     * Returns the next fix of the trace, restarting the filter when the trace wraps around, since
+     * older fixes would be ignored.
+     */
+    private LocationFix next() {
+        if (mNext == 0) {
+            mFilter.reset();
+        }
+        LocationFix fix = mTrace[mNext];
+        mNext = (mNext + 1) & (TRACE_SIZE - 1);
+        return fix;
+    }
+}
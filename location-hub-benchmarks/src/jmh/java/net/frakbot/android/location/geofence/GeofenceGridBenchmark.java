@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.geofence;
+
+import net.frakbot.android.location.benchmark.BenchmarkTraces;
+import net.frakbot.android.location.common.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of finding the candidate geofences of a location in the
+ * {@link net.frakbot.android.location.geofence.GeofenceGrid}, against the number of geofences
+ * registered around the trace.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceGridBenchmark {
+    private static final int TRACE_SIZE = 1024;
+    private static final double CELL_SIZE = 0.01;
+    private static final double AREA_SPAN = 0.2;
+
+    @Param({"16", "256", "4096"})
+    public int geofenceCount;
+
+    private GeofenceGrid mGrid;
+    private LocationFix[] mTrace;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(geofenceCount);
+        mGrid = new GeofenceGrid(CELL_SIZE);
+        for (int fence = 0; fence < geofenceCount; fence++) {
+            double latitude = BenchmarkTraces.START_LATITUDE + (random.nextDouble() - 0.5) * AREA_SPAN;
+            double longitude = BenchmarkTraces.START_LONGITUDE + (random.nextDouble() - 0.5) * AREA_SPAN;
+            // Radii from 50 to 500 meters, covering one to a few cells
+            double span = (50 + random.nextInt(450)) / 111000.0;
+            for (int row = mGrid.getLatitudeCell(latitude - span); row <= mGrid.getLatitudeCell(latitude + span); row++) {
+                for (int column = mGrid.getLongitudeCell(longitude - span); column <= mGrid.getLongitudeCell(longitude + span); column++) {
+                    mGrid.add(GeofenceGrid.getKey(row, column), fence);
+                }
+            }
+        }
+        mTrace = BenchmarkTraces.walk(TRACE_SIZE);
+    }
+
+    @Benchmark
+    public int lookup() {
+        LocationFix fix = mTrace[mNext];
+        mNext = (mNext + 1) & (TRACE_SIZE - 1);
+        int slot = mGrid.find(GeofenceGrid.getKey(mGrid.getLatitudeCell(fix.getLatitude()),
+                mGrid.getLongitudeCell(fix.getLongitude())));
+        if (slot < 0) {
+            return 0;
+        }
+        int[] members = mGrid.getMembers(slot);
+        int size = mGrid.getSize(slot);
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += members[i];
+        }
+        return sum;
+    }
+}
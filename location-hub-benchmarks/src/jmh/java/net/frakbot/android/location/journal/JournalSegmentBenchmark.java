@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.journal;
+
+import net.frakbot.android.location.benchmark.BenchmarkTraces;
+import net.frakbot.android.location.common.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-fix cost of encoding a fix into a memory-mapped
+ * {@link net.frakbot.android.location.journal.JournalSegment}, and of decoding a time range back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalSegmentBenchmark {
+    private static final int TRACE_SIZE = 1024;
+    private static final int CAPACITY = 1 << 20;
+    private static final int INDEX_STRIDE = 64;
+
+    private File mFile;
+    private JournalSegment mSegment;
+    private JournalSegment mFullSegment;
+    private LocationFix[] mTrace;
+    private int mNext;
+    private long mChecksum;
+
+    private final JournalVisitor mVisitor = new JournalVisitor() {
+        @Override
+        public boolean onRecord(long time, double latitude, double longitude, float altitude,
+                                float accuracy, float speed, float bearing) {
+            mChecksum += time;
+            return true;
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        mTrace = BenchmarkTraces.walk(TRACE_SIZE);
+        File full = File.createTempFile("journal-full", ".seg");
+        full.delete();
+        full.deleteOnExit();
+        mFullSegment = new JournalSegment(full, TRACE_SIZE, INDEX_STRIDE);
+        for (LocationFix fix : mTrace) {
+            append(mFullSegment, fix);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openSegment() throws IOException {
+        mFile = File.createTempFile("journal", ".seg");
+        mFile.delete();
+        mSegment = new JournalSegment(mFile, CAPACITY, INDEX_STRIDE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteSegment() {
+        mSegment = null;
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int append() throws IOException {
+        if (mSegment.isFull()) {
+            deleteSegment();
+            openSegment();
+        }
+        append(mSegment, mTrace[mNext]);
+        mNext = (mNext + 1) & (TRACE_SIZE - 1);
+        return mSegment.getCount();
+    }
+
+    /**
+     * Decodes a one minute window out of the segment, finding its start through the sparse index.
+     */
+    @Benchmark
+    public long query() {
+        long from = mTrace[mNext].getTime();
+        mNext = (mNext + 1) & (TRACE_SIZE - 1);
+        mFullSegment.query(from, from + 60 * 1000, mVisitor);
+        return mChecksum;
+    }
+
+    private static void append(JournalSegment segment, LocationFix fix) {
+        segment.append(fix.getTime(), fix.getLatitude(), fix.getLongitude(), fix.getAltitude(),
+                fix.getAccuracy(), fix.getSpeed(), fix.getBearing());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into a {@link net.frakbot.android.location.metrics.LatencyHistogram}, which
+ * happens twice per listener callback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+    private static final int SAMPLE_COUNT = 1024;
+
+    private LatencyHistogram mHistogram;
+    private long[] mSamples;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SAMPLE_COUNT);
+        mHistogram = new LatencyHistogram();
+        mSamples = new long[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            // Log-uniform from a microsecond to a second
+            mSamples[i] = (long) Math.pow(10, 3 + random.nextDouble() * 6);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mHistogram.record(mSamples[mNext]);
+        mNext = (mNext + 1) & (SAMPLE_COUNT - 1);
+    }
+
+    @Benchmark
+    public HistogramSnapshot snapshot() {
+        return mHistogram.snapshot(false);
+    }
+}
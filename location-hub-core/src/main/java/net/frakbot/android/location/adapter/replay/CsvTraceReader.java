@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace of comma separated values, one fix per line:
+ * <pre>
+ * time,latitude,longitude[,altitude[,accuracy[,speed[,bearing]]]]
+ * </pre>
+ * The time is in milliseconds since January 1, 1970 or in ISO 8601 format, the other values in degrees, meters and
+ * meters/second. Empty optional values are left unset. Blank lines, lines starting with # and a
+ * header line are skipped.
+ */
+public class CsvTraceReader implements TraceReader {
+    private final BufferedReader mReader;
+    private final String mProvider;
+    private final TraceTimeParser mTimeParser;
+    private int mLineNumber;
+
+    public CsvTraceReader(Reader reader, String provider) {
+        mReader = new BufferedReader(reader);
+        mProvider = provider;
+        mTimeParser = new TraceTimeParser();
+    }
+
+    @Override
+    public LocationFix next() throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            mLineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#' || !isNumberStart(line.charAt(0))) {
+                continue;
+            }
+            try {
+                return parse(line);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed CSV trace at line " + mLineNumber + ": " + line);
+            }
+        }
+        return null;
+    }
+
+    private LocationFix parse(String line) throws IOException, NumberFormatException {
+        String[] values = line.split(",", -1);
+        if (values.length < 3) {
+            throw new IOException("Missing coordinates in the CSV trace at line " + mLineNumber);
+        }
+        String time = values[0].trim();
+        return new LocationFix(mProvider,
+                time.indexOf('T') > 0 ? mTimeParser.parseIso8601(time) : Long.parseLong(time), 0,
+                Double.parseDouble(values[1].trim()), Double.parseDouble(values[2].trim()),
+                parseFloat(values, 3), parseFloat(values, 4), parseFloat(values, 5), parseFloat(values, 6));
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Parses an optional value.
+     *
+     * @return the value, or NaN if it is not set.
+     */
+    private static float parseFloat(String[] values, int index) throws NumberFormatException {
+        if (index >= values.length || values[index].trim().length() == 0) {
+            return Float.NaN;
+        }
+        return Float.parseFloat(values[index].trim());
+    }
+
+    private static boolean isNumberStart(char c) {
+        return Character.isDigit(c) || c == '-';
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the track points, or the route points, of a GPX file as a stream, so only the point being
+ * read is held in memory.
+ * <p/>
+ * The position, elevation and time of a point are read, together with the speed and course
+ * elements of GPX 1.0 and the HDOP, turned into an accuracy through {@link NmeaTraceReader#HDOP_ACCURACY}.
+ * Points without a time are skipped, since they can't be replayed.
+ * <p/>
+ * The XML pull parser of Android is not available on a plain JVM, so the tags are scanned by hand.
+ * Only what a GPX file needs is supported: comments, processing instructions, declarations, CDATA
+ * sections and the predefined entities are handled, and namespace prefixes are ignored.
+ */
+public class GpxTraceReader implements TraceReader {
+    private final BufferedReader mReader;
+    private final String mProvider;
+    private final TraceTimeParser mTimeParser;
+    private final StringBuilder mTag;
+    private final StringBuilder mText;
+
+    private String mName;
+    private int mNameEnd;
+    private boolean isEndTag;
+    private boolean isEmptyTag;
+
+    public GpxTraceReader(Reader reader, String provider) {
+        mReader = new BufferedReader(reader);
+        mProvider = provider;
+        mTimeParser = new TraceTimeParser();
+        mTag = new StringBuilder();
+        mText = new StringBuilder();
+    }
+
+    @Override
+    public LocationFix next() throws IOException {
+        try {
+            while (nextTag()) {
+                if (!isEndTag && ("trkpt".equals(mName) || "rtept".equals(mName))) {
+                    LocationFix fix = readPoint();
+                    if (fix != null) {
+                        return fix;
+                    }
+                }
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed GPX value: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Reads the point starting at the current tag, up to its end tag.
+     *
+     * @return The {@link net.frakbot.android.location.common.LocationFix}, or null if the point has no time.
+     */
+    private LocationFix readPoint() throws IOException, NumberFormatException {
+        String point = mName;
+        String latitude = getAttribute("lat");
+        String longitude = getAttribute("lon");
+        if (latitude == null || longitude == null) {
+            throw new IOException("Malformed GPX trace: a " + point + " has no coordinates");
+        }
+        long time = 0;
+        float altitude = Float.NaN;
+        float accuracy = Float.NaN;
+        float speed = Float.NaN;
+        float bearing = Float.NaN;
+        boolean isEnd = isEmptyTag;
+        String element = null;
+        while (!isEnd) {
+            if (!nextTag()) {
+                throw new IOException("Malformed GPX trace: unterminated " + point);
+            }
+            if (!isEndTag) {
+                element = isEmptyTag ? null : mName;
+                continue;
+            }
+            isEnd = point.equals(mName);
+            // The text right before the end tag of a leaf element is its value
+            if (mName.equals(element) && mText.length() > 0) {
+                String value = decodeEntities(mText.toString().trim());
+                if ("time".equals(element)) {
+                    time = mTimeParser.parseIso8601(value);
+                } else if ("ele".equals(element)) {
+                    altitude = Float.parseFloat(value);
+                } else if ("speed".equals(element)) {
+                    speed = Float.parseFloat(value);
+                } else if ("course".equals(element)) {
+                    bearing = Float.parseFloat(value);
+                } else if ("hdop".equals(element)) {
+                    accuracy = Float.parseFloat(value) * NmeaTraceReader.HDOP_ACCURACY;
+                }
+            }
+            element = null;
+        }
+        if (time <= 0) {
+            return null;
+        }
+        return new LocationFix(mProvider, time, 0, Double.parseDouble(latitude), Double.parseDouble(longitude),
+                altitude, accuracy, speed, bearing);
+    }
+
+    /**
+     * Reads up to the next start or end tag, keeping the text found before it. Comments, processing
+     * instructions and declarations are skipped, CDATA sections are added to the text.
+     *
+     * @return false at the end of the file.
+     */
+    private boolean nextTag() throws IOException {
+        mText.setLength(0);
+        int c;
+        while ((c = mReader.read()) != -1) {
+            if (c != '<') {
+                mText.append((char) c);
+                continue;
+            }
+            c = mReader.read();
+            if (c == '?') {
+                skipTo("?>");
+            } else if (c == '!') {
+                readDeclaration();
+            } else if (c != -1) {
+                readTag(c);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a tag from its first character on, up to the closing bracket.
+     */
+    private void readTag(int first) throws IOException {
+        isEndTag = first == '/';
+        mTag.setLength(0);
+        if (!isEndTag) {
+            mTag.append((char) first);
+        }
+        int c;
+        char quote = 0;
+        while ((c = mReader.read()) != -1) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            mTag.append((char) c);
+        }
+        if (c == -1) {
+            throw new IOException("Malformed GPX trace: unterminated tag <" + mTag);
+        }
+        int length = mTag.length();
+        while (length > 0 && Character.isWhitespace(mTag.charAt(length - 1))) {
+            length--;
+        }
+        isEmptyTag = length > 0 && mTag.charAt(length - 1) == '/';
+        mTag.setLength(isEmptyTag ? length - 1 : length);
+        int end = 0;
+        while (end < mTag.length() && !Character.isWhitespace(mTag.charAt(end))) {
+            end++;
+        }
+        // Namespace prefixes are ignored
+        mName = mTag.substring(mTag.lastIndexOf(":", end) + 1, end);
+        mNameEnd = end;
+    }
+
+    /**
+     * Returns the value of an attribute of the current tag.
+     *
+     * @return the value, or null if the tag has no such attribute.
+     */
+    private String getAttribute(String name) {
+        int position = mNameEnd;
+        while (position < mTag.length()) {
+            int equals = mTag.indexOf("=", position);
+            if (equals < 0) {
+                return null;
+            }
+            String attribute = mTag.substring(position, equals).trim();
+            int start = equals + 1;
+            while (start < mTag.length() && Character.isWhitespace(mTag.charAt(start))) {
+                start++;
+            }
+            if (start == mTag.length()) {
+                return null;
+            }
+            char quote = mTag.charAt(start);
+            int end = mTag.indexOf(String.valueOf(quote), start + 1);
+            if (end < 0) {
+                return null;
+            }
+            if (attribute.equals(name) || attribute.endsWith(":" + name)) {
+                return decodeEntities(mTag.substring(start + 1, end));
+            }
+            position = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the markup after a "&lt;!": the content of a CDATA section is added to the text, comments
+     * and declarations are skipped.
+     */
+    private void readDeclaration() throws IOException {
+        mReader.mark(7);
+        char[] start = new char[7];
+        int length = 0;
+        int read;
+        while (length < start.length && (read = mReader.read(start, length, start.length - length)) != -1) {
+            length += read;
+        }
+        String prefix = new String(start, 0, length);
+        if (prefix.startsWith("--")) {
+            mReader.reset();
+            mReader.skip(2);
+            skipTo("-->");
+        } else if (prefix.equals("[CDATA[")) {
+            int c;
+            int brackets = 0;
+            while ((c = mReader.read()) != -1) {
+                if (c == '>' && brackets >= 2) {
+                    mText.setLength(mText.length() - 2);
+                    return;
+                }
+                brackets = c == ']' ? brackets + 1 : 0;
+                mText.append((char) c);
+            }
+            throw new IOException("Malformed GPX trace: unterminated CDATA section");
+        } else {
+            // A declaration like DOCTYPE, with a possible internal subset in brackets
+            mReader.reset();
+            int c;
+            int depth = 0;
+            while ((c = mReader.read()) != -1) {
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == '>' && depth <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips the input up to and including the given delimiter.
+     */
+    private void skipTo(String delimiter) throws IOException {
+        int matched = 0;
+        int c;
+        while ((c = mReader.read()) != -1) {
+            if (c == delimiter.charAt(matched)) {
+                matched++;
+                if (matched == delimiter.length()) {
+                    return;
+                }
+            } else {
+                matched = c == delimiter.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Replaces the predefined XML entities and the character references in a value.
+     */
+    private static String decodeEntities(String value) {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        int position = 0;
+        while (ampersand >= 0) {
+            int semicolon = value.indexOf(';', ampersand);
+            if (semicolon < 0) {
+                break;
+            }
+            decoded.append(value, position, ampersand);
+            String entity = value.substring(ampersand + 1, semicolon);
+            if ("amp".equals(entity)) {
+                decoded.append('&');
+            } else if ("lt".equals(entity)) {
+                decoded.append('<');
+            } else if ("gt".equals(entity)) {
+                decoded.append('>');
+            } else if ("quot".equals(entity)) {
+                decoded.append('"');
+            } else if ("apos".equals(entity)) {
+                decoded.append('\'');
+            } else if (entity.startsWith("#x")) {
+                decoded.append((char) Integer.parseInt(entity.substring(2), 16));
+            } else if (entity.startsWith("#")) {
+                decoded.append((char) Integer.parseInt(entity.substring(1)));
+            } else {
+                decoded.append('&').append(entity).append(';');
+            }
+            position = semicolon + 1;
+            ampersand = value.indexOf('&', position);
+        }
+        decoded.append(value, position, value.length());
+        return decoded.toString();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace of NMEA 0183 sentences, as logged by most GPS receivers.
+ * <p/>
+ * A fix is read from every valid RMC sentence, with any talker id. The altitude and the HDOP of a
+ * GGA sentence with the same time, if it comes first, are added to the fix, the HDOP being turned
+ * into an accuracy through {@link NmeaTraceReader#HDOP_ACCURACY}. Sentences with a wrong
+ * checksum and all of the other sentences are skipped.
+ */
+public class NmeaTraceReader implements TraceReader {
+    /**
+     * Meters of accuracy for each unit of HDOP, the typical user equivalent range error of a
+     * consumer receiver.
+     */
+    public static final float HDOP_ACCURACY = 5;
+
+    private static final float KNOTS_TO_METERS_PER_SECOND = 0.514444f;
+
+    private final BufferedReader mReader;
+    private final String mProvider;
+    private final TraceTimeParser mTimeParser;
+
+    private String mGgaTime;
+    private float mGgaAltitude = Float.NaN;
+    private float mGgaHdop = Float.NaN;
+
+    public NmeaTraceReader(Reader reader, String provider) {
+        mReader = new BufferedReader(reader);
+        mProvider = provider;
+        mTimeParser = new TraceTimeParser();
+    }
+
+    @Override
+    public LocationFix next() throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() < 7 || line.charAt(0) != '$' || !isChecksumValid(line)) {
+                continue;
+            }
+            int end = line.indexOf('*');
+            String[] fields = line.substring(1, end < 0 ? line.length() : end).split(",", -1);
+            String type = fields[0].substring(Math.max(0, fields[0].length() - 3));
+            try {
+                if ("GGA".equals(type) && fields.length > 9) {
+                    onGga(fields);
+                } else if ("RMC".equals(type) && fields.length > 9 && "A".equals(fields[2])) {
+                    return parseRmc(fields);
+                }
+            } catch (NumberFormatException e) {
+                // A corrupted sentence, as the receiver can log at power loss, is just skipped
+            }
+        }
+        return null;
+    }
+
+    private void onGga(String[] fields) throws NumberFormatException {
+        mGgaTime = fields[1];
+        mGgaHdop = fields[8].length() > 0 ? Float.parseFloat(fields[8]) : Float.NaN;
+        mGgaAltitude = fields[9].length() > 0 ? Float.parseFloat(fields[9]) : Float.NaN;
+    }
+
+    private LocationFix parseRmc(String[] fields) throws NumberFormatException {
+        float speed = fields[7].length() > 0 ? Float.parseFloat(fields[7]) * KNOTS_TO_METERS_PER_SECOND : Float.NaN;
+        float bearing = fields[8].length() > 0 ? Float.parseFloat(fields[8]) : Float.NaN;
+        float altitude = Float.NaN;
+        float accuracy = Float.NaN;
+        if (fields[1].equals(mGgaTime)) {
+            altitude = mGgaAltitude;
+            accuracy = mGgaHdop * HDOP_ACCURACY;
+        }
+        return new LocationFix(mProvider, mTimeParser.parseNmea(fields[9], fields[1]), 0,
+                parseCoordinate(fields[3], fields[4]), parseCoordinate(fields[5], fields[6]),
+                altitude, accuracy, speed, bearing);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Converts a coordinate in the (d)ddmm.mmmm format to degrees.
+     */
+    private static double parseCoordinate(String value, String hemisphere) throws NumberFormatException {
+        int dot = value.indexOf('.');
+        int degreesEnd = (dot < 0 ? value.length() : dot) - 2;
+        if (degreesEnd < 1) {
+            // An empty or truncated field, as a sentence cut without a checksum can have
+            throw new NumberFormatException("Malformed NMEA coordinate " + value);
+        }
+        double degrees = Integer.parseInt(value.substring(0, degreesEnd)) + Double.parseDouble(value.substring(degreesEnd)) / 60;
+        return "S".equals(hemisphere) || "W".equals(hemisphere) ? -degrees : degrees;
+    }
+
+    /**
+     * Checks the XOR checksum of a sentence, if it has one.
+     */
+    private static boolean isChecksumValid(String line) {
+        int end = line.indexOf('*');
+        if (end < 0) {
+            return true;
+        }
+        if (end + 3 > line.length()) {
+            return false;
+        }
+        int checksum = 0;
+        for (int i = 1; i < end; i++) {
+            checksum ^= line.charAt(i);
+        }
+        try {
+            return checksum == Integer.parseInt(line.substring(end + 1, end + 3), 16);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
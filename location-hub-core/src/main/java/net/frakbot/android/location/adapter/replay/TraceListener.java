@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+/**
+ * Receives the fixes replayed by a {@link net.frakbot.android.location.adapter.replay.TracePlayer}.
+ */
+public interface TraceListener {
+
+    /**
+     * Called on the replay thread for every fix of the trace, at its scaled time.
+     *
+     * @param fix       The {@link net.frakbot.android.location.common.LocationFix}, with the time
+     *                  recorded in the trace.
+     * @param traceTime The time of the fix on the replay timeline, in milliseconds.
+     */
+    public void onTraceFix(LocationFix fix, long traceTime);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace to a {@link net.frakbot.android.location.adapter.replay.TraceListener}, at the
+ * recorded pace scaled by a speed factor, or as fast as possible with
+ * {@link TracePlayer#SPEED_UNLIMITED}.
+ * <p/>
+ * The player doesn't depend on Android, so a trace can drive the dispatch stack, like
+ * {@link net.frakbot.android.location.dispatch.FixRegistration}s and
+ * {@link net.frakbot.android.location.common.DeliveryGate}s, at any rate on a plain JVM. On a
+ * device the same player is run by the ReplayLocationHubAdapter.
+ */
+public class TracePlayer {
+    /**
+     * Speed factor replaying the trace as fast as possible.
+     */
+    public static final float SPEED_UNLIMITED = 0;
+
+    private final TraceListener mListener;
+    private volatile float mSpeed;
+
+    /**
+     * Creates a new player.
+     *
+     * @param listener The {@link net.frakbot.android.location.adapter.replay.TraceListener} to
+     *                 replay the fixes to.
+     * @param speed    The speed factor, 1 for real time.
+     * @throws IllegalArgumentException if the speed is less than zero.
+     */
+    public TracePlayer(TraceListener listener, float speed) throws IllegalArgumentException {
+        mListener = listener;
+        setSpeed(speed);
+    }
+
+    /**
+     * Sets the speed of the replay, taking effect from the next fix.
+     *
+     * @param speed The speed factor: 1 for real time, 10 for ten times faster, or
+     *              {@link TracePlayer#SPEED_UNLIMITED}.
+     * @throws IllegalArgumentException if the speed is less than zero.
+     */
+    public void setSpeed(float speed) throws IllegalArgumentException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Replay speed cannot be less than 0.");
+        }
+        mSpeed = speed;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Replays a single pass of a trace on the calling thread. The trace time of each fix is its
+     * offset from the first fix of the pass, added to the base time, so that passes can be chained
+     * on a single monotonic timeline.
+     *
+     * @param reader   The {@link net.frakbot.android.location.adapter.replay.TraceReader} of the
+     *                 trace, which is not closed.
+     * @param baseTime The trace time of the first fix, in milliseconds.
+     * @return the trace time of the last fix, which is the base time if the pass had no fixes.
+     * @throws IOException          if the trace can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public long play(TraceReader reader, long baseTime) throws IOException, InterruptedException {
+        long firstTraceTime = -1;
+        long traceOffset = 0;
+        long startNanos = System.nanoTime();
+        LocationFix fix;
+        while ((fix = reader.next()) != null) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (firstTraceTime < 0) {
+                firstTraceTime = fix.getTime();
+            }
+            traceOffset = fix.getTime() - firstTraceTime;
+            float speed = mSpeed;
+            if (speed != SPEED_UNLIMITED) {
+                long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(traceOffset) / speed);
+                long delay;
+                // Sleeping can round the last fraction of a millisecond down, so sleep until it's due
+                while ((delay = dueNanos - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+            }
+            mListener.onTraceFix(fix, baseTime + traceOffset);
+        }
+        return baseTime + traceOffset;
+    }
+
+    /**
+     * Opens a {@link net.frakbot.android.location.adapter.replay.TraceReader} for a trace file,
+     * picking the format from its extension: GPX (.gpx), NMEA 0183 (.nmea, .nmea0183, .log) or CSV
+     * (anything else).
+     *
+     * @param trace    The trace {@link java.io.File}.
+     * @param provider The provider of the read fixes.
+     * @return The {@link net.frakbot.android.location.adapter.replay.TraceReader}.
+     * @throws IOException if the file can't be opened.
+     */
+    public static TraceReader openTrace(File trace, String provider) throws IOException {
+        String name = trace.getName().toLowerCase();
+        Reader reader = new InputStreamReader(new FileInputStream(trace), "UTF-8");
+        if (name.endsWith(".gpx")) {
+            return new GpxTraceReader(reader, provider);
+        } else if (name.endsWith(".nmea") || name.endsWith(".nmea0183") || name.endsWith(".log")) {
+            return new NmeaTraceReader(reader, provider);
+        }
+        return new CsvTraceReader(reader, provider);
+    }
+}
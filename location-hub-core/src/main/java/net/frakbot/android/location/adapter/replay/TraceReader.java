@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming reader of a recorded location trace. Readers hold only the state of the fix being
+ * read, so a trace of any length is replayed in bounded memory.
+ * <p/>
+ * Readers produce platform-neutral {@link net.frakbot.android.location.common.LocationFix}es, so
+ * the same traces can be replayed on a device and on a plain JVM.
+ */
+public interface TraceReader extends Closeable {
+    /**
+     * Reads the next fix of the trace. The time of the returned
+     * {@link net.frakbot.android.location.common.LocationFix} is the one recorded in the trace.
+     *
+     * @return the next {@link net.frakbot.android.location.common.LocationFix}, or null at the end of the trace.
+     * @throws IOException if the trace can't be read or is malformed.
+     */
+    public abstract LocationFix next() throws IOException;
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Parses the timestamps of the trace formats without {@link java.text.SimpleDateFormat}, reusing a
+ * single {@link java.util.Calendar}. Not thread safe, each reader has its own.
+ */
+class TraceTimeParser {
+    private final Calendar mCalendar;
+
+    TraceTimeParser() {
+        mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Parses an ISO 8601 date and time, like 2014-02-17T10:15:30.250Z or 2014-02-17T11:15:30+01:00,
+     * as used by GPX.
+     *
+     * @return the UTC time, in milliseconds since January 1, 1970.
+     * @throws NumberFormatException if the value is malformed.
+     */
+    long parseIso8601(String value) throws NumberFormatException {
+        if (value.length() < 19 || value.charAt(4) != '-' || value.charAt(10) != 'T') {
+            throw new NumberFormatException("Malformed ISO 8601 time " + value);
+        }
+        int position = 19;
+        int millis = 0;
+        if (position < value.length() && value.charAt(position) == '.') {
+            int digits = 0;
+            position++;
+            while (position < value.length() && Character.isDigit(value.charAt(position))) {
+                if (digits < 3) {
+                    millis = millis * 10 + (value.charAt(position) - '0');
+                    digits++;
+                }
+                position++;
+            }
+            for (; digits < 3; digits++) {
+                millis *= 10;
+            }
+        }
+        int offsetMinutes = 0;
+        if (position < value.length() && value.charAt(position) != 'Z') {
+            // The offset is +hh, +hhmm or +hh:mm
+            int length = value.length() - position;
+            if (length != 3 && length != 5 && length != 6) {
+                throw new NumberFormatException("Malformed ISO 8601 time zone " + value);
+            }
+            int sign = value.charAt(position) == '-' ? -1 : 1;
+            int hours = Integer.parseInt(value.substring(position + 1, position + 3));
+            int minutes = length > 3 ? Integer.parseInt(value.substring(value.length() - 2)) : 0;
+            offsetMinutes = sign * (hours * 60 + minutes);
+        }
+        mCalendar.clear();
+        mCalendar.set(Integer.parseInt(value.substring(0, 4)), Integer.parseInt(value.substring(5, 7)) - 1,
+                Integer.parseInt(value.substring(8, 10)), Integer.parseInt(value.substring(11, 13)),
+                Integer.parseInt(value.substring(14, 16)), Integer.parseInt(value.substring(17, 19)));
+        return mCalendar.getTimeInMillis() + millis - offsetMinutes * 60 * 1000L;
+    }
+
+    /**
+     * Parses the date and time fields of an NMEA sentence, ddmmyy and hhmmss.sss.
+     *
+     * @return the UTC time, in milliseconds since January 1, 1970.
+     * @throws NumberFormatException if the values are malformed.
+     */
+    long parseNmea(String date, String time) throws NumberFormatException {
+        if (date.length() != 6 || time.length() < 6) {
+            throw new NumberFormatException("Malformed NMEA date " + date + " or time " + time);
+        }
+        int year = Integer.parseInt(date.substring(4, 6));
+        // Two-digit years, assume the receivers that recorded the trace are not from the eighties
+        year += year < 80 ? 2000 : 1900;
+        mCalendar.clear();
+        mCalendar.set(year, Integer.parseInt(date.substring(2, 4)) - 1, Integer.parseInt(date.substring(0, 2)),
+                Integer.parseInt(time.substring(0, 2)), Integer.parseInt(time.substring(2, 4)),
+                Integer.parseInt(time.substring(4, 6)));
+        long millis = 0;
+        if (time.length() > 7) {
+            millis = Math.round(Double.parseDouble("0" + time.substring(6)) * 1000);
+        }
+        return mCalendar.getTimeInMillis() + millis;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.common;
+
+/**
+ * Enforces the fastest interval and the smallest displacement of a
+ * {@link net.frakbot.android.location.common.LocationHubRequest} on the client side.
+ * <p/>
+ * Location providers are free to treat those values as hints, and some deliver locations much more
+ * often than requested. The gate lets a location through only if enough time has passed and enough
+ * distance has been covered since the last accepted one, and it counts what it suppresses.
+ */
+public class DeliveryGate {
+    private final long mFastestInterval;
+    private final float mSmallestDisplacement;
+
+    private boolean isFirst = true;
+    private double mLastLatitude;
+    private double mLastLongitude;
+    private long mLastTime;
+
+    private volatile long mAcceptedCount;
+    private volatile long mIntervalSuppressedCount;
+    private volatile long mDisplacementSuppressedCount;
+
+    /**
+     * Creates a gate for a request.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest} whose
+     *                {@link LocationHubRequest#getEffectiveFastestInterval()} and
+     *                {@link LocationHubRequest#getSmallestDisplacement()} are enforced.
+     */
+    public DeliveryGate(LocationHubRequest request) {
+        mFastestInterval = request.getEffectiveFastestInterval();
+        mSmallestDisplacement = request.getSmallestDisplacement();
+    }
+
+    /**
+     * Checks a {@link net.frakbot.android.location.common.LocationFix} against the gate, and records
+     * it as the last accepted one if it passes.
+     *
+     * @param fix The new {@link net.frakbot.android.location.common.LocationFix}.
+     * @param now The current elapsed realtime, in milliseconds.
+     * @return true if the fix can be delivered, false if it has to be suppressed.
+     */
+    public boolean accept(LocationFix fix, long now) {
+        return accept(fix.getLatitude(), fix.getLongitude(), now);
+    }
+
+    /**
+     * Checks the position of a location against the gate, and records it as the last accepted one
+     * if it passes.
+     *
+     * @param latitude  The latitude of the new location, in degrees.
+     * @param longitude The longitude of the new location, in degrees.
+     * @param now       The current elapsed realtime, in milliseconds.
+     * @return true if the location can be delivered, false if it has to be suppressed.
+     */
+    public synchronized boolean accept(double latitude, double longitude, long now) {
+        if (!isFirst) {
+            // Never deliver faster than the fastest interval the listener can handle
+            if (now - mLastTime < mFastestInterval) {
+                mIntervalSuppressedCount++;
+                return false;
+            }
+            // Skip the location if the listener didn't move enough since the last one
+            if (mSmallestDisplacement > 0
+                    && LocationFix.distanceBetween(mLastLatitude, mLastLongitude, latitude, longitude) < mSmallestDisplacement) {
+                mDisplacementSuppressedCount++;
+                return false;
+            }
+        }
+        isFirst = false;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+        mLastTime = now;
+        mAcceptedCount++;
+        return true;
+    }
+
+    /**
+     * Returns the number of locations let through.
+     *
+     * @return the number of accepted locations.
+     */
+    public long getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    /**
+     * Returns the number of locations suppressed because they came faster than the fastest interval.
+     *
+     * @return the number of locations suppressed by the interval.
+     */
+    public long getIntervalSuppressedCount() {
+        return mIntervalSuppressedCount;
+    }
+
+    /**
+     * Returns the number of locations suppressed because they were too close to the last accepted one.
+     *
+     * @return the number of locations suppressed by the displacement.
+     */
+    public long getDisplacementSuppressedCount() {
+        return mDisplacementSuppressedCount;
+    }
+
+    /**
+     * Returns the total number of suppressed locations, that is of callbacks saved.
+     *
+     * @return the number of suppressed locations.
+     */
+    public long getSuppressedCount() {
+        return mIntervalSuppressedCount + mDisplacementSuppressedCount;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.common;
+
+/**
+ * Immutable, platform-neutral value holding a single location fix.
+ * <p/>
+ * It carries the same measurements as an Android Location, without depending on
+ * the Android framework, so that the delivery path can be run and measured on a plain JVM.
+ * Measurements a fix doesn't have are {@link java.lang.Float#NaN}.
+ */
+public final class LocationFix {
+    /**
+     * Mean radius of the Earth, in meters.
+     */
+    public static final double EARTH_RADIUS = 6371009;
+
+    private final String mProvider;
+    private final long mTime;
+    private final long mElapsedRealtimeNanos;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final float mAltitude;
+    private final float mAccuracy;
+    private final float mSpeed;
+    private final float mBearing;
+
+    /**
+     * Creates a new fix.
+     *
+     * @param provider             The name of the provider.
+     * @param time                 The UTC time, in milliseconds since January 1, 1970.
+     * @param elapsedRealtimeNanos The monotonic time of the fix, in nanoseconds, or 0 if unknown.
+     * @param latitude             The latitude, in degrees.
+     * @param longitude            The longitude, in degrees.
+     * @param altitude             The altitude, in meters, or NaN.
+     * @param accuracy             The accuracy radius, in meters, or NaN.
+     * @param speed                The speed, in meters/second, or NaN.
+     * @param bearing              The bearing, in degrees east of true north, or NaN.
+     */
+    public LocationFix(String provider, long time, long elapsedRealtimeNanos, double latitude, double longitude,
+                       float altitude, float accuracy, float speed, float bearing) {
+        mProvider = provider;
+        mTime = time;
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mAltitude = altitude;
+        mAccuracy = accuracy;
+        mSpeed = speed;
+        mBearing = bearing;
+    }
+
+    /**
+     * Creates a new fix with a position only.
+     */
+    public LocationFix(String provider, long time, double latitude, double longitude) {
+        this(provider, time, 0, latitude, longitude, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public long getElapsedRealtimeNanos() {
+        return mElapsedRealtimeNanos;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public float getAltitude() {
+        return mAltitude;
+    }
+
+    public boolean hasAltitude() {
+        return !Float.isNaN(mAltitude);
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public boolean hasAccuracy() {
+        return !Float.isNaN(mAccuracy);
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    public boolean hasSpeed() {
+        return !Float.isNaN(mSpeed);
+    }
+
+    public float getBearing() {
+        return mBearing;
+    }
+
+    public boolean hasBearing() {
+        return !Float.isNaN(mBearing);
+    }
+
+    /**
+     * Returns the distance to another fix.
+     *
+     * @param fix The other {@link net.frakbot.android.location.common.LocationFix}.
+     * @return the distance in meters.
+     * @see LocationFix#distanceBetween(double, double, double, double)
+     */
+    public float distanceTo(LocationFix fix) {
+        return distanceBetween(mLatitude, mLongitude, fix.mLatitude, fix.mLongitude);
+    }
+
+    /**
+     * Computes the great-circle distance between two points with the haversine formula.
+     * <p/>
+     * The Earth is taken as a sphere, which is within 0.5% of the ellipsoidal distance computed by
+     * Location.distanceBetween() on Android.
+     *
+     * @return the distance in meters.
+     */
+    public static float distanceBetween(double startLatitude, double startLongitude, double endLatitude, double endLongitude) {
+        double sinLatitude = Math.sin(Math.toRadians(endLatitude - startLatitude) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(endLongitude - startLongitude) / 2);
+        double a = sinLatitude * sinLatitude
+                + Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(endLatitude)) * sinLongitude * sinLongitude;
+        return (float) (2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a))));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LocationFix[%s %.6f,%.6f acc=%s t=%d]", mProvider, mLatitude, mLongitude,
+                hasAccuracy() ? String.valueOf(mAccuracy) : "???", mTime);
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Created by fpontillo on 17/02/14.
+ */
+public class LocationHubRequest {
+
+    /**
+     * Used with {@link LocationHubRequest#setPriority(int)} to request the best accuracy possible with zero additional power consumption.
+     * No locations will be returned unless a different client has requested location updates in which case this request will act as a passive listener to those locations.
+     */
+    public static final int PRIORITY_NO_POWER = 105;
+
+    /**
+     * Used with {@link LocationHubRequest#setPriority(int)} to request "city" level accuracy.
+     * City level accuracy is considered to be about 10km accuracy. Using a coarse accuracy such as this often consumes less power.
+     */
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    /**
+     * Used with {@link LocationHubRequest#setPriority(int)} to request "block" level accuracy.
+     * Block level accuracy is considered to be about 100 meter accuracy. Using a coarse accuracy such as this often consumes less power.
+     */
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+
+    /**
+     * Used with {@link LocationHubRequest#setPriority(int)} to request the most accurate locations available.
+     * This will return the finest location available.
+     */
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+
+    /**
+     * List of allowed priorities.
+     */
+    private static final List<Integer> PRIORITIES_ALLOWED = new ArrayList<Integer>(
+            Arrays.asList(new Integer[] {
+                    PRIORITY_BALANCED_POWER_ACCURACY, PRIORITY_HIGH_ACCURACY, PRIORITY_LOW_POWER, PRIORITY_NO_POWER
+            }));
+
+    /**
+     * Used with {@link LocationHubRequest#setOverflowPolicy(int)} to keep only the latest locations when
+     * the listener mailbox is full: the newest queued location is replaced by the incoming one.
+     */
+    public static final int OVERFLOW_CONFLATE_LATEST = 0;
+
+    /**
+     * Used with {@link LocationHubRequest#setOverflowPolicy(int)} to evict the oldest queued location
+     * when the listener mailbox is full.
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+
+    /**
+     * Used with {@link LocationHubRequest#setOverflowPolicy(int)} to block the delivering thread until
+     * the listener has made room in its mailbox. If the listener runs on the delivering thread itself,
+     * which could never make room, the oldest queued location is evicted instead.
+     */
+    public static final int OVERFLOW_BLOCK = 2;
+
+    /**
+     * Default capacity of the listener mailbox.
+     */
+    public static final int DEFAULT_MAILBOX_CAPACITY = 16;
+
+    /**
+     * Used when no fastest interval has been explicitly set: the fastest rate is 6x the interval frequency.
+     */
+    private static final int DEFAULT_FASTEST_INTERVAL_FACTOR = 6;
+
+    private int mPriority;
+    private long mFastestInterval;
+    private boolean mExplicitFastestInterval = false;
+    private long mInterval;
+    private float mSmallestDisplacement = 0;
+    private int mMailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+    private int mOverflowPolicy = OVERFLOW_CONFLATE_LATEST;
+    private long mMaxWaitTime = 0;
+    private int mBatchSize = 0;
+    private boolean mSmoothed = false;
+    private long mStationaryInterval = 0;
+    private int mStationaryPriority = 0;
+
+    /**
+     * Creates a request with the default parameters.
+     */
+    public LocationHubRequest() {
+    }
+
+    /**
+     * Creates a copy of the given request, so that later changes to either of them do not affect
+     * the other one.
+     *
+     * @param request The {@link LocationHubRequest} to copy.
+     */
+    public LocationHubRequest(LocationHubRequest request) {
+        mPriority = request.mPriority;
+        mFastestInterval = request.mFastestInterval;
+        mExplicitFastestInterval = request.mExplicitFastestInterval;
+        mInterval = request.mInterval;
+        mSmallestDisplacement = request.mSmallestDisplacement;
+        mMailboxCapacity = request.mMailboxCapacity;
+        mOverflowPolicy = request.mOverflowPolicy;
+        mMaxWaitTime = request.mMaxWaitTime;
+        mBatchSize = request.mBatchSize;
+        mSmoothed = request.mSmoothed;
+        mStationaryInterval = request.mStationaryInterval;
+        mStationaryPriority = request.mStationaryPriority;
+    }
+
+    /**
+     * Get the quality of the request.
+     *
+     * @return an accuracy constant.
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Set the priority of the request.
+     * Use with a priority constant such as {@link LocationHubRequest#PRIORITY_HIGH_ACCURACY}. No other values are accepted.
+     * The priority of the request is a strong hint for which location sources to use.
+     * For example, {@link LocationHubRequest#PRIORITY_HIGH_ACCURACY} is more likely to use GPS,
+     * and {@link LocationHubRequest#PRIORITY_BALANCED_POWER_ACCURACY} is more likely to use WIFI & Cell tower positioning,
+     * but it also depends on many other factors (such as which sources are available) and is implementation dependent.
+     *
+     * @param priority an accuracy or power constant.
+     * @return the same object, so that setters can be chained.
+     */
+    public LocationHubRequest setPriority(int priority) throws IllegalArgumentException {
+        if (!PRIORITIES_ALLOWED.contains(priority)) {
+            throw new IllegalArgumentException(String.format("Priority of %d is not an accepted value.", priority));
+        } else {
+            mPriority = priority;
+        }
+        return this;
+    }
+
+    /**
+     * Get the fastest interval of this request, in milliseconds.
+     * The system will never provide location updates faster than the minimum of {@link LocationHubRequest#getFastestInterval()} and {@link LocationHubRequest#getInterval()}.
+     *
+     * @return fastest interval in milliseconds, exact
+     */
+    public long getFastestInterval() {
+        return mFastestInterval;
+    }
+
+    /**
+     * Explicitly set the fastest interval for location updates, in milliseconds.
+     * <p/>
+     * This controls the fastest rate at which your application will receive location updates,
+     * which might be faster than {@link LocationHubRequest#setInterval(long)}
+     * in some situations (for example, if other applications are triggering location updates).
+     * <p/>
+     * This allows your application to passively acquire locations at a rate faster than it actively
+     * acquires locations, saving power.
+     * <p/>
+     * Unlike {@link LocationHubRequest#setInterval(long)}, this
+     * parameter is exact. Your application will never receive updates faster than this value.
+     * <p/>
+     * If you don't call this method, a fastest interval will be selected for you. It will be a
+     * value faster than your active interval ({@link LocationHubRequest#setInterval(long)} ).
+     * <p/>
+     * An interval of 0 is allowed, but not recommended, since location updates may be extremely fast on future implementations.
+     * <p/>
+     * If {@link LocationHubRequest#getFastestInterval()} (long)}  is set slower than {@link LocationHubRequest#setInterval(long)},
+     * then your effective fastest interval is {@link LocationHubRequest#setInterval(long)}.
+     *
+     * @param millis fastest interval for updates in milliseconds, exact.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the interval is less than zero.
+     */
+    public LocationHubRequest setFastestInterval(long millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Fastest interval cannot be less than 0.");
+        }
+        mFastestInterval = millis;
+        mExplicitFastestInterval = true;
+        return this;
+    }
+
+    /**
+     * Get the fastest interval that will actually be honored for this request, in milliseconds.
+     * <p/>
+     * If a fastest interval was explicitly set, this is the minimum of {@link LocationHubRequest#getFastestInterval()}
+     * and {@link LocationHubRequest#getInterval()}; otherwise it is a sixth of the interval.
+     *
+     * @return the effective fastest interval in milliseconds.
+     */
+    public long getEffectiveFastestInterval() {
+        if (mExplicitFastestInterval) {
+            return Math.min(mFastestInterval, mInterval);
+        }
+        return mInterval / DEFAULT_FASTEST_INTERVAL_FACTOR;
+    }
+
+    /**
+     * Get the desired interval of this request, in milliseconds.
+     *
+     * @return desired interval in milliseconds, inexact
+     */
+    public long getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * Set the desired interval for active location updates, in milliseconds.
+     * <p/>
+     * The location client will actively try to obtain location updates for your application at this
+     * interval, so it has a direct influence on the amount of power used by your application.
+     * Choose your interval wisely.
+     * <p/>
+     * This interval is inexact. You may not receive updates at all (if no location sources are available),
+     * or you may receive them slower than requested. You may also receive them faster than requested
+     * (if other applications are requesting location at a faster interval).
+     * The fastest rate that that you will receive updates can be controlled with
+     * {@link LocationHubRequest#setFastestInterval(long)}.
+     * By default this fastest rate is 6x the interval frequency.
+     * <p/>
+     * Applications with only the coarse location permission may have their interval silently throttled.
+     * <p/>
+     * An interval of 0 is allowed, but not recommended, since location updates may be extremely fast on future implementations.
+     * <p/>
+     * {@link LocationHubRequest#setPriority(int)} and
+     * {@link LocationHubRequest#setInterval(long)} are the most
+     * important parameters on a location request.
+     *
+     * @param millis desired interval in millisecond, inexact.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the interval is less than zero.
+     */
+    public LocationHubRequest setInterval(long millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Interval cannot be less than 0.");
+        }
+        mInterval = millis;
+        return this;
+    }
+
+    /**
+     * Get the minimum displacement between location updates in meters.
+     * <p/>
+     * By default this is 0.
+     *
+     * @return minimum displacement between location updates in meters.
+     */
+    public float getSmallestDisplacement() {
+        return mSmallestDisplacement;
+    }
+
+    /**
+     * Set the minimum displacement between location updates in meters.
+     * <p/>
+     * By default this is 0.
+     *
+     * @param smallestDisplacementMeters the smallest displacement in meters the user must move between location updates.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if smallestDisplacementMeters is negative.
+     */
+    public LocationHubRequest setSmallestDisplacement(float smallestDisplacementMeters) throws IllegalArgumentException {
+        if (smallestDisplacementMeters < 0) {
+            throw new IllegalArgumentException("Smallest displacement cannot be less than 0.");
+        }
+        mSmallestDisplacement = smallestDisplacementMeters;
+        return this;
+    }
+
+    /**
+     * Get the capacity of the mailbox holding the locations that are waiting to be delivered to the
+     * listener, when the listener is dispatched on an {@link java.util.concurrent.Executor} or a
+     * Looper.
+     *
+     * @return the mailbox capacity.
+     */
+    public int getMailboxCapacity() {
+        return mMailboxCapacity;
+    }
+
+    /**
+     * Set the capacity of the mailbox holding the locations that are waiting to be delivered to the
+     * listener. It is only used when the listener is dispatched on an {@link java.util.concurrent.Executor}
+     * or a Looper.
+     * <p/>
+     * By default this is {@link LocationHubRequest#DEFAULT_MAILBOX_CAPACITY}.
+     *
+     * @param capacity the maximum number of locations waiting for the listener.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if capacity is less than 1.
+     */
+    public LocationHubRequest setMailboxCapacity(int capacity) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity cannot be less than 1.");
+        }
+        mMailboxCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Get the policy applied when the listener mailbox is full.
+     *
+     * @return an overflow policy constant.
+     */
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Set the policy applied when the listener mailbox is full.
+     * Use with an overflow constant such as {@link LocationHubRequest#OVERFLOW_CONFLATE_LATEST}. No other values are accepted.
+     * <p/>
+     * Be careful with {@link LocationHubRequest#OVERFLOW_BLOCK}: it stalls the thread locations are
+     * delivered on, and every other listener with it, until the slow listener catches up.
+     * <p/>
+     * By default this is {@link LocationHubRequest#OVERFLOW_CONFLATE_LATEST}.
+     *
+     * @param policy an overflow policy constant.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the policy is not an accepted value.
+     */
+    public LocationHubRequest setOverflowPolicy(int policy) throws IllegalArgumentException {
+        if (policy != OVERFLOW_CONFLATE_LATEST && policy != OVERFLOW_DROP_OLDEST && policy != OVERFLOW_BLOCK) {
+            throw new IllegalArgumentException(String.format("Overflow policy of %d is not an accepted value.", policy));
+        }
+        mOverflowPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Get the maximum wait time for a batch of location updates, in milliseconds.
+     *
+     * @return maximum wait time in milliseconds, 0 if batching by time is disabled.
+     */
+    public long getMaxWaitTime() {
+        return mMaxWaitTime;
+    }
+
+    /**
+     * Set the maximum wait time for a batch of location updates, in milliseconds.
+     * <p/>
+     * Locations are buffered inside the hub and delivered together to
+     * LocationHubListener.onLocationsBatch(List). A batch is delivered once the
+     * wait time has elapsed since the oldest buffered location, even if no other location arrives, or
+     * as soon as it reaches {@link LocationHubRequest#getBatchSize()} locations.
+     * <p/>
+     * By default this is 0, and locations are delivered one by one.
+     *
+     * @param millis maximum wait time for a batch in milliseconds.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the wait time is less than zero.
+     */
+    public LocationHubRequest setMaxWaitTime(long millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Max wait time cannot be less than 0.");
+        }
+        mMaxWaitTime = millis;
+        return this;
+    }
+
+    /**
+     * Get the maximum number of locations delivered in a single batch.
+     *
+     * @return maximum batch size, 0 if batching by size is disabled.
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * Set the maximum number of locations delivered in a single batch.
+     * <p/>
+     * A size greater than 1 enables batching even without a {@link LocationHubRequest#setMaxWaitTime(long)}.
+     * <p/>
+     * By default this is 0, and batches are only bound by the wait time.
+     *
+     * @param size maximum number of locations in a batch.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the size is less than zero.
+     */
+    public LocationHubRequest setBatchSize(int size) throws IllegalArgumentException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Batch size cannot be less than 0.");
+        }
+        mBatchSize = size;
+        return this;
+    }
+
+    /**
+     * Checks whether the locations for this request are delivered in batches.
+     *
+     * @return true if either a maximum wait time or a batch size greater than 1 are set.
+     */
+    public boolean isBatching() {
+        return mMaxWaitTime > 0 || mBatchSize > 1;
+    }
+
+    /**
+     * Checks whether the listener receives smoothed instead of raw locations.
+     *
+     * @return true if the locations are smoothed.
+     */
+    public boolean isSmoothed() {
+        return mSmoothed;
+    }
+
+    /**
+     * Set whether the listener receives smoothed instead of raw locations.
+     * <p/>
+     * Smoothed locations come out of a constant-velocity Kalman filter shared by all of the smoothed
+     * listeners of a hub. Their position is filtered, their accuracy is the estimated position error
+     * and their speed and bearing are estimated from the filtered velocity. Locations older than the
+     * previous one are not delivered to smoothed listeners.
+     * <p/>
+     * By default this is false, and the locations are delivered as the adapter reports them.
+     *
+     * @param smoothed true to receive smoothed locations.
+     * @return the same object, so that setters can be chained.
+     * @see net.frakbot.android.location.filter.KalmanLocationFilter
+     */
+    public LocationHubRequest setSmoothed(boolean smoothed) {
+        mSmoothed = smoothed;
+        return this;
+    }
+
+    /**
+     * Get the interval used while the device is stationary.
+     *
+     * @return stationary interval in milliseconds, 0 if the request is not adaptive.
+     */
+    public long getStationaryInterval() {
+        return mStationaryInterval;
+    }
+
+    /**
+     * Set the interval used while the device is stationary, making the request adaptive.
+     * <p/>
+     * The hub estimates whether the device is still, moving slowly or moving fast from the recent
+     * locations. While it is still, adaptive requests are served at this interval and at the
+     * {@link LocationHubRequest#getStationaryPriority()}; while it moves slowly, at twice the
+     * interval, bound by this one. As soon as it moves fast again, the request is served as it is.
+     * Movement is only noticed with the next location, so this is also the longest delay before
+     * the request is ramped back up. The motion state is estimated by the MotionScheduler of location-hub.
+     * <p/>
+     * By default this is 0, and the request is always served as it is.
+     *
+     * @param millis stationary interval in milliseconds, 0 to disable adaptation.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the interval is less than zero.
+     */
+    public LocationHubRequest setStationaryInterval(long millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Stationary interval cannot be less than 0.");
+        }
+        mStationaryInterval = millis;
+        return this;
+    }
+
+    /**
+     * Get the priority used while the device is stationary.
+     *
+     * @return the stationary priority, or 0 to keep the request priority.
+     */
+    public int getStationaryPriority() {
+        return mStationaryPriority;
+    }
+
+    /**
+     * Set the priority used while the device is stationary, if the request is adaptive.
+     * <p/>
+     * By default the request priority is kept.
+     *
+     * @param priority an accuracy or power constant.
+     * @return the same object, so that setters can be chained.
+     * @see LocationHubRequest#setStationaryInterval(long)
+     */
+    public LocationHubRequest setStationaryPriority(int priority) throws IllegalArgumentException {
+        if (!PRIORITIES_ALLOWED.contains(priority)) {
+            throw new IllegalArgumentException(String.format("Priority of %d is not an accepted value.", priority));
+        }
+        mStationaryPriority = priority;
+        return this;
+    }
+
+    /**
+     * Checks whether the request is adapted to the motion of the device.
+     *
+     * @return true if a stationary interval is set.
+     */
+    public boolean isAdaptive() {
+        return mStationaryInterval > 0;
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.DeliveryGate;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.metrics.LatencyHistogram;
+import net.frakbot.android.location.metrics.ListenerMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform-neutral part of a listener registration: the delivery of fixes of type {@code F} to a
+ * single listener, according to the {@link net.frakbot.android.location.common.LocationHubRequest}
+ * it was registered with.
+ * <p/>
+ * The shared subscription can be faster than what the listener asked for, so each registration
+ * applies its own fastest interval and smallest displacement through a
+ * {@link net.frakbot.android.location.common.DeliveryGate} before a fix is delivered.
+ * If the listener was registered with an {@link java.util.concurrent.Executor}, the accepted fixes
+ * are handed over through a {@link net.frakbot.android.location.dispatch.ListenerMailbox}
+ * instead of being delivered on the dispatching thread. Batching requests buffer the accepted fixes
+ * here, so the listener is woken up once per batch: a batch is delivered as soon as it is full, or by a
+ * timer once the oldest fix in it has waited for the max wait time, even if no other fix arrives.
+ * <p/>
+ * Every callback records how old the fix was when handed to the listener and how long the
+ * listener took to return, in a pair of {@link net.frakbot.android.location.metrics.LatencyHistogram}s.
+ * <p/>
+ * Subclasses bind the registration to a fix type and a listener type.
+ *
+ * @param <F> The type of the fixes.
+ */
+public abstract class FixRegistration<F> {
+    private static ScheduledExecutorService sBatchTimer;
+
+    private final LocationHubRequest mRequest;
+    private volatile ListenerMailbox<F> mMailbox;
+    private volatile ListenerMailbox<List<F>> mBatchMailbox;
+    private final DeliveryGate mGate;
+    private final LatencyHistogram mDeliveryLatency;
+    private final LatencyHistogram mCallbackDuration;
+    private final AtomicInteger mOverBudgetCount;
+    private Executor mIsolationExecutor;
+    private boolean isClosed;
+
+    private ArrayList<F> mBatch;
+    private long mBatchStartTime;
+    private int mBatchGeneration;
+
+    /**
+     * Creates a registration, replacing a previous one of the same listener. The metrics of the
+     * previous registration are carried over, so that they survive the listener being registered
+     * again with a new request.
+     * <p/>
+     * An isolated listener stays isolated, unless it now asks for its own executor.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} of the listener.
+     * @param executor The {@link java.util.concurrent.Executor} the listener is called on, or null to
+     *                 call it directly on the dispatching thread.
+     * @param previous The replaced {@link net.frakbot.android.location.dispatch.FixRegistration}, can be null.
+     */
+    protected FixRegistration(LocationHubRequest request, Executor executor, FixRegistration<F> previous) {
+        mRequest = request;
+        mGate = new DeliveryGate(request);
+        if (previous != null) {
+            mDeliveryLatency = previous.mDeliveryLatency;
+            mCallbackDuration = previous.mCallbackDuration;
+            mOverBudgetCount = previous.mOverBudgetCount;
+            if (executor == null) {
+                mIsolationExecutor = previous.getIsolationExecutor();
+                executor = mIsolationExecutor;
+            }
+        } else {
+            mDeliveryLatency = new LatencyHistogram();
+            mCallbackDuration = new LatencyHistogram();
+            mOverBudgetCount = new AtomicInteger();
+        }
+        if (request.isBatching()) {
+            mBatch = new ArrayList<F>();
+        }
+        if (executor != null) {
+            createMailbox(executor);
+        }
+    }
+
+    /**
+     * Returns the latitude of a fix, for the displacement check.
+     */
+    protected abstract double getLatitude(F fix);
+
+    /**
+     * Returns the longitude of a fix, for the displacement check.
+     */
+    protected abstract double getLongitude(F fix);
+
+    /**
+     * Returns how long ago a fix was taken, for the delivery latency.
+     *
+     * @return the age in nanoseconds.
+     */
+    protected abstract long getElapsedAgeNanos(F fix);
+
+    /**
+     * Hands a fix over to the listener.
+     */
+    protected abstract void onFix(F fix);
+
+    /**
+     * Hands a batch of fixes over to the listener.
+     */
+    protected abstract void onFixBatch(List<F> fixes);
+
+    /**
+     * Schedules the delivery of a batch that has been waiting for the max wait time.
+     * <p/>
+     * By default the task runs on a timer thread shared by all of the registrations, so a listener
+     * called directly is then called on that thread. Subclasses can run it on the dispatching thread.
+     *
+     * @param task        The task delivering the batch.
+     * @param delayMillis The delay before running the task, in milliseconds.
+     */
+    protected void scheduleBatchTimeout(Runnable task, long delayMillis) {
+        getBatchTimer().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether the given {@link java.util.concurrent.Executor} runs its tasks on the calling
+     * thread, so that the listener mailbox never blocks it waiting for the listener.
+     * <p/>
+     * By default only the thread currently draining the mailbox is known.
+     *
+     * @param executor The {@link java.util.concurrent.Executor} of the listener mailbox.
+     * @return true if the executor runs on the calling thread.
+     */
+    protected boolean isExecutorThread(Executor executor) {
+        return false;
+    }
+
+    /**
+     * Called on the dispatching thread whenever a fix passes the gate.
+     */
+    protected void onAccepted() {
+    }
+
+    /**
+     * Called whenever the listener returns from a callback.
+     *
+     * @param duration The duration of the callback, in nanoseconds.
+     */
+    protected void onCallbackReturned(long duration) {
+        mCallbackDuration.record(duration);
+    }
+
+    private void createMailbox(final Executor executor) {
+        if (mRequest.isBatching()) {
+            mBatchMailbox = new ListenerMailbox<List<F>>(executor,
+                    mRequest.getMailboxCapacity(), mRequest.getOverflowPolicy()) {
+                @Override
+                protected void deliver(List<F> fixes) {
+                    invokeListener(fixes);
+                }
+
+                @Override
+                protected boolean isDrainThread() {
+                    return super.isDrainThread() || isExecutorThread(executor);
+                }
+            };
+        } else {
+            mMailbox = new ListenerMailbox<F>(executor,
+                    mRequest.getMailboxCapacity(), mRequest.getOverflowPolicy()) {
+                @Override
+                protected void deliver(F fix) {
+                    invokeListener(fix);
+                }
+
+                @Override
+                protected boolean isDrainThread() {
+                    return super.isDrainThread() || isExecutorThread(executor);
+                }
+            };
+        }
+    }
+
+    /**
+     * Moves a listener called on the dispatching thread onto an {@link java.util.concurrent.Executor}.
+     * Listeners that already have a mailbox are left as they are.
+     *
+     * @param executor The isolation {@link java.util.concurrent.Executor}.
+     */
+    synchronized void isolate(Executor executor) {
+        if (isClosed || mMailbox != null || mBatchMailbox != null) {
+            return;
+        }
+        mIsolationExecutor = executor;
+        createMailbox(executor);
+    }
+
+    /**
+     * Checks whether the listener has been moved onto the isolation executor.
+     *
+     * @return true if the listener is isolated.
+     */
+    public synchronized boolean isIsolated() {
+        return mIsolationExecutor != null;
+    }
+
+    private synchronized Executor getIsolationExecutor() {
+        return mIsolationExecutor;
+    }
+
+    /**
+     * Counts a callback over budget.
+     *
+     * @return the number of callbacks over budget so far.
+     */
+    int onOverBudget() {
+        return mOverBudgetCount.incrementAndGet();
+    }
+
+    public LocationHubRequest getRequest() {
+        return mRequest;
+    }
+
+    public DeliveryGate getGate() {
+        return mGate;
+    }
+
+    /**
+     * Takes a snapshot of the delivery latency and callback duration of the listener.
+     *
+     * @param reset true to empty the histograms and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.metrics.ListenerMetrics}.
+     */
+    public ListenerMetrics getMetrics(boolean reset) {
+        return new ListenerMetrics(mDeliveryLatency.snapshot(reset), mCallbackDuration.snapshot(reset));
+    }
+
+    /**
+     * Delivers a fix to the listener if it satisfies the registration's fastest interval and
+     * smallest displacement.
+     * If the request is batching, the fix is buffered instead, and the whole batch is delivered
+     * once it is complete.
+     *
+     * @param fix The new fix.
+     * @param now The current elapsed realtime, in milliseconds.
+     * @return true if the fix was accepted, false if it was suppressed.
+     */
+    public boolean deliver(F fix, long now) {
+        if (!mGate.accept(getLatitude(fix), getLongitude(fix), now)) {
+            return false;
+        }
+        onAccepted();
+        ListenerMailbox<F> mailbox = mMailbox;
+        if (mBatch != null) {
+            addToBatch(fix, now);
+        } else if (mailbox != null) {
+            mailbox.post(fix);
+        } else {
+            invokeListener(fix);
+        }
+        return true;
+    }
+
+    /**
+     * Delivers the pending batch right away, if the request is batching and any fix is buffered.
+     */
+    public void flush() {
+        List<F> batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+        if (batch != null) {
+            deliverBatch(batch);
+        }
+    }
+
+    /**
+     * Stops any pending delivery of single fixes to the listener. Called when the registration is
+     * removed. The pending batch, if any, is still delivered.
+     */
+    public void close() {
+        List<F> batch;
+        synchronized (this) {
+            isClosed = true;
+            batch = takeBatch();
+        }
+        if (batch != null) {
+            deliverBatch(batch);
+        }
+        ListenerMailbox<F> mailbox = mMailbox;
+        if (mailbox != null) {
+            mailbox.close();
+        }
+        ListenerMailbox<List<F>> batchMailbox = mBatchMailbox;
+        if (batchMailbox != null) {
+            // Let the batches already queued reach the listener
+            batchMailbox.shutdown();
+        }
+    }
+
+    private void addToBatch(F fix, long now) {
+        List<F> batch = null;
+        long maxWaitTime = mRequest.getMaxWaitTime();
+        int generation = -1;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            if (mBatch.isEmpty()) {
+                mBatchStartTime = now;
+                generation = ++mBatchGeneration;
+            }
+            mBatch.add(fix);
+            int batchSize = mRequest.getBatchSize();
+            if ((batchSize > 0 && mBatch.size() >= batchSize)
+                    || (maxWaitTime > 0 && now - mBatchStartTime >= maxWaitTime)) {
+                batch = takeBatch();
+                generation = -1;
+            }
+        }
+        if (batch != null) {
+            deliverBatch(batch);
+        } else if (generation != -1 && maxWaitTime > 0) {
+            scheduleBatchTimeout(new BatchTimeout(generation), maxWaitTime);
+        }
+    }
+
+    /**
+     * Delivers the batch started as the given generation, unless it has already been delivered.
+     */
+    private void onBatchTimeout(int generation) {
+        List<F> batch = null;
+        synchronized (this) {
+            if (generation == mBatchGeneration) {
+                batch = takeBatch();
+            }
+        }
+        if (batch != null) {
+            deliverBatch(batch);
+        }
+    }
+
+    /**
+     * Takes the pending batch out of the registration. Must be called while holding the registration lock.
+     *
+     * @return The pending batch, or null if there is none.
+     */
+    private List<F> takeBatch() {
+        if (mBatch == null || mBatch.isEmpty()) {
+            return null;
+        }
+        List<F> batch = mBatch;
+        mBatch = new ArrayList<F>(batch.size());
+        return batch;
+    }
+
+    private void deliverBatch(List<F> batch) {
+        ListenerMailbox<List<F>> batchMailbox = mBatchMailbox;
+        if (batchMailbox != null) {
+            batchMailbox.post(batch);
+        } else {
+            invokeListener(batch);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getBatchTimer() {
+        if (sBatchTimer == null) {
+            sBatchTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LocationHubBatchTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBatchTimer;
+    }
+
+    private void invokeListener(F fix) {
+        mDeliveryLatency.record(getElapsedAgeNanos(fix));
+        long start = System.nanoTime();
+        onFix(fix);
+        onCallbackReturned(System.nanoTime() - start);
+    }
+
+    private void invokeListener(List<F> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            mDeliveryLatency.record(getElapsedAgeNanos(batch.get(i)));
+        }
+        long start = System.nanoTime();
+        onFixBatch(batch);
+        onCallbackReturned(System.nanoTime() - start);
+    }
+
+    /**
+     * Delivers a batch once it has waited for the max wait time.
+     */
+    private class BatchTimeout implements Runnable {
+        private final int mGeneration;
+
+        BatchTimeout(int generation) {
+            mGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            onBatchTimeout(mGeneration);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Bounded mailbox that hands items, either single location fixes or batches of
+ * them, over to a listener running on its own
+ * {@link java.util.concurrent.Executor}.
+ * <p/>
+ * Items are kept in a fixed-size ring and drained in order by a single task at a time, so the
+ * listener is never called concurrently. When the ring is full, the overflow policy of the
+ * {@link net.frakbot.android.location.common.LocationHubRequest} decides what to do with the
+ * incoming item. Blocking is only done when the item is posted from a thread other than the one
+ * that drains the mailbox, which could never make room: there the oldest item is dropped instead.
+ *
+ * @param <T> The type of the queued items.
+ */
+public abstract class ListenerMailbox<T> implements Runnable {
+    private final Executor mExecutor;
+    private final int mOverflowPolicy;
+
+    private final Object[] mQueue;
+    private int mHead;
+    private int mSize;
+    private boolean mScheduled;
+    private boolean mClosed;
+    private boolean mShutdown;
+    private Thread mDrainThread;
+
+    public ListenerMailbox(Executor executor, int capacity, int overflowPolicy) {
+        mExecutor = executor;
+        mOverflowPolicy = overflowPolicy;
+        mQueue = new Object[capacity];
+    }
+
+    /**
+     * Queues an item for the listener, and schedules the drain task on the
+     * {@link java.util.concurrent.Executor} if it is not already scheduled.
+     *
+     * @param item The item to deliver.
+     */
+    public void post(T item) {
+        boolean schedule = false;
+        synchronized (this) {
+            if (mClosed || mShutdown) {
+                return;
+            }
+            if (mSize == mQueue.length) {
+                if (mOverflowPolicy == LocationHubRequest.OVERFLOW_CONFLATE_LATEST) {
+                    // Replace the newest queued item
+                    mQueue[(mHead + mSize - 1) % mQueue.length] = item;
+                    return;
+                } else if (mOverflowPolicy == LocationHubRequest.OVERFLOW_DROP_OLDEST || isDrainThread()) {
+                    mQueue[mHead] = null;
+                    mHead = (mHead + 1) % mQueue.length;
+                    mSize--;
+                } else {
+                    while (mSize == mQueue.length && !mClosed && !mShutdown) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    if (mClosed || mShutdown) {
+                        return;
+                    }
+                }
+            }
+            mQueue[(mHead + mSize) % mQueue.length] = item;
+            mSize++;
+            if (!mScheduled) {
+                mScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            mExecutor.execute(this);
+        }
+    }
+
+    /**
+     * Drops all of the queued items and stops delivering to the listener.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        for (int i = 0; i < mQueue.length; i++) {
+            mQueue[i] = null;
+        }
+        mSize = 0;
+        notifyAll();
+    }
+
+    /**
+     * Stops accepting new items, but keeps delivering the queued ones to the listener.
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * Checks whether the calling thread is the one draining the mailbox, or the one the
+     * {@link java.util.concurrent.Executor} would drain it on. Blocking it on a full mailbox would
+     * deadlock. Must be called while holding the mailbox lock.
+     * <p/>
+     * Subclasses that know the thread of their executor should also check it here.
+     *
+     * @return true if the calling thread drains the mailbox.
+     */
+    protected boolean isDrainThread() {
+        return Thread.currentThread() == mDrainThread;
+    }
+
+    /**
+     * Drains the mailbox, delivering every queued item to the listener.
+     * <p/>
+     * If the listener throws, the exception is propagated to the {@link java.util.concurrent.Executor},
+     * and a new drain is scheduled for the items still queued.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        boolean isDraining = true;
+        try {
+            while (true) {
+                T item;
+                synchronized (this) {
+                    if (mSize == 0 || mClosed) {
+                        mScheduled = false;
+                        mDrainThread = null;
+                        isDraining = false;
+                        return;
+                    }
+                    mDrainThread = Thread.currentThread();
+                    item = (T) mQueue[mHead];
+                    mQueue[mHead] = null;
+                    mHead = (mHead + 1) % mQueue.length;
+                    mSize--;
+                    // Wake up a producer blocked on a full mailbox
+                    notifyAll();
+                }
+                deliver(item);
+            }
+        } finally {
+            if (isDraining) {
+                onDrainFailed();
+            }
+        }
+    }
+
+    /**
+     * Releases the drain after the listener threw, so that the mailbox doesn't stay scheduled
+     * forever, and reschedules it if any item is still queued.
+     */
+    private void onDrainFailed() {
+        boolean schedule;
+        synchronized (this) {
+            mDrainThread = null;
+            schedule = mSize > 0 && !mClosed;
+            mScheduled = schedule;
+        }
+        if (schedule) {
+            mExecutor.execute(this);
+        }
+    }
+
+    /**
+     * Delivers a single item to the listener, on the thread of the {@link java.util.concurrent.Executor}.
+     *
+     * @param item The item to deliver.
+     */
+    protected abstract void deliver(T item);
+}
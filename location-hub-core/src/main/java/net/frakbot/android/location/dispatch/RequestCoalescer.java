@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+
+import java.util.TreeMap;
+
+/**
+ * Coalesces a set of {@link net.frakbot.android.location.common.LocationHubRequest}s into the single
+ * request satisfying all of them: the tightest priority, the shortest interval, the shortest fastest
+ * interval and the smallest displacement.
+ * <p/>
+ * The request parameters are kept in multisets, so adding and removing a request doesn't walk the
+ * other ones. The coalescer is not thread safe, its owner has to synchronize the calls.
+ */
+public class RequestCoalescer {
+    private final int[] mPriorityCounts;
+    private final TreeMap<Long, Integer> mIntervalCounts;
+    private final TreeMap<Long, Integer> mFastestIntervalCounts;
+    private final TreeMap<Float, Integer> mDisplacementCounts;
+
+    public RequestCoalescer() {
+        mPriorityCounts = new int[LocationHubRequest.PRIORITY_NO_POWER - LocationHubRequest.PRIORITY_HIGH_ACCURACY + 1];
+        mIntervalCounts = new TreeMap<Long, Integer>();
+        mFastestIntervalCounts = new TreeMap<Long, Integer>();
+        mDisplacementCounts = new TreeMap<Float, Integer>();
+    }
+
+    /**
+     * Adds a request to the set.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest} to add.
+     */
+    public void add(LocationHubRequest request) {
+        int priorityIndex = getPriorityIndex(request.getPriority());
+        if (priorityIndex >= 0) {
+            mPriorityCounts[priorityIndex]++;
+        }
+        increment(mIntervalCounts, request.getInterval());
+        increment(mFastestIntervalCounts, request.getEffectiveFastestInterval());
+        increment(mDisplacementCounts, request.getSmallestDisplacement());
+    }
+
+    /**
+     * Removes a request previously added to the set.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest} to remove.
+     */
+    public void remove(LocationHubRequest request) {
+        int priorityIndex = getPriorityIndex(request.getPriority());
+        if (priorityIndex >= 0) {
+            mPriorityCounts[priorityIndex]--;
+        }
+        decrement(mIntervalCounts, request.getInterval());
+        decrement(mFastestIntervalCounts, request.getEffectiveFastestInterval());
+        decrement(mDisplacementCounts, request.getSmallestDisplacement());
+    }
+
+    /**
+     * Removes all of the requests.
+     */
+    public void clear() {
+        for (int i = 0; i < mPriorityCounts.length; i++) {
+            mPriorityCounts[i] = 0;
+        }
+        mIntervalCounts.clear();
+        mFastestIntervalCounts.clear();
+        mDisplacementCounts.clear();
+    }
+
+    public boolean isEmpty() {
+        return mIntervalCounts.isEmpty();
+    }
+
+    /**
+     * Returns the shortest fastest interval among the requests. The set must not be empty.
+     *
+     * @return the fastest interval, in milliseconds.
+     */
+    public long getFastestInterval() {
+        return mFastestIntervalCounts.firstKey();
+    }
+
+    /**
+     * Returns the smallest displacement among the requests. The set must not be empty.
+     *
+     * @return the smallest displacement, in meters.
+     */
+    public float getSmallestDisplacement() {
+        return mDisplacementCounts.firstKey();
+    }
+
+    /**
+     * Builds the coalesced request.
+     *
+     * @return The coalesced {@link net.frakbot.android.location.common.LocationHubRequest}, or null
+     * if the set is empty.
+     */
+    public LocationHubRequest build() {
+        if (isEmpty()) {
+            return null;
+        }
+        LocationHubRequest request = new LocationHubRequest()
+                .setInterval(mIntervalCounts.firstKey())
+                .setFastestInterval(mFastestIntervalCounts.firstKey())
+                .setSmallestDisplacement(mDisplacementCounts.firstKey());
+        // Lower priority values are the tighter ones
+        for (int i = 0; i < mPriorityCounts.length; i++) {
+            if (mPriorityCounts[i] > 0) {
+                request.setPriority(LocationHubRequest.PRIORITY_HIGH_ACCURACY + i);
+                break;
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Checks whether two coalesced requests would place the same subscription.
+     *
+     * @return true if the priority, interval, fastest interval and smallest displacement are the same.
+     */
+    public static boolean isSameRequest(LocationHubRequest a, LocationHubRequest b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getPriority() == b.getPriority()
+                && a.getInterval() == b.getInterval()
+                && a.getFastestInterval() == b.getFastestInterval()
+                && a.getSmallestDisplacement() == b.getSmallestDisplacement();
+    }
+
+    /**
+     * Checks whether a priority is one of the priority constants, rather than never set.
+     *
+     * @param priority The priority of a {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * @return true if the priority was set.
+     */
+    public static boolean isPrioritySet(int priority) {
+        return priority >= LocationHubRequest.PRIORITY_HIGH_ACCURACY && priority <= LocationHubRequest.PRIORITY_NO_POWER;
+    }
+
+    /**
+     * Maps a priority constant to its slot in the priority counters.
+     *
+     * @param priority The priority of a {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * @return The slot index, or -1 if the priority was never set.
+     */
+    private static int getPriorityIndex(int priority) {
+        return isPrioritySet(priority) ? priority - LocationHubRequest.PRIORITY_HIGH_ACCURACY : -1;
+    }
+
+    private static <K> void increment(TreeMap<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static <K> void decrement(TreeMap<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.filter;
+
+import net.frakbot.android.location.common.LocationFix;
+
+/**
+ * Constant-velocity Kalman filter smoothing a stream of locations.
+ * <p/>
+ * Locations are projected on a local tangent plane around a reference point, where east and north
+ * are filtered as two independent position/velocity pairs. The accuracy of each location is used as
+ * the measurement noise, so accurate fixes pull the estimate more than inaccurate ones. Since both
+ * axes see the same noise, they share a single covariance matrix.
+ * <p/>
+ * The whole state is kept in primitive fields, and {@link KalmanLocationFilter#update(double, double, float, long)}
+ * doesn't allocate.
+ */
+public class KalmanLocationFilter {
+    /**
+     * Default standard deviation of the acceleration, in meters/second squared.
+     */
+    public static final float DEFAULT_ACCELERATION_NOISE = 3;
+
+    /**
+     * Accuracy assumed for locations that don't have one, in meters.
+     */
+    public static final float DEFAULT_MEASUREMENT_ACCURACY = 50;
+
+    /**
+     * Distance from the reference point beyond which the tangent plane is moved, in meters.
+     */
+    private static final double MAX_PLANE_DISTANCE = 10000;
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+    private static final double INITIAL_VELOCITY_VARIANCE = 100;
+
+    private final double mAccelerationVariance;
+
+    private boolean mInitialized;
+    private double mReferenceLatitude;
+    private double mReferenceLongitude;
+    private double mReferenceCos;
+    private long mTime;
+
+    // State, in meters and meters/second from the reference point
+    private double mEast;
+    private double mNorth;
+    private double mVelocityEast;
+    private double mVelocityNorth;
+
+    // Covariance of the position/velocity pair of each axis: [[mP00, mP01], [mP01, mP11]]
+    private double mP00;
+    private double mP01;
+    private double mP11;
+
+    public KalmanLocationFilter() {
+        this(DEFAULT_ACCELERATION_NOISE);
+    }
+
+    /**
+     * Creates a new filter.
+     *
+     * @param accelerationNoise The standard deviation of the acceleration, in meters/second squared.
+     *                          Higher values follow changes of speed and direction more quickly,
+     *                          lower values smooth more.
+     * @throws IllegalArgumentException if the acceleration noise is not positive.
+     */
+    public KalmanLocationFilter(float accelerationNoise) throws IllegalArgumentException {
+        if (accelerationNoise <= 0) {
+            throw new IllegalArgumentException("The acceleration noise must be greater than 0.");
+        }
+        mAccelerationVariance = (double) accelerationNoise * accelerationNoise;
+    }
+
+    /**
+     * Feeds a {@link net.frakbot.android.location.common.LocationFix} to the filter.
+     *
+     * @param fix The new {@link net.frakbot.android.location.common.LocationFix}.
+     * @return A new {@link net.frakbot.android.location.common.LocationFix} with the estimated
+     * position, accuracy, speed and bearing, or null if the fix was older than the previous one,
+     * and was ignored.
+     */
+    public synchronized LocationFix filter(LocationFix fix) {
+        boolean accepted = update(fix.getLatitude(), fix.getLongitude(),
+                fix.hasAccuracy() ? fix.getAccuracy() : DEFAULT_MEASUREMENT_ACCURACY, fix.getTime());
+        if (!accepted) {
+            return null;
+        }
+        return new LocationFix(fix.getProvider(), fix.getTime(), fix.getElapsedRealtimeNanos(),
+                getLatitude(), getLongitude(), fix.getAltitude(), getAccuracy(), getSpeed(), getBearing());
+    }
+
+    /**
+     * Feeds a measurement to the filter.
+     *
+     * @param latitude  The latitude, in degrees.
+     * @param longitude The longitude, in degrees.
+     * @param accuracy  The accuracy, in meters.
+     * @param time      The UTC time of the fix, in milliseconds since January 1, 1970.
+     * @return false if the measurement was older than the previous one, and was ignored.
+     */
+    public synchronized boolean update(double latitude, double longitude, float accuracy, long time) {
+        double variance = (double) accuracy * accuracy;
+        if (!mInitialized) {
+            reset(latitude, longitude, variance, time);
+            return true;
+        }
+        if (time < mTime) {
+            return false;
+        }
+
+        // Predict
+        double dt = (time - mTime) / 1000.0;
+        mTime = time;
+        mEast += mVelocityEast * dt;
+        mNorth += mVelocityNorth * dt;
+        double dt2 = dt * dt;
+        mP00 += 2 * dt * mP01 + dt2 * mP11 + mAccelerationVariance * dt2 * dt2 / 4;
+        mP01 += dt * mP11 + mAccelerationVariance * dt2 * dt / 2;
+        mP11 += mAccelerationVariance * dt2;
+
+        // Update, with the same gain on both axes
+        double s = mP00 + variance;
+        double k0 = mP00 / s;
+        double k1 = mP01 / s;
+        double deltaLongitude = longitude - mReferenceLongitude;
+        if (deltaLongitude > 180) {
+            deltaLongitude -= 360;
+        } else if (deltaLongitude < -180) {
+            deltaLongitude += 360;
+        }
+        double residualEast = deltaLongitude * mReferenceCos * METERS_PER_DEGREE - mEast;
+        double residualNorth = (latitude - mReferenceLatitude) * METERS_PER_DEGREE - mNorth;
+        mEast += k0 * residualEast;
+        mNorth += k0 * residualNorth;
+        mVelocityEast += k1 * residualEast;
+        mVelocityNorth += k1 * residualNorth;
+        mP11 -= k1 * mP01;
+        mP01 -= k0 * mP01;
+        mP00 -= k0 * mP00;
+
+        if (Math.abs(mEast) > MAX_PLANE_DISTANCE || Math.abs(mNorth) > MAX_PLANE_DISTANCE) {
+            // Keep the projection error small by moving the plane under the estimate
+            double estimateLatitude = getLatitude();
+            double estimateLongitude = getLongitude();
+            setReference(estimateLatitude, estimateLongitude);
+            mEast = 0;
+            mNorth = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the state, so that the next location restarts the filter.
+     */
+    public synchronized void reset() {
+        mInitialized = false;
+    }
+
+    public synchronized double getLatitude() {
+        return mReferenceLatitude + mNorth / METERS_PER_DEGREE;
+    }
+
+    public synchronized double getLongitude() {
+        double longitude = mReferenceLongitude + mEast / (mReferenceCos * METERS_PER_DEGREE);
+        if (longitude > 180) {
+            longitude -= 360;
+        } else if (longitude < -180) {
+            longitude += 360;
+        }
+        return longitude;
+    }
+
+    /**
+     * Returns the estimated position error.
+     *
+     * @return the standard deviation of the position on each axis, in meters.
+     */
+    public synchronized float getAccuracy() {
+        return (float) Math.sqrt(mP00);
+    }
+
+    /**
+     * Returns the estimated speed.
+     *
+     * @return the speed, in meters/second.
+     */
+    public synchronized float getSpeed() {
+        return (float) Math.sqrt(mVelocityEast * mVelocityEast + mVelocityNorth * mVelocityNorth);
+    }
+
+    /**
+     * Returns the estimated bearing.
+     *
+     * @return the bearing, in degrees east of true north between 0 and 360.
+     */
+    public synchronized float getBearing() {
+        double bearing = Math.toDegrees(Math.atan2(mVelocityEast, mVelocityNorth));
+        return (float) (bearing < 0 ? bearing + 360 : bearing);
+    }
+
+    private void reset(double latitude, double longitude, double variance, long time) {
+        setReference(latitude, longitude);
+        mTime = time;
+        mEast = 0;
+        mNorth = 0;
+        mVelocityEast = 0;
+        mVelocityNorth = 0;
+        mP00 = variance;
+        mP01 = 0;
+        mP11 = INITIAL_VELOCITY_VARIANCE;
+        mInitialized = true;
+    }
+
+    private void setReference(double latitude, double longitude) {
+        mReferenceLatitude = latitude;
+        mReferenceLongitude = longitude;
+        // Don't let the projection degenerate at the poles
+        mReferenceCos = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.geofence;
+
+/**
+ * Uniform latitude/longitude grid mapping each cell to the geofences overlapping it, the spatial
+ * index of the GeofenceEngine of location-hub.
+ * <p/>
+ * Cells are kept in an open-addressing hash table keyed by their packed coordinates, and the members
+ * of each cell in a growable int array, so looking up a cell never allocates. Cells are only
+ * created for the areas actually covered by geofences, and freed when their last member is
+ * removed: the freed slots are marked as deleted so the lookups keep probing past them, and the
+ * table is rebuilt once the deleted slots pile up.
+ * <p/>
+ * A cell is addressed by its key, see {@link GeofenceGrid#getKey(int, int)}, and read through its
+ * slot, see {@link GeofenceGrid#find(long)}. Slots are only valid until the next add or remove.
+ * Not thread safe, the engine synchronizes the access.
+ */
+public class GeofenceGrid {
+    private static final long FREE = Long.MIN_VALUE;
+    // Latitude rows are nowhere near Integer.MIN_VALUE, so no cell key collides with the markers
+    private static final long DELETED = Long.MIN_VALUE + 1;
+    private static final int INITIAL_TABLE_SIZE = 64;
+    private static final int INITIAL_CELL_SIZE = 4;
+
+    private final double mCellSize;
+    private final int mLongitudeCells;
+
+    private long[] mKeys;
+    private int[][] mMembers;
+    private int[] mSizes;
+    private int mUsed;
+    private int mDeleted;
+
+    /**
+     * Creates a new grid.
+     *
+     * @param cellSize The side of a cell, in degrees.
+     */
+    public GeofenceGrid(double cellSize) {
+        mCellSize = cellSize;
+        mLongitudeCells = (int) Math.ceil(360 / cellSize);
+        allocate(INITIAL_TABLE_SIZE);
+    }
+
+    /**
+     * Returns the latitude row of a latitude.
+     */
+    public int getLatitudeCell(double latitude) {
+        return (int) Math.floor(latitude / mCellSize);
+    }
+
+    /**
+     * Returns the longitude column of a longitude, wrapping around the antimeridian.
+     */
+    public int getLongitudeCell(double longitude) {
+        int cell = (int) Math.floor(longitude / mCellSize) % mLongitudeCells;
+        return cell < 0 ? cell + mLongitudeCells : cell;
+    }
+
+    public int getLongitudeCellCount() {
+        return mLongitudeCells;
+    }
+
+    public double getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * Returns the number of cells with at least one geofence.
+     *
+     * @return the number of cells.
+     */
+    public int getCellCount() {
+        return mUsed;
+    }
+
+    /**
+     * Packs the coordinates of a cell into its key.
+     *
+     * @param latitudeCell  The latitude row.
+     * @param longitudeCell The longitude column.
+     * @return the key of the cell.
+     */
+    public static long getKey(int latitudeCell, int longitudeCell) {
+        return ((long) latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Finds the slot of a cell.
+     *
+     * @param key The packed cell coordinates.
+     * @return The slot of the cell, or -1 if no geofence is in it.
+     */
+    public int find(long key) {
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == key) {
+                return slot;
+            } else if (mKeys[slot] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the members of a cell, only the first {@link GeofenceGrid#getSize(int)} being valid.
+     *
+     * @param slot The slot of the cell.
+     * @return the geofences in the cell.
+     */
+    public int[] getMembers(int slot) {
+        return mMembers[slot];
+    }
+
+    public int getSize(int slot) {
+        return mSizes[slot];
+    }
+
+    /**
+     * Adds a geofence to a cell, creating the cell if needed.
+     *
+     * @param key   The packed cell coordinates.
+     * @param fence The geofence.
+     */
+    public void add(long key, int fence) {
+        int slot = find(key);
+        if (slot < 0) {
+            if ((mUsed + mDeleted + 1) * 2 > mKeys.length) {
+                // Grow only if the live cells need it, otherwise just drop the deleted slots
+                rehash((mUsed + 1) * 2 > mKeys.length ? mKeys.length * 2 : mKeys.length);
+            }
+            slot = insert(key, new int[INITIAL_CELL_SIZE], 0);
+            mUsed++;
+        }
+        int[] members = mMembers[slot];
+        if (mSizes[slot] == members.length) {
+            int[] grown = new int[members.length * 2];
+            System.arraycopy(members, 0, grown, 0, members.length);
+            mMembers[slot] = members = grown;
+        }
+        members[mSizes[slot]++] = fence;
+    }
+
+    /**
+     * Removes a geofence from a cell, freeing the cell if it was its last member.
+     *
+     * @param key   The packed cell coordinates.
+     * @param fence The geofence.
+     */
+    public void remove(long key, int fence) {
+        int slot = find(key);
+        if (slot < 0) {
+            return;
+        }
+        int[] members = mMembers[slot];
+        int size = mSizes[slot];
+        for (int i = 0; i < size; i++) {
+            if (members[i] == fence) {
+                // Order doesn't matter, move the last member over the removed one
+                members[i] = members[size - 1];
+                mSizes[slot] = size - 1;
+                if (size == 1) {
+                    free(slot);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the cells.
+     */
+    public void clear() {
+        allocate(INITIAL_TABLE_SIZE);
+    }
+
+    private void free(int slot) {
+        mKeys[slot] = DELETED;
+        mMembers[slot] = null;
+        mUsed--;
+        mDeleted++;
+        if (mDeleted * 4 > mKeys.length) {
+            // Shrink back once most of the cells are gone, keeping the table at most a quarter full
+            int tableSize = INITIAL_TABLE_SIZE;
+            while (mUsed * 4 > tableSize) {
+                tableSize *= 2;
+            }
+            rehash(Math.min(tableSize, mKeys.length));
+        }
+    }
+
+    private void allocate(int tableSize) {
+        mKeys = new long[tableSize];
+        mMembers = new int[tableSize][];
+        mSizes = new int[tableSize];
+        mUsed = 0;
+        mDeleted = 0;
+        for (int i = 0; i < tableSize; i++) {
+            mKeys[i] = FREE;
+        }
+    }
+
+    /**
+     * Puts a cell that is not in the table yet in the first free or deleted slot of its probe sequence.
+     */
+    private int insert(long key, int[] members, int size) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mKeys[slot] != FREE && mKeys[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        if (mKeys[slot] == DELETED) {
+            mDeleted--;
+        }
+        mKeys[slot] = key;
+        mMembers[slot] = members;
+        mSizes[slot] = size;
+        return slot;
+    }
+
+    private void rehash(int tableSize) {
+        long[] keys = mKeys;
+        int[][] members = mMembers;
+        int[] sizes = mSizes;
+        int used = mUsed;
+        allocate(tableSize);
+        mUsed = used;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && keys[i] != DELETED) {
+                insert(keys[i], members[i], sizes[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.geofence;
+
+/**
+ * A circular geofence, to be watched by a GeofenceEngine of location-hub.
+ * <p/>
+ * The geofence is only read when it is added to the engine, so the same instance can be reused to
+ * describe many geofences.
+ */
+public class LocationHubGeofence {
+    public static final int GEOFENCE_TRANSITION_ENTER = 1;
+    public static final int GEOFENCE_TRANSITION_EXIT = 2;
+    public static final int GEOFENCE_TRANSITION_DWELL = 4;
+
+    private static final int ALL_TRANSITIONS =
+            GEOFENCE_TRANSITION_ENTER | GEOFENCE_TRANSITION_EXIT | GEOFENCE_TRANSITION_DWELL;
+
+    private String mRequestId;
+    private double mLatitude;
+    private double mLongitude;
+    private float mRadius;
+    private int mTransitionTypes = GEOFENCE_TRANSITION_ENTER | GEOFENCE_TRANSITION_EXIT;
+    private long mLoiteringDelay = 0;
+
+    public String getRequestId() {
+        return mRequestId;
+    }
+
+    /**
+     * Sets the request ID of the geofence, which identifies it within the engine.
+     *
+     * @param requestId The request ID.
+     * @return The same {@link LocationHubGeofence} object, for chaining calls.
+     * @throws IllegalArgumentException if the request ID is null.
+     */
+    public LocationHubGeofence setRequestId(String requestId) throws IllegalArgumentException {
+        if (requestId == null) {
+            throw new IllegalArgumentException("The request ID cannot be null.");
+        }
+        mRequestId = requestId;
+        return this;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public float getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Sets the region of the geofence.
+     *
+     * @param latitude  The latitude of the center, in degrees between -90 and 90.
+     * @param longitude The longitude of the center, in degrees between -180 and 180.
+     * @param radius    The radius, in meters.
+     * @return The same {@link LocationHubGeofence} object, for chaining calls.
+     * @throws IllegalArgumentException if the center is out of range or the radius is not positive.
+     */
+    public LocationHubGeofence setCircularRegion(double latitude, double longitude, float radius) throws IllegalArgumentException {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException(String.format("(%f, %f) is not a valid center.", latitude, longitude));
+        }
+        if (radius <= 0) {
+            throw new IllegalArgumentException("The radius must be greater than 0.");
+        }
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadius = radius;
+        return this;
+    }
+
+    public int getTransitionTypes() {
+        return mTransitionTypes;
+    }
+
+    /**
+     * Sets the transitions the geofence reports.
+     *
+     * @param transitionTypes A bitwise combination of {@link LocationHubGeofence#GEOFENCE_TRANSITION_ENTER},
+     *                        {@link LocationHubGeofence#GEOFENCE_TRANSITION_EXIT} and
+     *                        {@link LocationHubGeofence#GEOFENCE_TRANSITION_DWELL}.
+     * @return The same {@link LocationHubGeofence} object, for chaining calls.
+     * @throws IllegalArgumentException if the transition types are not valid.
+     */
+    public LocationHubGeofence setTransitionTypes(int transitionTypes) throws IllegalArgumentException {
+        if (transitionTypes == 0 || (transitionTypes & ~ALL_TRANSITIONS) != 0) {
+            throw new IllegalArgumentException(
+                    String.format("Transition types %d is not an accepted value.", transitionTypes));
+        }
+        mTransitionTypes = transitionTypes;
+        return this;
+    }
+
+    public long getLoiteringDelay() {
+        return mLoiteringDelay;
+    }
+
+    /**
+     * Sets how long a location has to stay inside the geofence before
+     * {@link LocationHubGeofence#GEOFENCE_TRANSITION_DWELL} is reported.
+     *
+     * @param millis The loitering delay, in milliseconds.
+     * @return The same {@link LocationHubGeofence} object, for chaining calls.
+     * @throws IllegalArgumentException if the delay is less than zero.
+     */
+    public LocationHubGeofence setLoiteringDelay(long millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Loitering delay cannot be less than 0.");
+        }
+        mLoiteringDelay = millis;
+        return this;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A single memory-mapped segment file of a LocationJournal of location-hub.
+ * <p/>
+ * The file has a fixed size, and it is laid out as:
+ * <ul>
+ * <li>a header with the record capacity, the index stride, the record count and the time span of the records;</li>
+ * <li>a sparse index holding the time of one record every index stride records;</li>
+ * <li>the fixed-width records.</li>
+ * </ul>
+ * The record count is written after the record itself, so a record is either fully in the journal
+ * or not at all if the process dies while appending it. Likewise the magic number is written last
+ * when creating a segment, so a file whose header is still zeroed, or that is shorter than the
+ * header, is a segment whose creation was interrupted, and it is initialized again.
+ */
+public class JournalSegment {
+    /**
+     * Size of a record: time, latitude, longitude, altitude, accuracy, speed and bearing.
+     */
+    public static final int RECORD_SIZE = 8 + 8 + 8 + 4 + 4 + 4 + 4;
+
+    private static final int MAGIC = 0x4C484A31; // "LHJ1"
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int STRIDE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MIN_TIME_OFFSET = 16;
+    private static final int MAX_TIME_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private final File mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final int mIndexStride;
+    private final int mRecordsOffset;
+    private int mCount;
+
+    /**
+     * Opens a segment file, creating it if it doesn't exist yet.
+     *
+     * @param file        The segment {@link java.io.File}.
+     * @param capacity    The maximum number of records, used when creating the file.
+     * @param indexStride The number of records between two index entries, used when creating the file.
+     * @throws IOException if the file can't be mapped, or is not a valid segment.
+     */
+    public JournalSegment(File file, int capacity, int indexStride) throws IOException {
+        mFile = file;
+        boolean exists = false;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() >= HEADER_SIZE) {
+                MappedByteBuffer header = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                int magic = header.getInt(MAGIC_OFFSET);
+                if (magic == MAGIC) {
+                    capacity = header.getInt(CAPACITY_OFFSET);
+                    indexStride = header.getInt(STRIDE_OFFSET);
+                    if (capacity < 1 || indexStride < 1) {
+                        throw new IOException("Corrupted location journal segment header: " + file);
+                    }
+                    exists = true;
+                } else if (magic != 0) {
+                    throw new IOException("Not a location journal segment: " + file);
+                }
+            }
+            mCapacity = capacity;
+            mIndexStride = indexStride;
+            mRecordsOffset = HEADER_SIZE + getIndexSize(capacity, indexStride) * 8;
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    mRecordsOffset + (long) capacity * RECORD_SIZE);
+        } finally {
+            randomAccessFile.close();
+        }
+        if (exists) {
+            mCount = mBuffer.getInt(COUNT_OFFSET);
+            if (mCount < 0 || mCount > mCapacity) {
+                throw new IOException("Corrupted location journal segment header: " + file);
+            }
+        } else {
+            mBuffer.putInt(CAPACITY_OFFSET, mCapacity);
+            mBuffer.putInt(STRIDE_OFFSET, mIndexStride);
+            mBuffer.putInt(COUNT_OFFSET, 0);
+            mBuffer.putInt(MAGIC_OFFSET, MAGIC);
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public boolean isFull() {
+        return mCount >= mCapacity;
+    }
+
+    /**
+     * Returns the time of the oldest record.
+     *
+     * @return the time of the oldest record, or {@link java.lang.Long#MAX_VALUE} if the segment is empty.
+     */
+    public long getMinTime() {
+        return mCount > 0 ? mBuffer.getLong(MIN_TIME_OFFSET) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the time of the newest record.
+     *
+     * @return the time of the newest record, or {@link java.lang.Long#MIN_VALUE} if the segment is empty.
+     */
+    public long getMaxTime() {
+        return mCount > 0 ? mBuffer.getLong(MAX_TIME_OFFSET) : Long.MIN_VALUE;
+    }
+
+    /**
+     * Appends a record to the segment. The caller must check the segment is not full.
+     */
+    void append(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing) {
+        int position = mRecordsOffset + mCount * RECORD_SIZE;
+        mBuffer.putLong(position, time);
+        mBuffer.putDouble(position + 8, latitude);
+        mBuffer.putDouble(position + 16, longitude);
+        mBuffer.putFloat(position + 24, altitude);
+        mBuffer.putFloat(position + 28, accuracy);
+        mBuffer.putFloat(position + 32, speed);
+        mBuffer.putFloat(position + 36, bearing);
+        if (mCount % mIndexStride == 0) {
+            mBuffer.putLong(HEADER_SIZE + (mCount / mIndexStride) * 8, time);
+        }
+        if (mCount == 0) {
+            mBuffer.putLong(MIN_TIME_OFFSET, time);
+        }
+        mBuffer.putLong(MAX_TIME_OFFSET, time);
+        // Publish the record only once it has been fully written
+        mCount++;
+        mBuffer.putInt(COUNT_OFFSET, mCount);
+    }
+
+    /**
+     * Visits the records in a time range, in time order.
+     *
+     * @param fromTime The start of the range, inclusive.
+     * @param toTime   The end of the range, inclusive.
+     * @param visitor  The {@link net.frakbot.android.location.journal.JournalVisitor} receiving the records.
+     * @return false if the visitor asked to stop, true otherwise.
+     */
+    boolean query(long fromTime, long toTime, JournalVisitor visitor) {
+        int record = findScanStart(fromTime);
+        for (; record < mCount; record++) {
+            int position = mRecordsOffset + record * RECORD_SIZE;
+            long time = mBuffer.getLong(position);
+            if (time < fromTime) {
+                continue;
+            }
+            if (time > toTime) {
+                break;
+            }
+            boolean goOn = visitor.onRecord(time,
+                    mBuffer.getDouble(position + 8), mBuffer.getDouble(position + 16),
+                    mBuffer.getFloat(position + 24), mBuffer.getFloat(position + 28),
+                    mBuffer.getFloat(position + 32), mBuffer.getFloat(position + 36));
+            if (!goOn) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the segment content to the storage device.
+     */
+    void force() {
+        mBuffer.force();
+    }
+
+    /**
+     * Binary searches the sparse index for the last indexed record older than the given time,
+     * which is where a scan for that time has to start.
+     */
+    private int findScanStart(long time) {
+        int entries = (mCount + mIndexStride - 1) / mIndexStride;
+        int low = 0;
+        int high = entries - 1;
+        int start = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mBuffer.getLong(HEADER_SIZE + mid * 8) < time) {
+                start = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return start * mIndexStride;
+    }
+
+    private static int getIndexSize(int capacity, int indexStride) {
+        return (capacity + indexStride - 1) / indexStride;
+    }
+}
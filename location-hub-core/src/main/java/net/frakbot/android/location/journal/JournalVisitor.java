@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.journal;
+
+/**
+ * Receives the records read from a LocationJournal,
+ * as primitive values so that reading the journal doesn't allocate.
+ */
+public interface JournalVisitor {
+
+    /**
+     * Called for every record matching a journal query, in time order.
+     *
+     * @param time      The UTC time of the fix, in milliseconds since January 1, 1970.
+     * @param latitude  The latitude, in degrees.
+     * @param longitude The longitude, in degrees.
+     * @param altitude  The altitude, in meters, or {@link java.lang.Float#NaN}.
+     * @param accuracy  The accuracy, in meters, or {@link java.lang.Float#NaN}.
+     * @param speed     The speed, in meters/second, or {@link java.lang.Float#NaN}.
+     * @param bearing   The bearing, in degrees, or {@link java.lang.Float#NaN}.
+     * @return true to keep reading, false to stop the query.
+     */
+    public boolean onRecord(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing);
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of a {@link net.frakbot.android.location.metrics.LatencyHistogram} over a reporting window.
+ * <p/>
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they overestimate the
+ * real value by at most 12.5%, and they never exceed the exact maximum.
+ */
+public class HistogramSnapshot {
+    private final long[] mCounts;
+    private final long mCount;
+    private final long mMax;
+
+    HistogramSnapshot(long[] counts, long count, long max) {
+        mCounts = counts;
+        mCount = count;
+        mMax = max;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum, in nanoseconds, or 0 if no value was recorded.
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall.
+     *
+     * @param quantile The fraction, between 0 and 1.
+     * @return the percentile, in nanoseconds, or 0 if no value was recorded.
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1.
+     */
+    public long getPercentile(double quantile) throws IllegalArgumentException {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException(String.format("Quantile %f is not an accepted value.", quantile));
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * mCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.getBucketUpperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    public long getP50() {
+        return getPercentile(0.5);
+    }
+
+    public long getP99() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{count=" + mCount
+                + ", p50=" + TimeUnit.NANOSECONDS.toMicros(getP50()) + "us"
+                + ", p99=" + TimeUnit.NANOSECONDS.toMicros(getP99()) + "us"
+                + ", max=" + TimeUnit.NANOSECONDS.toMicros(mMax) + "us}";
+    }
+}
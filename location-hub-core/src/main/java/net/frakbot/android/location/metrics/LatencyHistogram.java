@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of durations, with logarithmic buckets.
+ * <p/>
+ * Every power of two is split into {@link LatencyHistogram#SUB_BUCKETS} linear sub-buckets, so a
+ * recorded value is known within 12.5% of its magnitude, from nanoseconds up to centuries, in
+ * {@link LatencyHistogram#BUCKET_COUNT} counters. Recording never allocates nor locks, so it can
+ * be called from any thread on the delivery path.
+ * <p/>
+ * Taking a snapshot while values are being recorded may miss, or count in the next window, the
+ * values recorded at the same time.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mMax;
+
+    public LatencyHistogram() {
+        mCounts = new AtomicLongArray(BUCKET_COUNT);
+        mMax = new AtomicLong();
+    }
+
+    /**
+     * Records a duration. Negative durations, that can come from clocks of different sources,
+     * are recorded as 0.
+     *
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mCounts.incrementAndGet(getBucket(nanos));
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the recorded durations.
+     *
+     * @param reset true to empty the histogram and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.metrics.HistogramSnapshot}.
+     */
+    public HistogramSnapshot snapshot(boolean reset) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = reset ? mCounts.getAndSet(i, 0) : mCounts.get(i);
+            total += counts[i];
+        }
+        long max = reset ? mMax.getAndSet(0) : mMax.get();
+        return new HistogramSnapshot(counts, total, max);
+    }
+
+    /**
+     * Maps a value to its bucket: values below {@link LatencyHistogram#SUB_BUCKETS} have a bucket
+     * each, the others are bucketed by their highest bit and the {@link LatencyHistogram#SUB_BUCKET_BITS}
+     * bits below it.
+     */
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the highest value mapped to a bucket.
+     */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = (SUB_BUCKETS + subBucket) * width;
+        return lowerBound + (width - 1);
+    }
+}
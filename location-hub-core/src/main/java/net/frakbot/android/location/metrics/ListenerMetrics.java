@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.metrics;
+
+/**
+ * Immutable snapshot of the delivery metrics of a single
+ * LocationHubListener over a reporting window.
+ */
+public class ListenerMetrics {
+    private final HistogramSnapshot mDeliveryLatency;
+    private final HistogramSnapshot mCallbackDuration;
+
+    public ListenerMetrics(HistogramSnapshot deliveryLatency, HistogramSnapshot callbackDuration) {
+        mDeliveryLatency = deliveryLatency;
+        mCallbackDuration = callbackDuration;
+    }
+
+    /**
+     * Returns the delay between the time each location was fixed and the time it was handed to the
+     * listener, including any time spent waiting in the listener mailbox or batch.
+     *
+     * @return The {@link net.frakbot.android.location.metrics.HistogramSnapshot} of the latencies.
+     */
+    public HistogramSnapshot getDeliveryLatency() {
+        return mDeliveryLatency;
+    }
+
+    /**
+     * Returns the time each location callback of the listener took to return.
+     *
+     * @return The {@link net.frakbot.android.location.metrics.HistogramSnapshot} of the durations.
+     */
+    public HistogramSnapshot getCallbackDuration() {
+        return mCallbackDuration;
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerMetrics{latency=" + mDeliveryLatency + ", callback=" + mCallbackDuration + "}";
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvTraceReaderTest {
+    private static final long TIME = 1392632130000L;
+
+    @Test
+    public void headerCommentsAndBlankLinesAreSkipped() throws IOException {
+        CsvTraceReader reader = read("time,latitude,longitude\n# recorded on a bike\n\n" + TIME + ",45.5,9.25\n");
+        LocationFix fix = reader.next();
+        assertEquals(TIME, fix.getTime());
+        assertEquals(45.5, fix.getLatitude(), 0);
+        assertEquals(9.25, fix.getLongitude(), 0);
+        assertEquals("replay", fix.getProvider());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void emptyOptionalValuesAreLeftUnset() throws IOException {
+        LocationFix fix = read(TIME + ",45.5,9.25,120,,3.5\n").next();
+        assertEquals(120, fix.getAltitude(), 0);
+        assertFalse(fix.hasAccuracy());
+        assertEquals(3.5, fix.getSpeed(), 0);
+        assertFalse(fix.hasBearing());
+    }
+
+    @Test
+    public void isoTimesAreParsed() throws IOException {
+        CsvTraceReader reader = read("2014-02-17T10:15:30.250Z,45.5,9.25\n"
+                + "2014-02-17T11:15:30+01:00,45.5,9.25\n"
+                + "2014-02-17T11:15:30+01,45.5,9.25\n");
+        assertEquals(TIME + 250, reader.next().getTime());
+        assertEquals(TIME, reader.next().getTime());
+        assertEquals(TIME, reader.next().getTime());
+    }
+
+    @Test
+    public void malformedLinesAreReportedWithTheirNumber() throws IOException {
+        CsvTraceReader reader = read(TIME + ",45.5,9.25\n" + TIME + ",north,9.25\n");
+        reader.next();
+        try {
+            reader.next();
+            fail("A malformed line must not be read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+
+    private static CsvTraceReader read(String trace) {
+        return new CsvTraceReader(new StringReader(trace), "replay");
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class GpxTraceReaderTest {
+    private static final long TIME = 1392632130000L;
+
+    @Test
+    public void trackPointsAreRead() throws IOException {
+        GpxTraceReader reader = read("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE gpx>\n"
+                + "<gpx version=\"1.0\" xmlns=\"http://www.topografix.com/GPX/1/0\">\n"
+                + "<!-- a <trkpt> in a comment is not a point -->\n"
+                + "<trk><name><![CDATA[Morning <ride>]]></name><trkseg>\n"
+                + "<trkpt lat=\"45.5\" lon='9.25'><ele>120.5</ele><time>2014-02-17T10:15:30Z</time>"
+                + "<speed>3.5</speed><course>90</course><hdop>1.2</hdop></trkpt>\n"
+                + "<trkpt lon=\"9.26\" lat=\"45.51\"><time>2014-02-17T10:15:31.500Z</time></trkpt>\n"
+                + "</trkseg></trk></gpx>");
+        LocationFix fix = reader.next();
+        assertEquals(TIME, fix.getTime());
+        assertEquals(45.5, fix.getLatitude(), 0);
+        assertEquals(9.25, fix.getLongitude(), 0);
+        assertEquals(120.5, fix.getAltitude(), 0.001);
+        assertEquals(3.5, fix.getSpeed(), 0.001);
+        assertEquals(90, fix.getBearing(), 0);
+        assertEquals(1.2 * NmeaTraceReader.HDOP_ACCURACY, fix.getAccuracy(), 0.001);
+        fix = reader.next();
+        assertEquals(TIME + 1500, fix.getTime());
+        assertEquals(45.51, fix.getLatitude(), 0);
+        assertFalse(fix.hasAltitude());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void routePointsAndPrefixedElementsAreRead() throws IOException {
+        GpxTraceReader reader = read("<gpx:gpx xmlns:gpx=\"http://www.topografix.com/GPX/1/1\"><gpx:rte>"
+                + "<gpx:rtept gpx:lat=\"45.5\" gpx:lon=\"9.25\"><gpx:time>2014-02-17T11:15:30+01:00</gpx:time></gpx:rtept>"
+                + "</gpx:rte></gpx:gpx>");
+        LocationFix fix = reader.next();
+        assertEquals(TIME, fix.getTime());
+        assertEquals(9.25, fix.getLongitude(), 0);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void pointsWithoutTimeAreSkipped() throws IOException {
+        GpxTraceReader reader = read("<gpx><wpt lat=\"1\" lon=\"1\"/><trkpt lat=\"45\" lon=\"9\"/>"
+                + "<trkpt lat=\"45\" lon=\"9\"><ele>10</ele></trkpt>"
+                + "<trkpt lat=\"45.5\" lon=\"9.25\"><time>2014-02-17T10:15:30Z</time></trkpt></gpx>");
+        assertEquals(TIME, reader.next().getTime());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void malformedValuesAreReported() throws IOException {
+        GpxTraceReader reader = read("<gpx><trkpt lat=\"45\" lon=\"9\"><time>17/02/2014</time></trkpt></gpx>");
+        try {
+            reader.next();
+            fail("A malformed time must not be read");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static GpxTraceReader read(String trace) {
+        return new GpxTraceReader(new StringReader(trace), "replay");
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class NmeaTraceReaderTest {
+    private static final long TIME = 1392632130000L;
+    private static final String GGA = "$GPGGA,101530.00,4530.000,N,00915.000,E,1,08,1.2,120.5,M,47.0,M,,*6B";
+    private static final String RMC = "$GPRMC,101530.00,A,4530.000,N,00915.000,E,10.0,90.0,170214,,,A*5E";
+
+    @Test
+    public void rmcSentencesAreRead() throws IOException {
+        LocationFix fix = read(RMC).next();
+        assertEquals(TIME, fix.getTime());
+        assertEquals(45.5, fix.getLatitude(), 1e-9);
+        assertEquals(9.25, fix.getLongitude(), 1e-9);
+        assertEquals(5.144, fix.getSpeed(), 0.001);
+        assertEquals(90, fix.getBearing(), 0);
+        assertFalse(fix.hasAltitude());
+        assertFalse(fix.hasAccuracy());
+    }
+
+    @Test
+    public void ggaOfTheSameTimeAddsAltitudeAndAccuracy() throws IOException {
+        LocationFix fix = read(GGA + "\n" + RMC).next();
+        assertEquals(120.5, fix.getAltitude(), 0.001);
+        assertEquals(1.2 * NmeaTraceReader.HDOP_ACCURACY, fix.getAccuracy(), 0.001);
+    }
+
+    @Test
+    public void southernAndWesternCoordinatesAreNegative() throws IOException {
+        LocationFix fix = read("$GPRMC,101530.00,A,4530.000,S,00915.000,W,,,170214,,,A").next();
+        assertEquals(-45.5, fix.getLatitude(), 1e-9);
+        assertEquals(-9.25, fix.getLongitude(), 1e-9);
+    }
+
+    @Test
+    public void wrongChecksumsAndVoidFixesAreSkipped() throws IOException {
+        NmeaTraceReader reader = read(RMC.replace("*5E", "*00") + "\n"
+                + "$GPRMC,101530.00,V,,,,,,,170214,,,N\n"
+                + "$GPGSV,3,1,11,03,03,111,00,04,15,270,00,06,01,010,00,13,06,292,00");
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void truncatedSentencesAreSkipped() throws IOException {
+        // Sentences cut at power loss, without a checksum to catch them
+        NmeaTraceReader reader = read("$GPRMC,101530.00,A,,N,00915.000,E,,,170214,,,A\n"
+                + "$GPRMC,101530.00,A,45,N,00915.000,E,,,170214,,,A\n"
+                + "$GPRMC,101530.00,A,4530.000,N,0,E,,,170214,,,A\n"
+                + "$GPRMC,101530.00,A,4530.000,N,00915.000,E,,,1702,,,A\n"
+                + RMC);
+        assertEquals(TIME, reader.next().getTime());
+        assertNull(reader.next());
+    }
+
+    private static NmeaTraceReader read(String trace) {
+        return new NmeaTraceReader(new StringReader(trace), "replay");
+    }
+}
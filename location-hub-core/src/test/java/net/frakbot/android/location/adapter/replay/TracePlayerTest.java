@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import net.frakbot.android.location.common.LocationFix;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TracePlayerTest {
+
+    @Test
+    public void traceTimesStartFromTheBaseTime() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        TracePlayer player = new TracePlayer(listener, TracePlayer.SPEED_UNLIMITED);
+        assertEquals(2500, player.play(trace(1000, 2000, 2500), 1000));
+        assertEquals(3, listener.mFixes.size());
+        assertEquals(1000, (long) listener.mTraceTimes.get(0));
+        assertEquals(2000, (long) listener.mTraceTimes.get(1));
+        assertEquals(2500, (long) listener.mTraceTimes.get(2));
+        // The fixes keep the recorded time
+        assertEquals(2500, listener.mFixes.get(2).getTime());
+    }
+
+    @Test
+    public void passesCanBeChained() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        TracePlayer player = new TracePlayer(listener, TracePlayer.SPEED_UNLIMITED);
+        long endTime = player.play(trace(0, 100), 0);
+        endTime = player.play(trace(0, 100), endTime);
+        assertEquals(200, endTime);
+        assertEquals(100, (long) listener.mTraceTimes.get(2));
+    }
+
+    @Test
+    public void emptyTracesEndAtTheBaseTime() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        assertEquals(42, new TracePlayer(listener, 1).play(trace(), 42));
+        assertTrue(listener.mFixes.isEmpty());
+    }
+
+    @Test
+    public void tracesArePacedByTheSpeed() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        TracePlayer player = new TracePlayer(listener, 10);
+        long start = System.nanoTime();
+        // 200 ms of trace at ten times the speed, 250 Hz
+        player.play(trace(0, 40, 80, 120, 160, 200), 0);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(6, listener.mFixes.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSpeedsAreRejected() {
+        new TracePlayer(new RecordingListener(), -1);
+    }
+
+    @Test
+    public void interruptionStopsThePass() throws IOException {
+        RecordingListener listener = new RecordingListener();
+        Thread.currentThread().interrupt();
+        try {
+            new TracePlayer(listener, TracePlayer.SPEED_UNLIMITED).play(trace(0, 100), 0);
+            fail("An interrupted pass must not complete");
+        } catch (InterruptedException e) {
+            assertTrue(listener.mFixes.isEmpty());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static TraceReader trace(long... times) {
+        StringBuilder trace = new StringBuilder();
+        for (long time : times) {
+            trace.append(time).append(",45.5,9.25\n");
+        }
+        return new CsvTraceReader(new StringReader(trace.toString()), "replay");
+    }
+
+    private static class RecordingListener implements TraceListener {
+        private final List<LocationFix> mFixes = new ArrayList<LocationFix>();
+        private final List<Long> mTraceTimes = new ArrayList<Long>();
+
+        @Override
+        public void onTraceFix(LocationFix fix, long traceTime) {
+            mFixes.add(fix);
+            mTraceTimes.add(traceTime);
+        }
+    }
+}
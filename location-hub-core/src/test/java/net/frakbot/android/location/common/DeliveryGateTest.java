@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeliveryGateTest {
+
+    @Test
+    public void firstLocationIsAlwaysAccepted() {
+        DeliveryGate gate = new DeliveryGate(new LocationHubRequest()
+                .setInterval(10000)
+                .setSmallestDisplacement(100));
+        assertTrue(gate.accept(45, 9, 0));
+        assertEquals(1, gate.getAcceptedCount());
+    }
+
+    @Test
+    public void locationsFasterThanTheFastestIntervalAreSuppressed() {
+        DeliveryGate gate = new DeliveryGate(new LocationHubRequest()
+                .setInterval(10000)
+                .setFastestInterval(1000));
+        assertTrue(gate.accept(45, 9, 0));
+        assertFalse(gate.accept(45, 9, 999));
+        assertTrue(gate.accept(45, 9, 1000));
+        assertEquals(2, gate.getAcceptedCount());
+        assertEquals(1, gate.getIntervalSuppressedCount());
+        assertEquals(1, gate.getSuppressedCount());
+    }
+
+    @Test
+    public void locationsCloserThanTheSmallestDisplacementAreSuppressed() {
+        DeliveryGate gate = new DeliveryGate(new LocationHubRequest()
+                .setInterval(0)
+                .setSmallestDisplacement(100));
+        assertTrue(gate.accept(new LocationFix("test", 0, 45, 9), 0));
+        // About 11 meters north
+        assertFalse(gate.accept(new LocationFix("test", 0, 45.0001, 9), 1000));
+        // About 111 meters north
+        assertTrue(gate.accept(new LocationFix("test", 0, 45.001, 9), 2000));
+        assertEquals(1, gate.getDisplacementSuppressedCount());
+        assertEquals(0, gate.getIntervalSuppressedCount());
+    }
+
+    @Test
+    public void displacementIsMeasuredFromTheLastAcceptedLocation() {
+        DeliveryGate gate = new DeliveryGate(new LocationHubRequest()
+                .setInterval(0)
+                .setSmallestDisplacement(100));
+        assertTrue(gate.accept(45, 9, 0));
+        // Small steps never add up, since the suppressed locations aren't recorded
+        for (int i = 1; i <= 5; i++) {
+            assertFalse(gate.accept(45 + i * 0.0001, 9, i * 1000));
+        }
+        assertEquals(5, gate.getDisplacementSuppressedCount());
+    }
+}
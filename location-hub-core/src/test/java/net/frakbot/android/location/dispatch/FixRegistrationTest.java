@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FixRegistrationTest {
+
+    @Test
+    public void singleFixesAreDeliveredDirectly() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest());
+        double[] fix = {45, 9};
+        assertTrue(registration.deliver(fix, 0));
+        assertEquals(1, registration.mFixes.size());
+        assertSame(fix, registration.mFixes.get(0));
+        assertTrue(registration.mBatches.isEmpty());
+    }
+
+    @Test
+    public void suppressedFixesAreNotDelivered() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest()
+                .setInterval(10000)
+                .setFastestInterval(1000));
+        assertTrue(registration.deliver(new double[]{45, 9}, 0));
+        assertFalse(registration.deliver(new double[]{45, 9}, 500));
+        assertEquals(1, registration.mFixes.size());
+    }
+
+    @Test
+    public void fullBatchIsDelivered() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest().setBatchSize(3));
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.deliver(new double[]{45, 9}, 1);
+        assertTrue(registration.mBatches.isEmpty());
+        registration.deliver(new double[]{45, 9}, 2);
+        assertEquals(1, registration.mBatches.size());
+        assertEquals(3, registration.mBatches.get(0).size());
+        assertTrue(registration.mFixes.isEmpty());
+    }
+
+    @Test
+    public void batchIsDeliveredWhenTheMaxWaitTimeExpires() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest()
+                .setMaxWaitTime(1000)
+                .setBatchSize(10));
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.deliver(new double[]{45, 9}, 10);
+        // Only the first fix of the batch starts the timer
+        assertEquals(1, registration.mTimeouts.size());
+        assertEquals(1000, (long) registration.mDelays.get(0));
+        assertTrue(registration.mBatches.isEmpty());
+
+        registration.mTimeouts.get(0).run();
+        assertEquals(1, registration.mBatches.size());
+        assertEquals(2, registration.mBatches.get(0).size());
+    }
+
+    @Test
+    public void staleTimeoutDoesNotCutTheNextBatch() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest()
+                .setMaxWaitTime(1000)
+                .setBatchSize(2));
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.deliver(new double[]{45, 9}, 10);
+        assertEquals(1, registration.mBatches.size());
+
+        registration.deliver(new double[]{45, 9}, 20);
+        // The timer of the first batch fires after it was already delivered as full
+        registration.mTimeouts.get(0).run();
+        assertEquals(1, registration.mBatches.size());
+        registration.mTimeouts.get(1).run();
+        assertEquals(2, registration.mBatches.size());
+        assertEquals(1, registration.mBatches.get(1).size());
+    }
+
+    @Test
+    public void lateFixClosesTheBatch() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest()
+                .setMaxWaitTime(1000)
+                .setBatchSize(10));
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.deliver(new double[]{45, 9}, 1500);
+        assertEquals(1, registration.mBatches.size());
+        assertEquals(2, registration.mBatches.get(0).size());
+    }
+
+    @Test
+    public void flushDeliversThePendingBatch() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest().setBatchSize(10));
+        registration.flush();
+        assertTrue(registration.mBatches.isEmpty());
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.flush();
+        assertEquals(1, registration.mBatches.size());
+        assertEquals(1, registration.mBatches.get(0).size());
+    }
+
+    @Test
+    public void closeDeliversThePendingBatchAndStops() {
+        TestRegistration registration = new TestRegistration(new LocationHubRequest().setBatchSize(10));
+        registration.deliver(new double[]{45, 9}, 0);
+        registration.close();
+        assertEquals(1, registration.mBatches.size());
+
+        registration.deliver(new double[]{45, 9}, 1000);
+        registration.flush();
+        assertEquals(1, registration.mBatches.size());
+    }
+
+    /**
+     * Registration of bare latitude/longitude pairs, scheduling its batch timeouts manually.
+     */
+    private static class TestRegistration extends FixRegistration<double[]> {
+        final List<double[]> mFixes = new ArrayList<double[]>();
+        final List<List<double[]>> mBatches = new ArrayList<List<double[]>>();
+        final List<Runnable> mTimeouts = new ArrayList<Runnable>();
+        final List<Long> mDelays = new ArrayList<Long>();
+
+        TestRegistration(LocationHubRequest request) {
+            super(request, null, null);
+        }
+
+        @Override
+        protected double getLatitude(double[] fix) {
+            return fix[0];
+        }
+
+        @Override
+        protected double getLongitude(double[] fix) {
+            return fix[1];
+        }
+
+        @Override
+        protected long getElapsedAgeNanos(double[] fix) {
+            return 0;
+        }
+
+        @Override
+        protected void onFix(double[] fix) {
+            mFixes.add(fix);
+        }
+
+        @Override
+        protected void onFixBatch(List<double[]> fixes) {
+            mBatches.add(fixes);
+        }
+
+        @Override
+        protected void scheduleBatchTimeout(Runnable task, long delayMillis) {
+            mTimeouts.add(task);
+            mDelays.add(delayMillis);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ListenerMailboxTest {
+
+    @Test
+    public void itemsAreDeliveredInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        TestMailbox mailbox = new TestMailbox(executor, 4, LocationHubRequest.OVERFLOW_CONFLATE_LATEST);
+        mailbox.post(1);
+        mailbox.post(2);
+        mailbox.post(3);
+        // A single drain task is scheduled for the queued items
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2, 3), mailbox.mDelivered);
+    }
+
+    @Test
+    public void conflateLatestReplacesTheNewestItem() {
+        ManualExecutor executor = new ManualExecutor();
+        TestMailbox mailbox = new TestMailbox(executor, 2, LocationHubRequest.OVERFLOW_CONFLATE_LATEST);
+        for (int i = 1; i <= 5; i++) {
+            mailbox.post(i);
+        }
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 5), mailbox.mDelivered);
+    }
+
+    @Test
+    public void dropOldestEvictsTheOldestItem() {
+        ManualExecutor executor = new ManualExecutor();
+        TestMailbox mailbox = new TestMailbox(executor, 2, LocationHubRequest.OVERFLOW_DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            mailbox.post(i);
+        }
+        executor.runAll();
+        assertEquals(Arrays.asList(4, 5), mailbox.mDelivered);
+    }
+
+    @Test
+    public void blockWaitsForTheListener() throws InterruptedException {
+        ManualExecutor executor = new ManualExecutor();
+        final TestMailbox mailbox = new TestMailbox(executor, 1, LocationHubRequest.OVERFLOW_BLOCK);
+        mailbox.post(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mailbox.post(2);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        // Draining the first item makes room for the blocked one
+        executor.runAll();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2), mailbox.mDelivered);
+    }
+
+    @Test
+    public void blockDropsTheOldestOnTheDrainThread() {
+        final List<Integer> delivered = new ArrayList<Integer>();
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        ListenerMailbox<Integer> mailbox = new ListenerMailbox<Integer>(direct, 1, LocationHubRequest.OVERFLOW_BLOCK) {
+            @Override
+            protected void deliver(Integer item) {
+                delivered.add(item);
+                if (item == 1) {
+                    // The listener posting back would deadlock if it blocked on itself
+                    post(2);
+                    post(3);
+                }
+            }
+        };
+        mailbox.post(1);
+        assertEquals(Arrays.asList(1, 3), delivered);
+    }
+
+    @Test
+    public void closeDropsTheQueuedItems() {
+        ManualExecutor executor = new ManualExecutor();
+        TestMailbox mailbox = new TestMailbox(executor, 4, LocationHubRequest.OVERFLOW_CONFLATE_LATEST);
+        mailbox.post(1);
+        mailbox.close();
+        mailbox.post(2);
+        executor.runAll();
+        assertTrue(mailbox.mDelivered.isEmpty());
+    }
+
+    @Test
+    public void shutdownDeliversTheQueuedItems() {
+        ManualExecutor executor = new ManualExecutor();
+        TestMailbox mailbox = new TestMailbox(executor, 4, LocationHubRequest.OVERFLOW_CONFLATE_LATEST);
+        mailbox.post(1);
+        mailbox.shutdown();
+        mailbox.post(2);
+        executor.runAll();
+        assertEquals(Arrays.asList(1), mailbox.mDelivered);
+    }
+
+    @Test
+    public void throwingListenerDoesNotStopTheMailbox() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<Integer> delivered = new ArrayList<Integer>();
+        ListenerMailbox<Integer> mailbox = new ListenerMailbox<Integer>(executor, 4, LocationHubRequest.OVERFLOW_BLOCK) {
+            @Override
+            protected void deliver(Integer item) {
+                if (item == 2) {
+                    throw new IllegalStateException("Listener failure");
+                }
+                delivered.add(item);
+            }
+        };
+        mailbox.post(1);
+        mailbox.post(2);
+        mailbox.post(3);
+        try {
+            executor.runAll();
+            fail("The exception of the listener should reach the executor.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // The items queued after the failure get a new drain
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 3), delivered);
+
+        mailbox.post(4);
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 3, 4), delivered);
+    }
+
+    /**
+     * Executor running its tasks only when asked to.
+     */
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    if (mTasks.isEmpty()) {
+                        return;
+                    }
+                    task = mTasks.remove(0);
+                }
+                task.run();
+            }
+        }
+    }
+
+    private static class TestMailbox extends ListenerMailbox<Integer> {
+        final List<Integer> mDelivered = new ArrayList<Integer>();
+
+        TestMailbox(Executor executor, int capacity, int overflowPolicy) {
+            super(executor, capacity, overflowPolicy);
+        }
+
+        @Override
+        protected void deliver(Integer item) {
+            mDelivered.add(item);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+    private RequestCoalescer mCoalescer;
+
+    @Before
+    public void setUp() {
+        mCoalescer = new RequestCoalescer();
+    }
+
+    @Test
+    public void emptySetBuildsNothing() {
+        assertTrue(mCoalescer.isEmpty());
+        assertNull(mCoalescer.build());
+    }
+
+    @Test
+    public void buildTakesTheTightestParameters() {
+        mCoalescer.add(new LocationHubRequest()
+                .setPriority(LocationHubRequest.PRIORITY_LOW_POWER)
+                .setInterval(10000)
+                .setSmallestDisplacement(5));
+        mCoalescer.add(new LocationHubRequest()
+                .setPriority(LocationHubRequest.PRIORITY_HIGH_ACCURACY)
+                .setInterval(60000)
+                .setFastestInterval(1000)
+                .setSmallestDisplacement(50));
+
+        LocationHubRequest request = mCoalescer.build();
+        assertEquals(LocationHubRequest.PRIORITY_HIGH_ACCURACY, request.getPriority());
+        assertEquals(10000, request.getInterval());
+        assertEquals(1000, request.getFastestInterval());
+        assertEquals(5, request.getSmallestDisplacement(), 0);
+    }
+
+    @Test
+    public void removeRestoresThePreviousRequest() {
+        LocationHubRequest slow = new LocationHubRequest()
+                .setPriority(LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setInterval(30000);
+        LocationHubRequest fast = new LocationHubRequest()
+                .setPriority(LocationHubRequest.PRIORITY_HIGH_ACCURACY)
+                .setInterval(1000);
+        mCoalescer.add(slow);
+        LocationHubRequest before = mCoalescer.build();
+        mCoalescer.add(fast);
+        assertFalse(RequestCoalescer.isSameRequest(before, mCoalescer.build()));
+
+        mCoalescer.remove(fast);
+        assertTrue(RequestCoalescer.isSameRequest(before, mCoalescer.build()));
+        assertEquals(LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY, mCoalescer.build().getPriority());
+    }
+
+    @Test
+    public void duplicateRequestsAreCounted() {
+        LocationHubRequest request = new LocationHubRequest().setInterval(5000);
+        mCoalescer.add(request);
+        mCoalescer.add(request);
+        mCoalescer.remove(request);
+        assertFalse(mCoalescer.isEmpty());
+        assertEquals(5000, mCoalescer.build().getInterval());
+        mCoalescer.remove(request);
+        assertTrue(mCoalescer.isEmpty());
+    }
+
+    @Test
+    public void fastestIntervalDefaultsToAFractionOfTheInterval() {
+        mCoalescer.add(new LocationHubRequest().setInterval(6000));
+        assertEquals(1000, mCoalescer.getFastestInterval());
+    }
+
+    @Test
+    public void clearRemovesAllRequests() {
+        mCoalescer.add(new LocationHubRequest().setInterval(1000));
+        mCoalescer.add(new LocationHubRequest().setInterval(2000));
+        mCoalescer.clear();
+        assertTrue(mCoalescer.isEmpty());
+    }
+
+    @Test
+    public void unsetPriorityIsIgnored() {
+        assertFalse(RequestCoalescer.isPrioritySet(0));
+        assertTrue(RequestCoalescer.isPrioritySet(LocationHubRequest.PRIORITY_NO_POWER));
+        mCoalescer.add(new LocationHubRequest().setInterval(1000));
+        assertEquals(0, mCoalescer.build().getPriority());
+    }
+
+    @Test
+    public void isSameRequestHandlesNull() {
+        assertTrue(RequestCoalescer.isSameRequest(null, null));
+        assertFalse(RequestCoalescer.isSameRequest(new LocationHubRequest(), null));
+    }
+}
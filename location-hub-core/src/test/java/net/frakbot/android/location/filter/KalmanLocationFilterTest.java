@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.filter;
+
+import net.frakbot.android.location.common.LocationFix;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KalmanLocationFilterTest {
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+
+    private KalmanLocationFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mFilter = new KalmanLocationFilter();
+    }
+
+    @Test
+    public void firstMeasurementInitializesTheState() {
+        assertTrue(mFilter.update(45, 9, 10, 1000));
+        assertEquals(45, mFilter.getLatitude(), 1e-9);
+        assertEquals(9, mFilter.getLongitude(), 1e-9);
+        assertEquals(10, mFilter.getAccuracy(), 1e-3);
+        assertEquals(0, mFilter.getSpeed(), 0);
+    }
+
+    @Test
+    public void olderMeasurementsAreIgnored() {
+        assertTrue(mFilter.update(45, 9, 10, 2000));
+        assertFalse(mFilter.update(46, 9, 10, 1000));
+        assertEquals(45, mFilter.getLatitude(), 1e-9);
+        assertNull(mFilter.filter(new LocationFix("test", 1500, 46, 9)));
+    }
+
+    @Test
+    public void noiseIsSmoothed() {
+        Random random = new Random(42);
+        double measurementError = 0;
+        double estimateError = 0;
+        for (int i = 0; i < 120; i++) {
+            double noise = random.nextGaussian() * 20;
+            mFilter.update(45 + noise / METERS_PER_DEGREE, 9, 20, i * 1000L);
+            if (i >= 60) {
+                double error = (mFilter.getLatitude() - 45) * METERS_PER_DEGREE;
+                measurementError += noise * noise;
+                estimateError += error * error;
+            }
+        }
+        assertTrue("Error " + estimateError + " over " + measurementError, estimateError < measurementError / 2);
+        assertTrue(mFilter.getAccuracy() < 20);
+    }
+
+    @Test
+    public void constantVelocityIsTracked() {
+        // 10 m/s to the north
+        double step = 10 / METERS_PER_DEGREE;
+        for (int i = 0; i < 60; i++) {
+            mFilter.update(45 + i * step, 9, 5, i * 1000L);
+        }
+        assertEquals(10, mFilter.getSpeed(), 0.5);
+        float bearing = mFilter.getBearing();
+        assertTrue("Bearing " + bearing, bearing < 2 || bearing > 358);
+        assertEquals(45 + 59 * step, mFilter.getLatitude(), 5 / METERS_PER_DEGREE);
+    }
+
+    @Test
+    public void antimeridianIsCrossed() {
+        // 10 m/s to the east, across the 180th meridian at the equator
+        double step = 10 / METERS_PER_DEGREE;
+        double longitude = 180 - 30 * step;
+        for (int i = 0; i < 60; i++) {
+            double wrapped = longitude > 180 ? longitude - 360 : longitude;
+            mFilter.update(0, wrapped, 5, i * 1000L);
+            longitude += step;
+        }
+        assertEquals(10, mFilter.getSpeed(), 0.5);
+        assertEquals(90, mFilter.getBearing(), 2);
+        double estimate = mFilter.getLongitude();
+        assertTrue("Longitude " + estimate, estimate >= -180 && estimate < -179.99);
+    }
+
+    @Test
+    public void filterUsesTheDefaultAccuracy() {
+        LocationFix fix = mFilter.filter(new LocationFix("test", 1000, 45, 9));
+        assertNotNull(fix);
+        assertEquals("test", fix.getProvider());
+        assertEquals(1000, fix.getTime());
+        assertEquals(KalmanLocationFilter.DEFAULT_MEASUREMENT_ACCURACY, fix.getAccuracy(), 1e-3);
+    }
+
+    @Test
+    public void resetRestartsTheFilter() {
+        mFilter.update(45, 9, 10, 2000);
+        mFilter.reset();
+        assertTrue(mFilter.update(10, 20, 10, 1000));
+        assertEquals(10, mFilter.getLatitude(), 1e-9);
+        assertEquals(20, mFilter.getLongitude(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveAccelerationNoiseIsRejected() {
+        new KalmanLocationFilter(0);
+    }
+}
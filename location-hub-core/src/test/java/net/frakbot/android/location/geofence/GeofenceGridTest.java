@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.geofence;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceGridTest {
+    private GeofenceGrid mGrid;
+
+    @Before
+    public void setUp() {
+        mGrid = new GeofenceGrid(0.5);
+    }
+
+    @Test
+    public void cellsAreFloored() {
+        assertEquals(0, mGrid.getLatitudeCell(0.25));
+        assertEquals(-1, mGrid.getLatitudeCell(-0.25));
+        assertEquals(91, mGrid.getLatitudeCell(45.6));
+        assertEquals(720, mGrid.getLongitudeCellCount());
+    }
+
+    @Test
+    public void longitudeWrapsAroundTheAntimeridian() {
+        assertEquals(0, mGrid.getLongitudeCell(0.1));
+        assertEquals(719, mGrid.getLongitudeCell(-0.1));
+        assertEquals(mGrid.getLongitudeCell(-180), mGrid.getLongitudeCell(180));
+        assertEquals(mGrid.getLongitudeCell(179.9), mGrid.getLongitudeCell(-180.1));
+    }
+
+    @Test
+    public void keysKeepNegativeCellsApart() {
+        assertTrue(GeofenceGrid.getKey(-1, 0) != GeofenceGrid.getKey(0, -1));
+        assertTrue(GeofenceGrid.getKey(1, 2) != GeofenceGrid.getKey(2, 1));
+    }
+
+    @Test
+    public void missingCellIsNotFound() {
+        assertEquals(-1, mGrid.find(GeofenceGrid.getKey(3, 4)));
+    }
+
+    @Test
+    public void membersAreAddedAndRemoved() {
+        long key = GeofenceGrid.getKey(-3, 4);
+        for (int fence = 0; fence < 10; fence++) {
+            mGrid.add(key, fence);
+        }
+        int slot = mGrid.find(key);
+        assertEquals(10, mGrid.getSize(slot));
+
+        mGrid.remove(key, 0);
+        mGrid.remove(key, 5);
+        mGrid.remove(key, 42);
+        slot = mGrid.find(key);
+        assertEquals(8, mGrid.getSize(slot));
+        int[] members = mGrid.getMembers(slot);
+        int sum = 0;
+        for (int i = 0; i < mGrid.getSize(slot); i++) {
+            sum += members[i];
+        }
+        assertEquals(45 - 5, sum);
+    }
+
+    @Test
+    public void cellsSurviveTheTableGrowing() {
+        for (int latitude = -50; latitude < 50; latitude++) {
+            for (int longitude = 0; longitude < 10; longitude++) {
+                mGrid.add(GeofenceGrid.getKey(latitude, longitude), latitude * 10 + longitude);
+            }
+        }
+        for (int latitude = -50; latitude < 50; latitude++) {
+            for (int longitude = 0; longitude < 10; longitude++) {
+                int slot = mGrid.find(GeofenceGrid.getKey(latitude, longitude));
+                assertTrue(slot >= 0);
+                assertEquals(1, mGrid.getSize(slot));
+                assertEquals(latitude * 10 + longitude, mGrid.getMembers(slot)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void clearRemovesAllCells() {
+        long key = GeofenceGrid.getKey(1, 1);
+        mGrid.add(key, 7);
+        mGrid.clear();
+        assertEquals(-1, mGrid.find(key));
+    }
+
+    @Test
+    public void emptiedCellsAreFreed() {
+        long key = GeofenceGrid.getKey(2, 3);
+        mGrid.add(key, 1);
+        mGrid.add(key, 2);
+        mGrid.remove(key, 1);
+        assertEquals(1, mGrid.getCellCount());
+        mGrid.remove(key, 2);
+        assertEquals(-1, mGrid.find(key));
+        assertEquals(0, mGrid.getCellCount());
+
+        mGrid.add(key, 3);
+        assertEquals(3, mGrid.getMembers(mGrid.find(key))[0]);
+    }
+
+    @Test
+    public void cellsAreFoundPastFreedOnes() {
+        // Enough colliding cells to probe past the freed slots, whatever the hash spreads them to
+        for (int longitude = 0; longitude < 20; longitude++) {
+            mGrid.add(GeofenceGrid.getKey(0, longitude), longitude);
+        }
+        for (int longitude = 0; longitude < 20; longitude += 2) {
+            mGrid.remove(GeofenceGrid.getKey(0, longitude), longitude);
+        }
+        assertEquals(10, mGrid.getCellCount());
+        for (int longitude = 0; longitude < 20; longitude++) {
+            int slot = mGrid.find(GeofenceGrid.getKey(0, longitude));
+            if (longitude % 2 == 0) {
+                assertEquals(-1, slot);
+            } else {
+                assertTrue(slot >= 0);
+                assertEquals(longitude, mGrid.getMembers(slot)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void movingGeofencesDontFillTheTable() {
+        // A geofence moved across many cells leaves only its current one behind
+        for (int latitude = -1000; latitude < 1000; latitude++) {
+            mGrid.add(GeofenceGrid.getKey(latitude, 0), 7);
+            mGrid.add(GeofenceGrid.getKey(latitude, 1), 7);
+            assertEquals(2, mGrid.getCellCount());
+            mGrid.remove(GeofenceGrid.getKey(latitude, 0), 7);
+            mGrid.remove(GeofenceGrid.getKey(latitude, 1), 7);
+            assertFalse(mGrid.find(GeofenceGrid.getKey(latitude, 0)) >= 0);
+        }
+        assertEquals(0, mGrid.getCellCount());
+    }
+
+    @Test
+    public void cellsSurviveTheTableShrinking() {
+        for (int latitude = 0; latitude < 1000; latitude++) {
+            mGrid.add(GeofenceGrid.getKey(latitude, 0), latitude);
+        }
+        for (int latitude = 0; latitude < 990; latitude++) {
+            mGrid.remove(GeofenceGrid.getKey(latitude, 0), latitude);
+        }
+        assertEquals(10, mGrid.getCellCount());
+        for (int latitude = 990; latitude < 1000; latitude++) {
+            int slot = mGrid.find(GeofenceGrid.getKey(latitude, 0));
+            assertTrue(slot >= 0);
+            assertEquals(latitude, mGrid.getMembers(slot)[0]);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalSegmentTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("journal", ".seg");
+        // Start from a missing file, as the journal does
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void newSegmentIsEmpty() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        assertEquals(0, segment.getCount());
+        assertEquals(10, segment.getCapacity());
+        assertFalse(segment.isFull());
+        assertEquals(Long.MAX_VALUE, segment.getMinTime());
+        assertEquals(Long.MIN_VALUE, segment.getMaxTime());
+    }
+
+    @Test
+    public void segmentFillsUpToItsCapacity() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        append(segment, 0, 10);
+        assertTrue(segment.isFull());
+        assertEquals(0, segment.getMinTime());
+        assertEquals(9000, segment.getMaxTime());
+    }
+
+    @Test
+    public void reopenedSegmentKeepsItsRecordsAndLayout() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        append(segment, 0, 7);
+
+        // The layout of an existing segment comes from its header, not from the arguments
+        JournalSegment reopened = new JournalSegment(mFile, 100, 16);
+        assertEquals(10, reopened.getCapacity());
+        assertEquals(7, reopened.getCount());
+        assertEquals(0, reopened.getMinTime());
+        assertEquals(6000, reopened.getMaxTime());
+        append(reopened, 7, 3);
+        assertTrue(reopened.isFull());
+        assertEquals(times(0, 10), query(reopened, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void queryReturnsTheRecordsInRange() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 50, 4);
+        append(segment, 0, 50);
+        // Ranges starting on, right after and between the indexed records
+        assertEquals(times(8, 5), query(segment, 8000, 12000));
+        assertEquals(times(9, 3), query(segment, 8500, 11000));
+        assertEquals(times(0, 2), query(segment, Long.MIN_VALUE, 1000));
+        assertEquals(times(47, 3), query(segment, 47000, Long.MAX_VALUE));
+        assertEquals(times(0, 0), query(segment, 60000, 70000));
+        assertEquals(times(0, 0), query(segment, 1500, 1600));
+    }
+
+    @Test
+    public void queryStopsWhenTheVisitorAsks() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        append(segment, 0, 10);
+        final List<Long> times = new ArrayList<Long>();
+        boolean finished = segment.query(0, Long.MAX_VALUE, new JournalVisitor() {
+            @Override
+            public boolean onRecord(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing) {
+                times.add(time);
+                return times.size() < 3;
+            }
+        });
+        assertFalse(finished);
+        assertEquals(times(0, 3), times);
+    }
+
+    @Test
+    public void recordFieldsAreStored() throws IOException {
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        segment.append(1234, 45.5, -9.25, 100, 5, 2.5f, Float.NaN);
+        final double[] fields = new double[7];
+        segment.query(0, Long.MAX_VALUE, new JournalVisitor() {
+            @Override
+            public boolean onRecord(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing) {
+                fields[0] = time;
+                fields[1] = latitude;
+                fields[2] = longitude;
+                fields[3] = altitude;
+                fields[4] = accuracy;
+                fields[5] = speed;
+                fields[6] = bearing;
+                return true;
+            }
+        });
+        assertEquals(1234, fields[0], 0);
+        assertEquals(45.5, fields[1], 0);
+        assertEquals(-9.25, fields[2], 0);
+        assertEquals(100, fields[3], 0);
+        assertEquals(5, fields[4], 0);
+        assertEquals(2.5, fields[5], 0);
+        assertTrue(Double.isNaN(fields[6]));
+    }
+
+    @Test
+    public void zeroedFileIsInitialized() throws IOException {
+        // The file is grown to its full size before the header is written
+        writeZeros(4096);
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        assertEquals(0, segment.getCount());
+        append(segment, 0, 2);
+        assertEquals(2, new JournalSegment(mFile, 10, 4).getCount());
+    }
+
+    @Test
+    public void fileShorterThanTheHeaderIsInitialized() throws IOException {
+        writeZeros(5);
+        JournalSegment segment = new JournalSegment(mFile, 10, 4);
+        assertEquals(0, segment.getCount());
+        assertEquals(10, segment.getCapacity());
+    }
+
+    @Test
+    public void foreignFileIsRejected() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.writeInt(0xCAFEBABE);
+            file.setLength(4096);
+        } finally {
+            file.close();
+        }
+        try {
+            new JournalSegment(mFile, 10, 4);
+            fail("A file that is not a segment should be rejected.");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static void append(JournalSegment segment, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            segment.append(i * 1000L, 45, 9, Float.NaN, 10, Float.NaN, Float.NaN);
+        }
+    }
+
+    private static List<Long> query(JournalSegment segment, long fromTime, long toTime) {
+        final List<Long> times = new ArrayList<Long>();
+        assertTrue(segment.query(fromTime, toTime, new JournalVisitor() {
+            @Override
+            public boolean onRecord(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing) {
+                times.add(time);
+                return true;
+            }
+        }));
+        return times;
+    }
+
+    private static List<Long> times(int first, int count) {
+        List<Long> times = new ArrayList<Long>();
+        for (int i = first; i < first + count; i++) {
+            times.add(i * 1000L);
+        }
+        return times;
+    }
+
+    private void writeZeros(int length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+}
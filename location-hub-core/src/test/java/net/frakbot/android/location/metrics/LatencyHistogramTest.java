@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (int i = 0; i < LatencyHistogram.SUB_BUCKETS; i++) {
+            assertEquals(i, LatencyHistogram.getBucket(i));
+            assertEquals(i, LatencyHistogram.getBucketUpperBound(i));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.getBucket(upperBound));
+            assertEquals(bucket + 1, LatencyHistogram.getBucket(upperBound + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void bucketsAreWithinAnEighthOfTheValue() {
+        for (long value = LatencyHistogram.SUB_BUCKETS; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucket(value));
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        HistogramSnapshot snapshot = histogram.snapshot(false);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getP99());
+    }
+
+    @Test
+    public void percentilesAreBoundedByTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot(false);
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100000, snapshot.getMax());
+        assertEquals(100000, snapshot.getPercentile(1));
+        long p50 = snapshot.getP50();
+        assertTrue(p50 >= 50000 && p50 <= 50000 + 50000 / LatencyHistogram.SUB_BUCKETS);
+        long p99 = snapshot.getP99();
+        assertTrue(p99 >= 99000 && p99 <= 100000);
+    }
+
+    @Test
+    public void snapshotResetStartsANewWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        assertEquals(1, histogram.snapshot(true).getCount());
+        HistogramSnapshot snapshot = histogram.snapshot(false);
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getP50());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileOutOfRangeIsRejected() {
+        new LatencyHistogram().snapshot(false).getPercentile(1.5);
+    }
+}
@@ -66,9 +66,14 @@ public class GMSLocationHubAdapter extends LocationHubAdapter {
         return (GooglePlayServicesUtil.isGooglePlayServicesAvailable(context) == ConnectionResult.SUCCESS);
     }
 
+    @Override
+    public String getServicePackage() {
+        return GooglePlayServicesUtil.GOOGLE_PLAY_SERVICES_PACKAGE;
+    }
+
     @Override
     public String getAdapterName() {
-        return "Google Play Services";
+        return GMSLocationHubAdapterDescriptor.ADAPTER_NAME;
     }
 
     @Override
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.gms;
+
+import android.content.Context;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GooglePlayServicesUtil;
+
+import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.LocationHubAdapterDescriptor;
+
+/**
+ * Descriptor for the {@link net.frakbot.android.location.adapter.gms.GMSLocationHubAdapter}.
+ * <p/>
+ * Checking the availability only loads {@link com.google.android.gms.common.GooglePlayServicesUtil};
+ * the location client classes are loaded only if the adapter is actually created.
+ */
+public class GMSLocationHubAdapterDescriptor extends LocationHubAdapterDescriptor {
+    public static final String ADAPTER_NAME = "Google Play Services";
+
+    @Override
+    public String getAdapterName() {
+        return ADAPTER_NAME;
+    }
+
+    @Override
+    public String getServicePackage() {
+        return GooglePlayServicesUtil.GOOGLE_PLAY_SERVICES_PACKAGE;
+    }
+
+    @Override
+    public boolean isServiceAvailable(Context context) {
+        return (GooglePlayServicesUtil.isGooglePlayServicesAvailable(context) == ConnectionResult.SUCCESS);
+    }
+
+    @Override
+    protected LocationHubAdapter createAdapter() {
+        return new GMSLocationHubAdapter();
+    }
+}
@@ -18,13 +18,10 @@ package net.frakbot.android.location.adapter.gms.resolver;
 
 import android.content.Context;
 
-import net.frakbot.android.location.LocationHubAdapter;
-import net.frakbot.android.location.adapter.android.AndroidLocationHubAdapter;
-import net.frakbot.android.location.adapter.gms.GMSLocationHubAdapter;
+import net.frakbot.android.location.adapter.android.AndroidLocationHubAdapterDescriptor;
+import net.frakbot.android.location.adapter.gms.GMSLocationHubAdapterDescriptor;
 import net.frakbot.android.location.resolver.DefaultLocationHubAdapterResolver;
 
-import java.util.List;
-
 /**
  * Default implementation for the {@link net.frakbot.android.location.LocationHubAdapter} interface. It
  * always returns the first available implementation in the list.
@@ -34,7 +31,7 @@ import java.util.List;
 public class GMSLocationHubAdapterResolver extends DefaultLocationHubAdapterResolver {
     public GMSLocationHubAdapterResolver(Context context) {
         super(context);
-        mLocationAdapters.add(new GMSLocationHubAdapter());
-        mLocationAdapters.add(new AndroidLocationHubAdapter());
+        mDescriptors.add(new GMSLocationHubAdapterDescriptor());
+        mDescriptors.add(new AndroidLocationHubAdapterDescriptor());
     }
 }
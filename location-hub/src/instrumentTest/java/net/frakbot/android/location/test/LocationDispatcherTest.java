@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.test;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Bundle;
+
+import junit.framework.TestCase;
+
+import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.common.ConnectionCallbacks;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.OnConnectionFailedListener;
+import net.frakbot.android.location.dispatch.LocationDispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the subscription handling of the {@link net.frakbot.android.location.dispatch.LocationDispatcher}.
+ */
+public class LocationDispatcherTest extends TestCase {
+    RecordingAdapter mAdapter;
+    LocationDispatcher mDispatcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new RecordingAdapter();
+        mDispatcher = new LocationDispatcher(mAdapter);
+    }
+
+    /**
+     * Tests that listeners with the same request share a single subscription.
+     */
+    public void testRequestsAreCoalesced() {
+        LocationHubRequest request = new LocationHubRequest().setInterval(10000);
+        mDispatcher.addListener(request, new NoOpListener());
+        mDispatcher.addListener(request, new NoOpListener());
+        assertEquals("A single subscription should be placed.", 1, mAdapter.mRequests.size());
+        assertEquals(10000, mDispatcher.getSubscription().getInterval());
+    }
+
+    /**
+     * Tests that a subscription refused by the adapter is placed again on the next registration,
+     * even if the coalesced request doesn't change.
+     */
+    public void testRefusedSubscriptionIsRetried() {
+        LocationHubRequest request = new LocationHubRequest().setInterval(10000);
+        mAdapter.isRefusing = true;
+        mDispatcher.addListener(request, new NoOpListener());
+        assertNull("The refused subscription should not be kept.", mDispatcher.getSubscription());
+        assertEquals(1, mDispatcher.getListenerCount());
+
+        mAdapter.isRefusing = false;
+        mDispatcher.addListener(request, new NoOpListener());
+        assertNotNull("The subscription should be placed again.", mDispatcher.getSubscription());
+        assertEquals(1, mAdapter.mRequests.size());
+        assertSame(mDispatcher.getSubscription(), mAdapter.mRequests.get(0));
+    }
+
+    /**
+     * Tests that a subscription refused by the adapter is placed again when the adapter is set.
+     */
+    public void testRefusedSubscriptionIsRetriedOnNewAdapter() {
+        mAdapter.isRefusing = true;
+        mDispatcher.addListener(new LocationHubRequest().setInterval(10000), new NoOpListener());
+        assertNull(mDispatcher.getSubscription());
+
+        RecordingAdapter adapter = new RecordingAdapter();
+        mDispatcher.setAdapter(adapter);
+        assertNotNull("The subscription should be placed on the new adapter.", mDispatcher.getSubscription());
+        assertEquals(1, adapter.mRequests.size());
+    }
+
+    /**
+     * Tests that removing the last listener drops the subscription.
+     */
+    public void testLastListenerDropsTheSubscription() {
+        LocationHubListener listener = new NoOpListener();
+        mDispatcher.addListener(new LocationHubRequest().setInterval(10000), listener);
+        mDispatcher.removeListener(listener);
+        assertNull(mDispatcher.getSubscription());
+        assertEquals(1, mAdapter.mRemoveCount);
+    }
+
+    private static class NoOpListener extends LocationHubListener {
+        @Override
+        public void onLocationChanged(Location location) {
+        }
+    }
+
+    /**
+     * Adapter recording its subscriptions, that can be told to refuse them.
+     */
+    private static class RecordingAdapter extends LocationHubAdapter {
+        final List<LocationHubRequest> mRequests = new ArrayList<LocationHubRequest>();
+        int mRemoveCount;
+        boolean isRefusing;
+
+        @Override
+        protected void setup(Context context, ConnectionCallbacks callbacks, OnConnectionFailedListener connectionFailedListener, Bundle bundle) {
+        }
+
+        @Override
+        public boolean isServiceAvailable(Context context) {
+            return true;
+        }
+
+        @Override
+        public String getAdapterName() {
+            return "Recording";
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public Location getLastLocation() {
+            return null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnecting() {
+            return false;
+        }
+
+        @Override
+        public void registerConnectionCallbacks(ConnectionCallbacks listener) {
+        }
+
+        @Override
+        public void unregisterConnectionCallbacks(ConnectionCallbacks listener) {
+        }
+
+        @Override
+        public boolean isConnectionCallbacksRegistered(ConnectionCallbacks listener) {
+            return false;
+        }
+
+        @Override
+        public void registerConnectionFailedListener(OnConnectionFailedListener listener) {
+        }
+
+        @Override
+        public void unregisterConnectionFailedListener(OnConnectionFailedListener listener) {
+        }
+
+        @Override
+        public boolean isConnectionFailedListenerRegistered(OnConnectionFailedListener listener) {
+            return false;
+        }
+
+        @Override
+        public void setMockMode(boolean isMockMode) {
+        }
+
+        @Override
+        public void setMockLocation(Location mockLocation) {
+        }
+
+        @Override
+        public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener) {
+            if (isRefusing) {
+                throw new IllegalArgumentException("No provider is available.");
+            }
+            mRequests.add(request);
+        }
+
+        @Override
+        public void removeLocationUpdates(LocationHubListener listener) {
+            mRemoveCount++;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.test;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import net.frakbot.android.location.history.LocationHistory;
+
+/**
+ * Test for the ring buffer of the {@link net.frakbot.android.location.history.LocationHistory}.
+ */
+public class LocationHistoryTest extends TestCase {
+
+    /**
+     * Tests that the locations are read back in time order, index 0 being the oldest.
+     */
+    public void testLocationsAreReadInOrder() {
+        LocationHistory history = new LocationHistory(4);
+        for (int i = 0; i < 3; i++) {
+            history.append(45 + i, 9 + i, 10, 1, 90, 1000 * i);
+        }
+        assertEquals(3, history.size());
+        assertEquals(45.0, history.getLatitude(0));
+        assertEquals(11.0, history.getLongitude(2));
+        assertEquals(2000, history.getTime(2));
+    }
+
+    /**
+     * Tests that a full history overwrites its oldest locations.
+     */
+    public void testOldestLocationsAreOverwritten() {
+        LocationHistory history = new LocationHistory(3);
+        for (int i = 0; i < 5; i++) {
+            history.append(45, 9, 10, 1, 90, 1000 * i);
+        }
+        assertEquals(3, history.size());
+        assertEquals(2000, history.getTime(0));
+        assertEquals(4000, history.getTime(2));
+    }
+
+    /**
+     * Tests that the values a location doesn't have are stored as NaN.
+     */
+    public void testMissingValuesAreNaN() {
+        LocationHistory history = new LocationHistory(1);
+        Location location = new Location("test");
+        location.setLatitude(45);
+        location.setLongitude(9);
+        location.setSpeed(2);
+        location.setTime(1000);
+        history.append(location);
+        assertTrue(Float.isNaN(history.getAccuracy(0)));
+        assertTrue(Float.isNaN(history.getBearing(0)));
+        assertEquals(2f, history.getSpeed(0));
+    }
+
+    /**
+     * Tests the binary searches by time, across the wrap-around of the buffer.
+     */
+    public void testIndexSearchByTime() {
+        LocationHistory history = new LocationHistory(4);
+        for (int i = 0; i < 6; i++) {
+            history.append(45, 9, 10, 1, 90, 1000 * i);
+        }
+        // Times 2000, 3000, 4000 and 5000 are stored
+        assertEquals(0, history.indexAtOrAfter(0));
+        assertEquals(1, history.indexAtOrAfter(2500));
+        assertEquals(1, history.indexAtOrAfter(3000));
+        assertEquals(4, history.indexAtOrAfter(5001));
+        assertEquals(-1, history.indexAtOrBefore(1999));
+        assertEquals(1, history.indexAtOrBefore(3999));
+        assertEquals(3, history.indexAtOrBefore(9000));
+    }
+
+    /**
+     * Tests that a window copy is bound by the window and by the destination arrays.
+     */
+    public void testWindowCopy() {
+        LocationHistory history = new LocationHistory(8);
+        for (int i = 0; i < 8; i++) {
+            history.append(i, -i, 10, 1, 90, 1000 * i);
+        }
+        double[] latitudes = new double[8];
+        double[] longitudes = new double[8];
+        long[] times = new long[8];
+        assertEquals(3, history.copyWindow(2000, 4000, latitudes, longitudes, times));
+        assertEquals(2.0, latitudes[0]);
+        assertEquals(-4.0, longitudes[2]);
+        assertEquals(4000, times[2]);
+
+        assertEquals(2, history.copyWindow(0, 7000, new double[2], new double[2], null));
+        assertEquals(0, history.copyWindow(9000, 10000, latitudes, longitudes, times));
+    }
+
+    /**
+     * Tests that reading out of the stored locations fails, also after a clear.
+     */
+    public void testOutOfBoundsIndexes() {
+        LocationHistory history = new LocationHistory(2);
+        history.append(45, 9, 10, 1, 90, 1000);
+        history.clear();
+        assertEquals(0, history.size());
+        try {
+            history.getTime(0);
+            fail("A cleared history has no locations.");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.test;
+
+import android.location.Location;
+
+import junit.framework.TestCase;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.scheduler.MotionScheduler;
+
+/**
+ * Test for the motion estimate and the request adaptation of the
+ * {@link net.frakbot.android.location.scheduler.MotionScheduler}.
+ */
+public class MotionSchedulerTest extends TestCase {
+    /**
+     * About 100 meters of latitude.
+     */
+    private static final double HUNDRED_METERS = 100 / 111195.0;
+
+    MotionScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new MotionScheduler();
+    }
+
+    /**
+     * Tests that a slower state is only entered once confirmed by consecutive locations.
+     */
+    public void testSlowingDownIsConfirmed() {
+        assertEquals(MotionScheduler.MOTION_FAST, mScheduler.getState());
+        assertFalse(mScheduler.onLocation(withSpeed(0, 1000)));
+        assertFalse(mScheduler.onLocation(withSpeed(0, 2000)));
+        assertTrue(mScheduler.onLocation(withSpeed(0, 3000)));
+        assertEquals(MotionScheduler.MOTION_STILL, mScheduler.getState());
+        assertEquals(1, mScheduler.getTransitionCount());
+        assertEquals(3000, mScheduler.getLastTransitionTime());
+    }
+
+    /**
+     * Tests that a faster state is entered right away.
+     */
+    public void testSpeedingUpIsImmediate() {
+        mScheduler.setDowngradeConfirmations(1);
+        assertTrue(mScheduler.onLocation(withSpeed(0, 1000)));
+        // The smoothed speed is 5 m/s
+        assertTrue(mScheduler.onLocation(withSpeed(10, 2000)));
+        assertEquals(MotionScheduler.MOTION_FAST, mScheduler.getState());
+        assertEquals(5f, mScheduler.getEstimatedSpeed());
+    }
+
+    /**
+     * Tests that the speed of locations without one is estimated from their displacement.
+     */
+    public void testSpeedIsEstimatedFromTheDisplacement() {
+        assertFalse(mScheduler.onLocation(at(0, 0, 1000)));
+        assertTrue(Float.isNaN(mScheduler.getEstimatedSpeed()));
+        // 100 meters in 10 seconds, less 5 meters of accuracy
+        mScheduler.onLocation(at(HUNDRED_METERS, 5, 11000));
+        assertEquals(9.5f, mScheduler.getEstimatedSpeed(), 0.1f);
+    }
+
+    /**
+     * Tests that jitter within the accuracy doesn't look like movement.
+     */
+    public void testJitterIsNotMovement() {
+        mScheduler.setDowngradeConfirmations(1);
+        mScheduler.onLocation(at(0, 20, 1000));
+        assertTrue(mScheduler.onLocation(at(HUNDRED_METERS / 10, 20, 2000)));
+        assertEquals(0f, mScheduler.getEstimatedSpeed());
+        assertEquals(MotionScheduler.MOTION_STILL, mScheduler.getState());
+    }
+
+    /**
+     * Tests the interval and priority adaptive requests are served at in each state.
+     */
+    public void testAdaptiveRequests() {
+        LocationHubRequest request = new LocationHubRequest()
+                .setInterval(1000)
+                .setPriority(LocationHubRequest.PRIORITY_HIGH_ACCURACY)
+                .setStationaryInterval(60000)
+                .setStationaryPriority(LocationHubRequest.PRIORITY_LOW_POWER);
+        assertEquals(1000, mScheduler.getInterval(request));
+        assertEquals(LocationHubRequest.PRIORITY_HIGH_ACCURACY, mScheduler.getPriority(request));
+
+        mScheduler.setDowngradeConfirmations(1);
+        mScheduler.onLocation(withSpeed(1, 1000));
+        assertEquals(MotionScheduler.MOTION_SLOW, mScheduler.getState());
+        assertEquals(2000, mScheduler.getInterval(request));
+        assertEquals(LocationHubRequest.PRIORITY_HIGH_ACCURACY, mScheduler.getPriority(request));
+
+        mScheduler.onLocation(withSpeed(0, 2000));
+        mScheduler.onLocation(withSpeed(0, 3000));
+        assertEquals(MotionScheduler.MOTION_STILL, mScheduler.getState());
+        assertEquals(60000, mScheduler.getInterval(request));
+        assertEquals(LocationHubRequest.PRIORITY_LOW_POWER, mScheduler.getPriority(request));
+
+        // Requests that aren't adaptive, and priorities that would be tightened, are kept
+        LocationHubRequest fixed = new LocationHubRequest().setInterval(1000);
+        assertEquals(1000, mScheduler.getInterval(fixed));
+        request.setPriority(LocationHubRequest.PRIORITY_NO_POWER);
+        assertEquals(LocationHubRequest.PRIORITY_NO_POWER, mScheduler.getPriority(request));
+    }
+
+    /**
+     * Tests that a reset goes back to the fast state and forgets the speed.
+     */
+    public void testReset() {
+        mScheduler.setDowngradeConfirmations(1);
+        mScheduler.onLocation(withSpeed(0, 1000));
+        mScheduler.reset();
+        assertEquals(MotionScheduler.MOTION_FAST, mScheduler.getState());
+        assertTrue(Float.isNaN(mScheduler.getEstimatedSpeed()));
+        assertEquals(2, mScheduler.getTransitionCount());
+    }
+
+    /**
+     * Tests that thresholds out of order are refused.
+     */
+    public void testThresholdsOutOfOrderAreRefused() {
+        try {
+            mScheduler.setSpeedThresholds(5, 1);
+            fail("The still speed cannot be above the fast one.");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static Location withSpeed(float speed, long time) {
+        Location location = at(0, 0, time);
+        location.setSpeed(speed);
+        return location;
+    }
+
+    private static Location at(double latitude, float accuracy, long time) {
+        Location location = new Location("test");
+        location.setLatitude(45 + latitude);
+        location.setLongitude(9);
+        if (accuracy > 0) {
+            location.setAccuracy(accuracy);
+        }
+        location.setTime(time);
+        return location;
+    }
+}
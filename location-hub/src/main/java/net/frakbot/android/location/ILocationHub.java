@@ -17,11 +17,17 @@
 package net.frakbot.android.location;
 
 import android.location.Location;
+import android.os.Bundle;
 
+import net.frakbot.android.location.async.AsyncCallback;
 import net.frakbot.android.location.common.ConnectionCallbacks;
 import net.frakbot.android.location.common.LocationHubListener;
 import net.frakbot.android.location.common.LocationHubRequest;
 import net.frakbot.android.location.common.OnConnectionFailedListener;
+import net.frakbot.android.location.current.CurrentLocationCallback;
+import net.frakbot.android.location.current.CurrentLocationOperation;
+
+import java.util.concurrent.Future;
 
 /**
  * Interface for both the {@link net.frakbot.android.location.LocationHub} and the generic
@@ -38,6 +44,17 @@ public interface ILocationHub {
      */
     public void connect();
 
+    /**
+     * Connects like {@link ILocationHub#connect()}, and reports the outcome of the connection.
+     * <p/>
+     * The returned {@link java.util.concurrent.Future} completes with the connection hint once
+     * connected, or fails with a {@link net.frakbot.android.location.async.ConnectionFailedException}.
+     *
+     * @param callback The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @return The {@link java.util.concurrent.Future} of the connection.
+     */
+    public Future<Bundle> connectAsync(AsyncCallback<Bundle> callback);
+
     /**
      * Disconnects from the {@link net.frakbot.android.location.LocationHubAdapter} implementation.
      * This method returns immediately.
@@ -56,6 +73,15 @@ public interface ILocationHub {
      */
     public Location getLastLocation();
 
+    /**
+     * Gets the best most recent location like {@link ILocationHub#getLastLocation()}, on the
+     * {@link net.frakbot.android.location.async.LocationHubWorker} thread, since it usually means a binder call.
+     *
+     * @param callback The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @return The {@link java.util.concurrent.Future} of the location, that can be null.
+     */
+    public Future<Location> getLastLocationAsync(AsyncCallback<Location> callback);
+
     /**
      * Checks if the client is currently connected to the service, so that requests to other methods
      * will succeed. Applications should guard client actions caused by the user with a call to this method.
@@ -141,6 +167,17 @@ public interface ILocationHub {
      */
     public abstract void setMockMode(boolean isMockMode) throws SecurityException;
 
+    /**
+     * Sets the mock mode like {@link ILocationHub#setMockMode(boolean)}, on the
+     * {@link net.frakbot.android.location.async.LocationHubWorker} thread. A missing permission or
+     * setting is reported as a {@link java.lang.SecurityException} failure.
+     *
+     * @param isMockMode If true the location provider will be set to mock mode.
+     * @param callback   The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @return The {@link java.util.concurrent.Future} of the call.
+     */
+    public abstract Future<Void> setMockModeAsync(boolean isMockMode, AsyncCallback<Void> callback);
+
     /**
      * Sets the mock location to be used. This location will be used in place of any actual locations
      * from the underlying providers.
@@ -161,11 +198,26 @@ public interface ILocationHub {
     public abstract void setMockLocation(Location mockLocation) throws SecurityException;
 
     /**
-     * TODO: write doc
-     * TODO: handle no provider available exception
+     * Sets the mock location like {@link ILocationHub#setMockLocation(android.location.Location)}, on
+     * the {@link net.frakbot.android.location.async.LocationHubWorker} thread.
      *
-     * @param request
-     * @param listener
+     * @param mockLocation The mock location.
+     * @param callback     The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @return The {@link java.util.concurrent.Future} of the call.
+     */
+    public abstract Future<Void> setMockLocationAsync(Location mockLocation, AsyncCallback<Void> callback);
+
+    /**
+     * Requests location updates for a listener. Requesting again with the same listener replaces
+     * its previous request.
+     * <p/>
+     * The request is kept even while the user has turned the location providers off: updates start
+     * as soon as a provider serving it is enabled again.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} of the listener.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} receiving the locations.
+     * @throws java.lang.IllegalArgumentException if the device has no location provider at all that
+     *                                            could serve the request.
      */
     public abstract void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener);
 
@@ -176,4 +228,25 @@ public interface ILocationHub {
      */
     public abstract void removeLocationUpdates(LocationHubListener listener);
 
+    /**
+     * Gets a single location, at least as accurate as the target, without having to manage a
+     * subscription.
+     * <p/>
+     * If the last known location is recent and accurate enough, the callback is called right away.
+     * Otherwise location updates are requested, with a priority matching the target accuracy, and
+     * every improving location is delivered to
+     * {@link net.frakbot.android.location.current.CurrentLocationCallback#onProvisionalLocation(android.location.Location)}
+     * until one reaches the target accuracy or the deadline expires; then the best location is
+     * delivered to {@link net.frakbot.android.location.current.CurrentLocationCallback#onCurrentLocation(android.location.Location)}.
+     * The location updates are always removed when the operation completes or is cancelled.
+     *
+     * @param accuracy The target accuracy, in meters.
+     * @param deadline The longest time to wait for the target accuracy, in milliseconds.
+     * @param callback The {@link net.frakbot.android.location.current.CurrentLocationCallback} receiving the locations.
+     * @return The {@link net.frakbot.android.location.current.CurrentLocationOperation}, that can be cancelled.
+     * @throws IllegalArgumentException if the accuracy or the deadline are not positive, or the callback is null.
+     */
+    public abstract CurrentLocationOperation getCurrentLocation(float accuracy, long deadline, CurrentLocationCallback callback)
+            throws IllegalArgumentException;
+
 }
@@ -20,6 +20,9 @@ import java.util.List;
 
 /**
  * Created by Francesco on 16/02/14.
+ * <p/>
+ * Resolvers extending {@link LocationHubAdapterResolver} also describe their adapters lazily and
+ * let the {@link net.frakbot.android.location.LocationHub} fail over to the next adapter.
  */
 public interface ILocationHubAdapterResolver {
 
@@ -29,7 +32,10 @@ public interface ILocationHubAdapterResolver {
      *
      * @return A {@link java.util.List} of {@link LocationHubAdapter}s of possible
      * adapter implementations.
+     * @deprecated Reading this list instantiates every adapter; extend {@link LocationHubAdapterResolver}
+     * and use {@link LocationHubAdapterResolver#getDescriptorList()} instead.
      */
+    @Deprecated
     public List<LocationHubAdapter> getAdapterList();
 
     /**
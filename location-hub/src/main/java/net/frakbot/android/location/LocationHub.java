@@ -19,13 +19,43 @@ package net.frakbot.android.location;
 import android.content.Context;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
-import net.frakbot.android.location.adapter.android.AndroidLocationHubAdapter;
+import net.frakbot.android.location.adapter.android.AndroidLocationHubAdapterDescriptor;
+import net.frakbot.android.location.async.AsyncCallback;
+import net.frakbot.android.location.async.AsyncResult;
+import net.frakbot.android.location.async.ConnectionResultListener;
+import net.frakbot.android.location.async.LocationHubWorker;
+import net.frakbot.android.location.cache.LastLocationCache;
 import net.frakbot.android.location.common.ConnectionCallbacks;
+import net.frakbot.android.location.common.ConnectionResult;
 import net.frakbot.android.location.common.LocationHubListener;
 import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.LocationQuality;
 import net.frakbot.android.location.common.OnConnectionFailedListener;
+import net.frakbot.android.location.current.CurrentLocationCallback;
+import net.frakbot.android.location.current.CurrentLocationOperation;
+import net.frakbot.android.location.dispatch.HandlerExecutor;
+import net.frakbot.android.location.dispatch.LocationDispatcher;
+import net.frakbot.android.location.dispatch.SlowListenerWatchdog;
+import net.frakbot.android.location.history.LocationHistory;
+import net.frakbot.android.location.metrics.ListenerMetrics;
+import net.frakbot.android.location.processor.LocationProcessor;
 import net.frakbot.android.location.resolver.DefaultLocationHubAdapterResolver;
+import net.frakbot.android.location.scheduler.MotionScheduler;
+import net.frakbot.android.location.stream.LocationHubPublisher;
+import net.frakbot.android.location.stream.LocationStream;
+import net.frakbot.android.location.usage.UsageSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
  * The LocationHub is the main entry point for location related APIs, such as location and geofence.
@@ -36,15 +66,67 @@ import net.frakbot.android.location.resolver.DefaultLocationHubAdapterResolver;
  * <li>Request/remove geofences.</li>
  * </ul>
  * In order to establish a connection, call connect() and wait for the onConnected(android.os.Bundle) callback.
+ * <p/>
+ * If the {@link LocationHubAdapter} in use fails to connect, drops its connection or stops delivering
+ * locations, the hub fails over to the next adapter returned by
+ * {@link LocationHubAdapterResolver#getFallbackAdapter(LocationHubAdapter)} and replays all of the
+ * active requests on it. The preferred adapter is then retried with an exponential backoff, and the
+ * requests are moved back to it as soon as it connects again. The hub is meant to be used from the
+ * thread of a single {@link android.os.Looper}, usually the main one.
  */
 public class LocationHub implements ILocationHub {
 
+    /**
+     * Maximum age of the cached location returned by {@link LocationHub#getLastLocation()} before
+     * falling through to the {@link LocationHubAdapter}.
+     */
+    public static final long DEFAULT_LAST_LOCATION_MAX_AGE = 30 * 1000;
+
+    /**
+     * Delay before the preferred {@link LocationHubAdapter} is retried after a failover. It is doubled
+     * after every failed retry, up to {@link LocationHub#MAX_FAILOVER_BACKOFF}.
+     */
+    public static final long DEFAULT_FAILOVER_BACKOFF = 5 * 1000;
+
+    /**
+     * Maximum delay between two retries of the preferred {@link LocationHubAdapter}.
+     */
+    public static final long MAX_FAILOVER_BACKOFF = 5 * 60 * 1000;
+
+    /**
+     * Number of consecutive intervals without any location after which the {@link LocationHubAdapter}
+     * is considered failed.
+     */
+    public static final int DEFAULT_MISSED_FIXES_THRESHOLD = 3;
+
+    /**
+     * Minimum time without any location after which the {@link LocationHubAdapter} is considered
+     * failed, so that short intervals still leave room for a cold start.
+     */
+    public static final long MIN_MISSED_FIXES_TIMEOUT = 15 * 1000;
+
     private Context mContext;
-    private ConnectionCallbacks mConnectionCallback;
-    private OnConnectionFailedListener mConnectionFailedListener;
     private ILocationHubAdapterResolver mLocationAdapterResolver;
+    private Bundle mBundle;
 
+    private List<ConnectionCallbacks> mConnectionCallbacksList;
+    private List<OnConnectionFailedListener> mConnectionFailedListenerList;
+    private HashMap<LocationHubAdapter, AdapterConnectionListener> mAdapterListeners;
+
+    private LocationHubAdapter mPreferredAdapter;
     private LocationHubAdapter mLocationAdapter;
+    private LocationHubAdapter mRetryingAdapter;
+    private LocationDispatcher mDispatcher;
+    private LocationHistory mHistory;
+
+    private Handler mHandler;
+    private boolean isConnectRequested = false;
+    private boolean isConnectedNotified = false;
+    private long mFailoverBackoff = DEFAULT_FAILOVER_BACKOFF;
+    private long mPreferredRestoreTime;
+    private int mMissedFixesThreshold = DEFAULT_MISSED_FIXES_THRESHOLD;
+    private Runnable mRetryRunnable;
+    private Runnable mWatchdogRunnable;
 
     /**
      * Instantiate a new hub by relying on the default Android {@link android.location.LocationManager} only.
@@ -74,10 +156,35 @@ public class LocationHub implements ILocationHub {
      */
     public LocationHub(Context context, ConnectionCallbacks connectionCallback, OnConnectionFailedListener connectionFailedListener, ILocationHubAdapterResolver customResolver) {
         mContext = context;
-        mConnectionCallback = connectionCallback;
-        mConnectionFailedListener = connectionFailedListener;
         mLocationAdapterResolver = customResolver;
-        mLocationAdapter = mLocationAdapterResolver.getAdapter();
+        mConnectionCallbacksList = new ArrayList<ConnectionCallbacks>();
+        mConnectionFailedListenerList = new ArrayList<OnConnectionFailedListener>();
+        mAdapterListeners = new HashMap<LocationHubAdapter, AdapterConnectionListener>();
+        if (connectionCallback != null) {
+            mConnectionCallbacksList.add(connectionCallback);
+        }
+        if (connectionFailedListener != null) {
+            mConnectionFailedListenerList.add(connectionFailedListener);
+        }
+        mPreferredAdapter = mLocationAdapterResolver.getAdapter();
+        mLocationAdapter = mPreferredAdapter;
+        // Requests are held by the dispatcher until an adapter is connected
+        mDispatcher = new LocationDispatcher(null);
+
+        Looper looper = Looper.myLooper();
+        mHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+        mRetryRunnable = new Runnable() {
+            @Override
+            public void run() {
+                retryPreferredAdapter();
+            }
+        };
+        mWatchdogRunnable = new Runnable() {
+            @Override
+            public void run() {
+                checkMissedFixes();
+            }
+        };
     }
 
     /**
@@ -87,8 +194,11 @@ public class LocationHub implements ILocationHub {
      * @see {@link LocationHub#connect()}
      */
     public void connect(Bundle bundle) {
-        mLocationAdapter.setup(mContext, mConnectionCallback, mConnectionFailedListener, bundle);
-        mLocationAdapter.connect();
+        mBundle = bundle;
+        isConnectRequested = true;
+        // Always start over from the preferred adapter
+        mLocationAdapter = mPreferredAdapter;
+        connectAdapter(mLocationAdapter);
     }
 
     /**
@@ -102,14 +212,150 @@ public class LocationHub implements ILocationHub {
         connect(null);
     }
 
+    /**
+     * Connects like {@link LocationHub#connect(android.os.Bundle)}, but the connection starts on a
+     * later turn of the hub thread, so not even the setup of the adapter runs on the caller's stack.
+     * <p/>
+     * The returned {@link java.util.concurrent.Future} completes with the connection hint once the hub
+     * is connected, or fails with a {@link net.frakbot.android.location.async.ConnectionFailedException}
+     * if no adapter could connect. The callback, if any, is called on the hub thread.
+     *
+     * @param bundle   A {@link android.os.Bundle} of data to set up the adapter with.
+     * @param callback The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @return The {@link java.util.concurrent.Future} of the connection.
+     */
+    public Future<Bundle> connectAsync(final Bundle bundle, AsyncCallback<Bundle> callback) {
+        final AsyncResult<Bundle> result = new AsyncResult<Bundle>(callback, mHandler);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Completes right away if the hub is already connected
+                new ConnectionResultListener(LocationHub.this, result).register();
+                if (!result.isDone()) {
+                    connect(bundle);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Connects like {@link LocationHub#connectAsync(android.os.Bundle, net.frakbot.android.location.async.AsyncCallback)},
+     * without setting up the adapter with any data.
+     */
+    @Override
+    public Future<Bundle> connectAsync(AsyncCallback<Bundle> callback) {
+        return connectAsync(null, callback);
+    }
+
     @Override
     public void disconnect() {
-        mLocationAdapter.disconnect();
+        isConnectRequested = false;
+        mHandler.removeCallbacks(mRetryRunnable);
+        mHandler.removeCallbacks(mWatchdogRunnable);
+        // All of the requests are canceled on disconnection
+        mDispatcher.removeAllListeners();
+        mDispatcher.setAdapter(null);
+        if (mRetryingAdapter != null) {
+            disconnectAdapter(mRetryingAdapter);
+            mRetryingAdapter = null;
+        }
+        mFailoverBackoff = DEFAULT_FAILOVER_BACKOFF;
+        disconnectAdapter(mLocationAdapter);
+        // Not all of the adapters call onDisconnected on an explicit disconnection
+        isConnectedNotified = false;
     }
 
+    /**
+     * Returns the best most recent location currently available.
+     * <p/>
+     * The hub caches the best and the newest location among the ones it delivered and the ones
+     * returned by the {@link LocationHubAdapter}, and answers from memory as long as either of them
+     * is not older than {@link LocationHub#DEFAULT_LAST_LOCATION_MAX_AGE}.
+     *
+     * @return The best available {@link android.location.Location}, or null if none is available.
+     */
     @Override
     public Location getLastLocation() {
-        return mLocationAdapter.getLastLocation();
+        Location location = getLastLocation(mLocationAdapter, DEFAULT_LAST_LOCATION_MAX_AGE, Float.MAX_VALUE);
+        return location != null ? location : mDispatcher.getLastLocationCache().get();
+    }
+
+    /**
+     * Returns the best most recent location, provided it satisfies the given thresholds.
+     * <p/>
+     * The cached location is returned right away if it is recent and accurate enough; only
+     * otherwise the {@link LocationHubAdapter} is asked for its last location.
+     *
+     * @param maxAge      The maximum age of the location, in milliseconds.
+     * @param minAccuracy The largest acceptable accuracy radius of the location, in meters.
+     * @return The best available {@link android.location.Location}, or null if none satisfies the thresholds.
+     */
+    public Location getLastLocation(long maxAge, float minAccuracy) {
+        return getLastLocation(mLocationAdapter, maxAge, minAccuracy);
+    }
+
+    /**
+     * Returns the cached location if it satisfies the given thresholds, or else the last location of
+     * the adapter if it does. The adapter location is checked directly rather than through the cache,
+     * which could keep an older but more accurate location instead of it.
+     */
+    private Location getLastLocation(LocationHubAdapter adapter, long maxAge, float minAccuracy) {
+        LastLocationCache cache = mDispatcher.getLastLocationCache();
+        Location location = cache.get(maxAge, minAccuracy);
+        if (location == null) {
+            Location adapterLocation = adapter.getLastLocation();
+            cache.offer(adapterLocation);
+            if (LocationQuality.isSatisfying(adapterLocation, System.currentTimeMillis(), maxAge, minAccuracy)) {
+                location = adapterLocation;
+            }
+        }
+        return location;
+    }
+
+    /**
+     * Gets the best most recent location like {@link LocationHub#getLastLocation()}, but it asks the
+     * {@link LocationHubAdapter}, which usually means a binder call, on the
+     * {@link net.frakbot.android.location.async.LocationHubWorker} thread.
+     *
+     * @param callback The {@link net.frakbot.android.location.async.AsyncCallback} called on the hub
+     *                 thread, can be null.
+     * @return The {@link java.util.concurrent.Future} of the location, that can be null.
+     */
+    @Override
+    public Future<Location> getLastLocationAsync(AsyncCallback<Location> callback) {
+        return getLastLocationAsync(DEFAULT_LAST_LOCATION_MAX_AGE, Float.MAX_VALUE, true, callback);
+    }
+
+    /**
+     * Gets the best most recent location like {@link LocationHub#getLastLocation(long, float)}, but it
+     * asks the {@link LocationHubAdapter} on the {@link net.frakbot.android.location.async.LocationHubWorker} thread.
+     *
+     * @param maxAge      The maximum age of the location, in milliseconds.
+     * @param minAccuracy The largest acceptable accuracy radius of the location, in meters.
+     * @param callback    The {@link net.frakbot.android.location.async.AsyncCallback} called on the hub
+     *                    thread, can be null.
+     * @return The {@link java.util.concurrent.Future} of the location, that can be null.
+     */
+    public Future<Location> getLastLocationAsync(long maxAge, float minAccuracy, AsyncCallback<Location> callback) {
+        return getLastLocationAsync(maxAge, minAccuracy, false, callback);
+    }
+
+    private Future<Location> getLastLocationAsync(final long maxAge, final float minAccuracy, final boolean isAnyCached,
+                                                  AsyncCallback<Location> callback) {
+        final LocationHubAdapter adapter = mLocationAdapter;
+        AsyncResult<Location> result = new AsyncResult<Location>(new Callable<Location>() {
+            @Override
+            public Location call() throws Exception {
+                Location location = getLastLocation(adapter, maxAge, minAccuracy);
+                if (location == null && isAnyCached) {
+                    location = mDispatcher.getLastLocationCache().get();
+                }
+                return location;
+            }
+        }, callback, mHandler);
+        LocationHubWorker.getInstance().execute(result);
+        return result;
     }
 
     @Override
@@ -122,34 +368,58 @@ public class LocationHub implements ILocationHub {
         return mLocationAdapter.isConnecting();
     }
 
+    /**
+     * Registers a listener for the connection state of the hub. The callbacks are held by the hub
+     * rather than by the {@link LocationHubAdapter}, so they survive a failover, which is
+     * transparent to them.
+     *
+     * @param listener The {@link net.frakbot.android.location.common.ConnectionCallbacks} to register.
+     */
     @Override
     public void registerConnectionCallbacks(ConnectionCallbacks listener) {
-        mLocationAdapter.registerConnectionCallbacks(listener);
+        if (listener == null) {
+            return;
+        }
+        if (!isConnectionCallbacksRegistered(listener)) {
+            mConnectionCallbacksList.add(listener);
+        }
+        // If the hub is already connected, call the listener's onConnected method
+        if (isConnectedNotified) {
+            listener.onConnected(null);
+        }
     }
 
     @Override
     public void unregisterConnectionCallbacks(ConnectionCallbacks listener) {
-        mLocationAdapter.unregisterConnectionCallbacks(listener);
+        mConnectionCallbacksList.remove(listener);
     }
 
     @Override
     public boolean isConnectionCallbacksRegistered(ConnectionCallbacks listener) {
-        return mLocationAdapter.isConnectionCallbacksRegistered(listener);
+        return mConnectionCallbacksList.contains(listener);
     }
 
+    /**
+     * Registers a listener for connection failures. It is only called when no fallback
+     * {@link LocationHubAdapter} is available.
+     *
+     * @param listener The {@link net.frakbot.android.location.common.OnConnectionFailedListener} to register.
+     */
     @Override
     public void registerConnectionFailedListener(OnConnectionFailedListener listener) {
-        mLocationAdapter.registerConnectionFailedListener(listener);
+        if (listener != null && !isConnectionFailedListenerRegistered(listener)) {
+            mConnectionFailedListenerList.add(listener);
+        }
     }
 
     @Override
     public void unregisterConnectionFailedListener(OnConnectionFailedListener listener) {
-        mLocationAdapter.unregisterConnectionFailedListener(listener);
+        mConnectionFailedListenerList.remove(listener);
     }
 
     @Override
     public boolean isConnectionFailedListenerRegistered(OnConnectionFailedListener listener) {
-        return mLocationAdapter.isConnectionFailedListenerRegistered(listener);
+        return mConnectionFailedListenerList.contains(listener);
     }
 
     @Override
@@ -157,28 +427,556 @@ public class LocationHub implements ILocationHub {
         mLocationAdapter.setMockMode(isMockMode);
     }
 
+    /**
+     * Sets the mock mode like {@link LocationHub#setMockMode(boolean)}, on the
+     * {@link net.frakbot.android.location.async.LocationHubWorker} thread. A missing permission or
+     * setting is reported as a {@link java.lang.SecurityException} failure.
+     *
+     * @param isMockMode If true the location provider will be set to mock mode.
+     * @param callback   The {@link net.frakbot.android.location.async.AsyncCallback} called on the hub
+     *                   thread, can be null.
+     * @return The {@link java.util.concurrent.Future} of the call.
+     */
+    @Override
+    public Future<Void> setMockModeAsync(final boolean isMockMode, AsyncCallback<Void> callback) {
+        final LocationHubAdapter adapter = mLocationAdapter;
+        AsyncResult<Void> result = new AsyncResult<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                adapter.setMockMode(isMockMode);
+                return null;
+            }
+        }, callback, mHandler);
+        LocationHubWorker.getInstance().execute(result);
+        return result;
+    }
+
+    /**
+     * Sets the mock location like {@link LocationHub#setMockLocation(android.location.Location)}, on
+     * the {@link net.frakbot.android.location.async.LocationHubWorker} thread.
+     *
+     * @param mockLocation The mock location.
+     * @param callback     The {@link net.frakbot.android.location.async.AsyncCallback} called on the hub
+     *                     thread, can be null.
+     * @return The {@link java.util.concurrent.Future} of the call.
+     */
+    @Override
+    public Future<Void> setMockLocationAsync(final Location mockLocation, AsyncCallback<Void> callback) {
+        final LocationHubAdapter adapter = mLocationAdapter;
+        AsyncResult<Void> result = new AsyncResult<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                adapter.setMockLocation(mockLocation);
+                return null;
+            }
+        }, callback, mHandler);
+        LocationHubWorker.getInstance().execute(result);
+        return result;
+    }
+
     @Override
     public void setMockLocation(Location mockLocation) throws SecurityException {
         mLocationAdapter.setMockLocation(mockLocation);
     }
 
+    /**
+     * Requests location updates for the given listener.
+     * <p/>
+     * Requests from all of the listeners are coalesced into a single subscription on the
+     * {@link LocationHubAdapter}, while each listener keeps receiving updates according to its
+     * own {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * Requesting updates again with the same listener replaces its previous request.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} for the updates.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} receiving the updates.
+     */
     @Override
     public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener) {
-        mLocationAdapter.requestLocationUpdates(request, listener);
+        mDispatcher.addListener(request, listener);
+    }
+
+    /**
+     * Requests location updates for the given listener, delivering them on an {@link java.util.concurrent.Executor}.
+     * <p/>
+     * Updates are queued in a bounded mailbox, whose capacity and overflow policy are set on the
+     * {@link net.frakbot.android.location.common.LocationHubRequest}, so a slow listener never
+     * delays the thread updates come from nor any other listener.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} for the updates.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} receiving the updates.
+     * @param executor The {@link java.util.concurrent.Executor} the listener will be called on.
+     * @see net.frakbot.android.location.common.LocationHubRequest#setMailboxCapacity(int)
+     * @see net.frakbot.android.location.common.LocationHubRequest#setOverflowPolicy(int)
+     */
+    public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener, Executor executor) {
+        mDispatcher.addListener(request, listener, executor);
+    }
+
+    /**
+     * Requests location updates for the given listener, delivering them on the thread of a {@link android.os.Looper}.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} for the updates.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} receiving the updates.
+     * @param looper   The {@link android.os.Looper} the listener will be called on.
+     * @see LocationHub#requestLocationUpdates(net.frakbot.android.location.common.LocationHubRequest, net.frakbot.android.location.common.LocationHubListener, java.util.concurrent.Executor)
+     */
+    public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener, Looper looper) {
+        mDispatcher.addListener(request, listener, new HandlerExecutor(looper));
     }
 
     @Override
     public void removeLocationUpdates(LocationHubListener listener) {
-        mLocationAdapter.removeLocationUpdates(listener);
+        mDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Gets a single location, answering from the hub cache when it is recent and accurate enough.
+     * The operation survives failovers like any other listener, and its deadline expires on the
+     * hub thread.
+     */
+    @Override
+    public CurrentLocationOperation getCurrentLocation(float accuracy, long deadline, CurrentLocationCallback callback)
+            throws IllegalArgumentException {
+        CurrentLocationOperation operation = new CurrentLocationOperation(this, accuracy, deadline, callback, mHandler);
+        operation.start(getLastLocation(CurrentLocationOperation.DEFAULT_MAX_AGE, Float.MAX_VALUE));
+        return operation;
+    }
+
+    /**
+     * Returns the locations of the hub as a {@link net.frakbot.android.location.stream.LocationStream},
+     * a publisher with demand signalling that can be composed with operators:
+     * <pre>
+     * hub.getLocationStream(request)
+     *         .distinctUntilMoved(25)
+     *         .bufferByTime(60 * 1000, 100)
+     *         .subscribe(subscriber);
+     * </pre>
+     * Each subscriber registers on the hub with the given request when it first requests locations,
+     * and unregisters when it cancels its subscription. A subscriber that stops requesting
+     * locations pauses its registration, instead of letting locations pile up.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest} the subscribers register with.
+     * @return The {@link net.frakbot.android.location.stream.LocationStream}.
+     */
+    public LocationStream getLocationStream(LocationHubRequest request) {
+        return new LocationHubPublisher(this, request);
+    }
+
+    /**
+     * Delivers the pending batches of all of the listeners registered with a batching
+     * {@link net.frakbot.android.location.common.LocationHubRequest} right away, without waiting
+     * for their maximum wait time or batch size.
+     */
+    public void flushLocations() {
+        mDispatcher.flushAll();
+    }
+
+    /**
+     * Delivers the pending batch of a listener right away.
+     *
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} to flush.
+     * @see LocationHub#flushLocations()
+     */
+    public void flushLocations(LocationHubListener listener) {
+        mDispatcher.flush(listener);
+    }
+
+    /**
+     * Appends a {@link net.frakbot.android.location.processor.LocationProcessor} to the pipeline every
+     * location goes through before reaching the listeners, whatever {@link LocationHubAdapter} it
+     * comes from. Processors can filter, modify, replace or drop locations, and run in the order
+     * they are added.
+     *
+     * @param processor The {@link net.frakbot.android.location.processor.LocationProcessor} to append.
+     */
+    public void addLocationProcessor(LocationProcessor processor) {
+        mDispatcher.addProcessor(processor);
+    }
+
+    /**
+     * Removes a {@link net.frakbot.android.location.processor.LocationProcessor} from the pipeline.
+     *
+     * @param processor The {@link net.frakbot.android.location.processor.LocationProcessor} to remove.
+     */
+    public void removeLocationProcessor(LocationProcessor processor) {
+        mDispatcher.removeProcessor(processor);
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.scheduler.MotionScheduler} that adapts the
+     * requests made with a {@link net.frakbot.android.location.common.LocationHubRequest#setStationaryInterval(long)}
+     * to the motion of the device. Use it to inspect its decisions and to tune its thresholds.
+     *
+     * @return The hub {@link net.frakbot.android.location.scheduler.MotionScheduler}.
+     */
+    public MotionScheduler getMotionScheduler() {
+        return mDispatcher.getMotionScheduler();
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog} that reports the
+     * listeners taking longer than a budget to handle a location. Listeners called directly on the
+     * dispatching thread delay all of the others, so give it an isolation executor to move them
+     * off that thread:
+     * <pre>
+     * hub.getSlowListenerWatchdog()
+     *         .setBudget(20)
+     *         .setIsolationExecutor(Executors.newSingleThreadExecutor());
+     * </pre>
+     *
+     * @return The hub {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog}.
+     */
+    public SlowListenerWatchdog getSlowListenerWatchdog() {
+        return mDispatcher.getSlowListenerWatchdog();
+    }
+
+    /**
+     * Takes a snapshot of the usage of every registered listener: how long it has been subscribed at
+     * each priority and how many locations it received.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot}s, by listener.
+     */
+    public Map<LocationHubListener, UsageSnapshot> getListenerUsage(boolean reset) {
+        return mDispatcher.getListenerUsageSnapshots(reset);
+    }
+
+    /**
+     * Takes a snapshot of the delivery metrics of every registered listener: the p50, p99 and
+     * maximum delay between a location being fixed and being handed to the listener, and the time
+     * the listener took to handle it. Useful to find the slow consumers.
+     *
+     * @param reset true to empty the histograms and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.metrics.ListenerMetrics}, by listener.
+     */
+    public Map<LocationHubListener, ListenerMetrics> getListenerMetrics(boolean reset) {
+        return mDispatcher.getListenerMetrics(reset);
+    }
+
+    /**
+     * Takes a snapshot of the usage of every {@link LocationHubAdapter} used by the hub: how long
+     * it has been subscribed at each priority, how many locations it delivered, how many times it
+     * was subscribed and how many connection cycles it went through.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot}s, by adapter name.
+     * @see net.frakbot.android.location.adapter.android.AndroidLocationHubAdapter#getProviderUsage(boolean)
+     */
+    public Map<String, UsageSnapshot> getAdapterUsage(boolean reset) {
+        return mDispatcher.getAdapterUsageSnapshots(reset);
+    }
+
+    /**
+     * Returns how many location callbacks the hub suppressed since it was created, because the
+     * {@link LocationHubAdapter} delivered locations faster or closer to each other than the
+     * listeners asked for.
+     *
+     * @return the number of suppressed callbacks.
+     */
+    public long getSuppressedLocationCount() {
+        return mDispatcher.getSuppressedCount();
+    }
+
+    /**
+     * Sets the capacity of the history of received locations kept by the hub.
+     * <p/>
+     * Every location received from the {@link LocationHubAdapter} is appended to the history, which
+     * stores them in primitive arrays and can be read without creating any {@link android.location.Location}.
+     * Changing the capacity discards the previously recorded locations.
+     *
+     * @param capacity The maximum number of locations kept in the history, 0 to disable it.
+     * @throws IllegalArgumentException if the capacity is less than zero.
+     */
+    public void setHistoryCapacity(int capacity) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("History capacity cannot be less than 0.");
+        }
+        mHistory = capacity > 0 ? new LocationHistory(capacity) : null;
+        mDispatcher.setHistory(mHistory);
+    }
+
+    /**
+     * Returns the history of received locations.
+     *
+     * @return The {@link net.frakbot.android.location.history.LocationHistory}, or null if it is disabled.
+     * @see LocationHub#setHistoryCapacity(int)
+     */
+    public LocationHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Returns the request currently subscribed on the {@link LocationHubAdapter} on behalf of all
+     * of the listeners.
+     *
+     * @return The coalesced {@link net.frakbot.android.location.common.LocationHubRequest}, or null
+     * if no listener is registered.
+     */
+    public LocationHubRequest getCoalescedRequest() {
+        return mDispatcher.getSubscription();
     }
 
+    /**
+     * Sets after how many consecutive intervals without any location the {@link LocationHubAdapter}
+     * in use is considered failed, and the hub fails over to the next one. The timeout is never
+     * shorter than {@link LocationHub#MIN_MISSED_FIXES_TIMEOUT}, and it doesn't apply to
+     * {@link net.frakbot.android.location.common.LocationHubRequest#PRIORITY_NO_POWER} subscriptions,
+     * nor to subscriptions with a smallest displacement, which get no locations while the device is still.
+     * Without a fallback adapter, the adapter in use is kept and given another timeout.
+     *
+     * @param threshold The number of missed intervals, 0 to only fail over on connection failures.
+     * @throws IllegalArgumentException if the threshold is less than zero.
+     */
+    public void setMissedFixesThreshold(int threshold) throws IllegalArgumentException {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Missed fixes threshold cannot be less than 0.");
+        }
+        mMissedFixesThreshold = threshold;
+        mHandler.removeCallbacks(mWatchdogRunnable);
+        if (mDispatcher.getAdapter() != null && mMissedFixesThreshold > 0) {
+            mHandler.post(mWatchdogRunnable);
+        }
+    }
+
+    /**
+     * Returns the {@link LocationHubAdapter} currently in use, which can change after a failover.
+     *
+     * @return The {@link LocationHubAdapter} in use.
+     */
     public LocationHubAdapter getAdapterImpl() {
         return mLocationAdapter;
     }
 
+    /**
+     * Checks whether the hub is currently using a fallback instead of the preferred {@link LocationHubAdapter}.
+     *
+     * @return true if the hub has failed over to a fallback adapter.
+     */
+    public boolean isFailedOver() {
+        return mLocationAdapter != mPreferredAdapter;
+    }
+
+    private void connectAdapter(LocationHubAdapter adapter) {
+        if (!mAdapterListeners.containsKey(adapter)) {
+            AdapterConnectionListener listener = new AdapterConnectionListener(adapter);
+            mAdapterListeners.put(adapter, listener);
+            adapter.setup(mContext, listener, listener, mBundle);
+        }
+        adapter.connect();
+    }
+
+    private void disconnectAdapter(LocationHubAdapter adapter) {
+        if (adapter.isConnected() || adapter.isConnecting()) {
+            mDispatcher.getAdapterUsage(adapter).onDisconnected();
+        }
+        adapter.disconnect();
+    }
+
+    private void onAdapterConnected(LocationHubAdapter adapter, Bundle connectionHint) {
+        mDispatcher.getAdapterUsage(adapter).onConnected();
+        if (!isConnectRequested) {
+            return;
+        }
+        if (adapter == mRetryingAdapter) {
+            // The preferred adapter is back, move the requests over to it
+            LocationHubAdapter fallbackAdapter = mLocationAdapter;
+            mRetryingAdapter = null;
+            // The backoff is only reset once the adapter delivers locations again
+            mPreferredRestoreTime = SystemClock.elapsedRealtime();
+            mLocationAdapter = adapter;
+            mDispatcher.setAdapter(adapter);
+            if (fallbackAdapter.isConnected() || fallbackAdapter.isConnecting()) {
+                disconnectAdapter(fallbackAdapter);
+            }
+        } else if (adapter == mLocationAdapter) {
+            mDispatcher.setAdapter(adapter);
+        } else {
+            return;
+        }
+        scheduleWatchdog(0);
+        if (!isConnectedNotified) {
+            isConnectedNotified = true;
+            for (ConnectionCallbacks callbacks : new ArrayList<ConnectionCallbacks>(mConnectionCallbacksList)) {
+                callbacks.onConnected(connectionHint);
+            }
+        }
+    }
+
+    private void onAdapterDisconnected(LocationHubAdapter adapter) {
+        if (isConnectRequested && (adapter == mRetryingAdapter || adapter == mLocationAdapter)) {
+            // An unexpected disconnection, the requested ones are counted by disconnectAdapter
+            mDispatcher.getAdapterUsage(adapter).onDisconnected();
+        }
+        if (adapter == mRetryingAdapter) {
+            mRetryingAdapter = null;
+            scheduleRetry();
+        } else if (adapter == mLocationAdapter) {
+            if (isConnectRequested) {
+                failover(adapter, null, true);
+            } else {
+                notifyDisconnected();
+            }
+        }
+    }
+
+    private void onAdapterConnectionFailed(LocationHubAdapter adapter, ConnectionResult result) {
+        if (adapter == mRetryingAdapter) {
+            mRetryingAdapter = null;
+            scheduleRetry();
+        } else if (adapter == mLocationAdapter && isConnectRequested) {
+            failover(adapter, result, true);
+        }
+    }
+
+    /**
+     * Moves all of the requests from a failed adapter to the next available one.
+     *
+     * @param failedAdapter The {@link LocationHubAdapter} that failed.
+     * @param result        The {@link net.frakbot.android.location.common.ConnectionResult} of a
+     *                      failed connection, or null.
+     * @param isLost        Whether the failed adapter can't be used anymore, and the listeners have
+     *                      to be notified if there's no fallback.
+     */
+    private void failover(LocationHubAdapter failedAdapter, ConnectionResult result, boolean isLost) {
+        if (failedAdapter == mPreferredAdapter && mDispatcher.getLastLocationTime() >= mPreferredRestoreTime) {
+            // The preferred adapter delivered locations since it was restored, it is not flapping
+            mFailoverBackoff = DEFAULT_FAILOVER_BACKOFF;
+        }
+        LocationHubAdapter fallbackAdapter = null;
+        if (mLocationAdapterResolver instanceof LocationHubAdapterResolver) {
+            fallbackAdapter = ((LocationHubAdapterResolver) mLocationAdapterResolver).getFallbackAdapter(failedAdapter);
+        }
+        if (fallbackAdapter == null) {
+            if (isLost) {
+                mHandler.removeCallbacks(mWatchdogRunnable);
+                mDispatcher.setAdapter(null);
+                if (result != null) {
+                    for (OnConnectionFailedListener listener : new ArrayList<OnConnectionFailedListener>(mConnectionFailedListenerList)) {
+                        listener.onConnectionFailed(result);
+                    }
+                } else {
+                    notifyDisconnected();
+                }
+            } else {
+                // Keep the adapter, and give it a whole timeout again before checking on it
+                mDispatcher.resetLastActivityTime();
+                scheduleWatchdog(getMissedFixesTimeout(mDispatcher.getSubscription()));
+            }
+            return;
+        }
+
+        mHandler.removeCallbacks(mWatchdogRunnable);
+        mDispatcher.setAdapter(null);
+        mLocationAdapter = fallbackAdapter;
+        if (failedAdapter.isConnected() || failedAdapter.isConnecting()) {
+            disconnectAdapter(failedAdapter);
+        }
+        if (mLocationAdapter != mPreferredAdapter) {
+            scheduleRetry();
+        }
+        // The requests are replayed as soon as the fallback adapter is connected
+        connectAdapter(fallbackAdapter);
+    }
+
+    private void scheduleRetry() {
+        mHandler.removeCallbacks(mRetryRunnable);
+        mHandler.postDelayed(mRetryRunnable, mFailoverBackoff);
+        mFailoverBackoff = Math.min(mFailoverBackoff * 2, MAX_FAILOVER_BACKOFF);
+    }
+
+    private void retryPreferredAdapter() {
+        if (!isConnectRequested || mLocationAdapter == mPreferredAdapter || mRetryingAdapter != null) {
+            return;
+        }
+        if (!mPreferredAdapter.isServiceAvailable(mContext)) {
+            scheduleRetry();
+            return;
+        }
+        mRetryingAdapter = mPreferredAdapter;
+        connectAdapter(mPreferredAdapter);
+    }
+
+    private void scheduleWatchdog(long delay) {
+        mHandler.removeCallbacks(mWatchdogRunnable);
+        if (mMissedFixesThreshold > 0) {
+            mHandler.postDelayed(mWatchdogRunnable, delay);
+        }
+    }
+
+    /**
+     * Fails over if the subscribed adapter hasn't delivered any location for too long.
+     */
+    private void checkMissedFixes() {
+        LocationHubRequest subscription = mDispatcher.getSubscription();
+        if (!isConnectRequested || mDispatcher.getAdapter() == null) {
+            return;
+        }
+        if (subscription == null || subscription.getPriority() == LocationHubRequest.PRIORITY_NO_POWER
+                || subscription.getSmallestDisplacement() > 0) {
+            // Nothing is expected, or nothing comes while the device is still: check again later
+            scheduleWatchdog(MIN_MISSED_FIXES_TIMEOUT);
+            return;
+        }
+        long timeout = getMissedFixesTimeout(subscription);
+        long idle = SystemClock.elapsedRealtime() - mDispatcher.getLastActivityTime();
+        if (idle < timeout) {
+            scheduleWatchdog(timeout - idle);
+        } else {
+            failover(mLocationAdapter, null, false);
+        }
+    }
+
+    /**
+     * Returns how long the adapter can go without delivering any location for a subscription. The
+     * interval of the subscription is already the one adapted to the motion state, if any.
+     */
+    private long getMissedFixesTimeout(LocationHubRequest subscription) {
+        if (subscription == null) {
+            return MIN_MISSED_FIXES_TIMEOUT;
+        }
+        return Math.max(subscription.getInterval() * mMissedFixesThreshold, MIN_MISSED_FIXES_TIMEOUT);
+    }
+
+    private void notifyDisconnected() {
+        if (!isConnectedNotified) {
+            return;
+        }
+        isConnectedNotified = false;
+        for (ConnectionCallbacks callbacks : new ArrayList<ConnectionCallbacks>(mConnectionCallbacksList)) {
+            callbacks.onDisconnected();
+        }
+    }
+
     private static ILocationHubAdapterResolver getDefaultResolver(Context context) {
-        ILocationHubAdapterResolver defaultResolver = new DefaultLocationHubAdapterResolver(context);
-        defaultResolver.getAdapterList().add(new AndroidLocationHubAdapter());
+        LocationHubAdapterResolver defaultResolver = new DefaultLocationHubAdapterResolver(context);
+        defaultResolver.getDescriptorList().add(new AndroidLocationHubAdapterDescriptor());
         return defaultResolver;
     }
+
+    /**
+     * Receives the connection events of a single {@link LocationHubAdapter}, so that the hub can
+     * tell the adapter in use apart from the one being retried.
+     */
+    private class AdapterConnectionListener implements ConnectionCallbacks, OnConnectionFailedListener {
+        private final LocationHubAdapter mAdapter;
+
+        public AdapterConnectionListener(LocationHubAdapter adapter) {
+            mAdapter = adapter;
+        }
+
+        @Override
+        public void onConnected(Bundle connectionHint) {
+            onAdapterConnected(mAdapter, connectionHint);
+        }
+
+        @Override
+        public void onDisconnected() {
+            onAdapterDisconnected(mAdapter);
+        }
+
+        @Override
+        public void onConnectionFailed(ConnectionResult result) {
+            onAdapterConnectionFailed(mAdapter, result);
+        }
+    }
 }
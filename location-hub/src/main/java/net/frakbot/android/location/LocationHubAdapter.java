@@ -19,11 +19,22 @@ package net.frakbot.android.location;
 import android.content.Context;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 
+import net.frakbot.android.location.async.AsyncCallback;
+import net.frakbot.android.location.async.AsyncResult;
+import net.frakbot.android.location.async.ConnectionResultListener;
+import net.frakbot.android.location.async.LocationHubWorker;
 import net.frakbot.android.location.common.ConnectionCallbacks;
 import net.frakbot.android.location.common.LocationHubListener;
 import net.frakbot.android.location.common.LocationHubRequest;
 import net.frakbot.android.location.common.OnConnectionFailedListener;
+import net.frakbot.android.location.current.CurrentLocationCallback;
+import net.frakbot.android.location.current.CurrentLocationOperation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * TODO: write doc
@@ -54,6 +65,98 @@ public abstract class LocationHubAdapter implements ILocationHub {
      */
     public abstract boolean isServiceAvailable(Context context);
 
+    /**
+     * Returns the package name of the service the Adapter is built for, if any.
+     * <p/>
+     * The cached result of {@link LocationHubAdapter#isServiceAvailable(android.content.Context)}
+     * is invalidated whenever this package is installed, updated or removed.
+     *
+     * @return the service package name, or null if the Adapter doesn't depend on an external package.
+     */
+    public String getServicePackage() {
+        return null;
+    }
+
+    /**
+     * Connects on the {@link net.frakbot.android.location.async.LocationHubWorker} thread. The
+     * callback is called on the thread of the calling {@link android.os.Looper}, or on the main
+     * thread if the calling thread has none, as for all of the asynchronous calls of the adapter.
+     */
+    @Override
+    public Future<Bundle> connectAsync(AsyncCallback<Bundle> callback) {
+        final AsyncResult<Bundle> result = new AsyncResult<Bundle>(callback, getCallbackHandler());
+        LocationHubWorker.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                // Completes right away if the adapter is already connected
+                new ConnectionResultListener(LocationHubAdapter.this, result).register();
+                if (!result.isDone()) {
+                    connect();
+                }
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Future<Location> getLastLocationAsync(AsyncCallback<Location> callback) {
+        AsyncResult<Location> result = new AsyncResult<Location>(new Callable<Location>() {
+            @Override
+            public Location call() throws Exception {
+                return getLastLocation();
+            }
+        }, callback, getCallbackHandler());
+        LocationHubWorker.getInstance().execute(result);
+        return result;
+    }
+
+    @Override
+    public Future<Void> setMockModeAsync(final boolean isMockMode, AsyncCallback<Void> callback) {
+        AsyncResult<Void> result = new AsyncResult<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                setMockMode(isMockMode);
+                return null;
+            }
+        }, callback, getCallbackHandler());
+        LocationHubWorker.getInstance().execute(result);
+        return result;
+    }
+
+    @Override
+    public Future<Void> setMockLocationAsync(final Location mockLocation, AsyncCallback<Void> callback) {
+        AsyncResult<Void> result = new AsyncResult<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                setMockLocation(mockLocation);
+                return null;
+            }
+        }, callback, getCallbackHandler());
+        LocationHubWorker.getInstance().execute(result);
+        return result;
+    }
+
+    /**
+     * Gets a single location on top of {@link LocationHubAdapter#requestLocationUpdates(net.frakbot.android.location.common.LocationHubRequest, net.frakbot.android.location.common.LocationHubListener)}.
+     * The deadline expires on the thread of the calling {@link android.os.Looper}, or on the main
+     * thread if the calling thread has none.
+     */
+    @Override
+    public CurrentLocationOperation getCurrentLocation(float accuracy, long deadline, CurrentLocationCallback callback)
+            throws IllegalArgumentException {
+        CurrentLocationOperation operation = new CurrentLocationOperation(this, accuracy, deadline, callback, getCallbackHandler());
+        operation.start(getLastLocation());
+        return operation;
+    }
+
+    /**
+     * Returns a {@link android.os.Handler} on the calling {@link android.os.Looper}, or on the main one.
+     */
+    private static Handler getCallbackHandler() {
+        Looper looper = Looper.myLooper();
+        return new Handler(looper != null ? looper : Looper.getMainLooper());
+    }
+
     /**
      * Gets the name of the current {@link net.frakbot.android.location.LocationHubAdapter} implementation.
      * <p/>
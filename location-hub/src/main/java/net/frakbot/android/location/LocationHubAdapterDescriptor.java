@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location;
+
+import android.content.Context;
+
+/**
+ * Lightweight description of a {@link net.frakbot.android.location.LocationHubAdapter} implementation.
+ * <p/>
+ * A descriptor can tell whether the service of its adapter is available without creating the
+ * adapter, so that an {@link net.frakbot.android.location.ILocationHubAdapterResolver} only
+ * instantiates, and class-loads, the adapter it actually chooses.
+ */
+public abstract class LocationHubAdapterDescriptor {
+    private LocationHubAdapter mAdapter;
+
+    /**
+     * Wraps an already created {@link net.frakbot.android.location.LocationHubAdapter} into a descriptor.
+     *
+     * @param adapter The {@link net.frakbot.android.location.LocationHubAdapter} instance.
+     * @return A descriptor always returning the given instance.
+     */
+    public static LocationHubAdapterDescriptor of(final LocationHubAdapter adapter) {
+        LocationHubAdapterDescriptor descriptor = new LocationHubAdapterDescriptor() {
+            @Override
+            public String getAdapterName() {
+                return adapter.getAdapterName();
+            }
+
+            @Override
+            public String getServicePackage() {
+                return adapter.getServicePackage();
+            }
+
+            @Override
+            public boolean isServiceAvailable(Context context) {
+                return adapter.isServiceAvailable(context);
+            }
+
+            @Override
+            protected LocationHubAdapter createAdapter() {
+                return adapter;
+            }
+        };
+        descriptor.mAdapter = adapter;
+        return descriptor;
+    }
+
+    /**
+     * Gets the name of the described {@link net.frakbot.android.location.LocationHubAdapter}, the
+     * same one returned by {@link LocationHubAdapter#getAdapterName()}.
+     *
+     * @return the adapter implementation name.
+     */
+    public abstract String getAdapterName();
+
+    /**
+     * Returns the package name of the service the adapter is built for, if any.
+     *
+     * @return the service package name, or null if the adapter doesn't depend on an external package.
+     * @see LocationHubAdapter#getServicePackage()
+     */
+    public String getServicePackage() {
+        return null;
+    }
+
+    /**
+     * Checks if the service the adapter is built for is actually available, without creating the adapter.
+     *
+     * @param context The {@link android.content.Context} the adapter will work on.
+     * @return true if the matching service is available, false otherwise.
+     * @see LocationHubAdapter#isServiceAvailable(android.content.Context)
+     */
+    public abstract boolean isServiceAvailable(Context context);
+
+    /**
+     * Creates a new instance of the described adapter.
+     *
+     * @return A new {@link net.frakbot.android.location.LocationHubAdapter}.
+     */
+    protected abstract LocationHubAdapter createAdapter();
+
+    /**
+     * Returns the described adapter, creating it on the first call.
+     *
+     * @return The {@link net.frakbot.android.location.LocationHubAdapter} instance.
+     */
+    public synchronized LocationHubAdapter getAdapter() {
+        if (mAdapter == null) {
+            mAdapter = createAdapter();
+        }
+        return mAdapter;
+    }
+
+    /**
+     * Checks whether the described adapter has already been created.
+     *
+     * @return true if {@link LocationHubAdapterDescriptor#getAdapter()} has been called.
+     */
+    public synchronized boolean isAdapterCreated() {
+        return mAdapter != null;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location;
+
+import java.util.List;
+
+/**
+ * Base class of the {@link net.frakbot.android.location.ILocationHubAdapterResolver}s describing
+ * their adapters through {@link LocationHubAdapterDescriptor}s, so that only the chosen one is ever
+ * instantiated, and able to pick a fallback when the adapter in use fails.
+ * <p/>
+ * The {@link net.frakbot.android.location.LocationHub} only fails over with resolvers extending
+ * this class; plain {@link net.frakbot.android.location.ILocationHubAdapterResolver}s keep working
+ * with the single adapter they resolve.
+ */
+public abstract class LocationHubAdapterResolver implements ILocationHubAdapterResolver {
+
+    /**
+     * Returns a {@link java.util.List} of {@link LocationHubAdapterDescriptor}s.
+     * Each element of this collection describes a candidate for being resolved and used by the {@link net.frakbot.android.location.LocationHub};
+     * only the chosen one is ever instantiated.
+     *
+     * @return A {@link java.util.List} of {@link LocationHubAdapterDescriptor}s of possible
+     * adapter implementations.
+     */
+    public abstract List<LocationHubAdapterDescriptor> getDescriptorList();
+
+    /**
+     * Returns the {@link LocationHubAdapter} implementation instance to fall back to when the given
+     * one fails, that is the next available adapter after it in resolution order.
+     * <p/>
+     * The default implementation never falls back.
+     *
+     * @param failedAdapter The {@link LocationHubAdapter} that failed.
+     * @return The fallback {@link LocationHubAdapter} implementation instance, or null if there is none.
+     */
+    public LocationHubAdapter getFallbackAdapter(LocationHubAdapter failedAdapter) {
+        return null;
+    }
+}
@@ -27,20 +27,39 @@ import android.provider.Settings;
 import android.text.TextUtils;
 
 import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.async.LocationHubWorker;
 import net.frakbot.android.location.common.ConnectionCallbacks;
 import net.frakbot.android.location.common.LocationHubListener;
 import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.LocationQuality;
 import net.frakbot.android.location.common.OnConnectionFailedListener;
+import net.frakbot.android.location.usage.UsageCounters;
+import net.frakbot.android.location.usage.UsageSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Adapter for the Android built-in {@link android.location.LocationManager}.
+ * <p/>
+ * By default each request is served by the single best provider for its criteria. Requests for the
+ * same provider and interval share a single {@link net.frakbot.android.location.adapter.android.ProviderSubscription},
+ * so the number of {@link android.location.LocationManager} registrations grows with the providers
+ * in use rather than with the listeners. In fusion mode,
+ * enabled with {@link AndroidLocationHubAdapter#setFusionEnabled(boolean)} or with the
+ * {@link AndroidLocationHubAdapter#EXTRA_FUSION} setup extra, each request is served by a
+ * {@link net.frakbot.android.location.adapter.android.FusedLocationListener} instead, which
+ * subscribes to several providers at once for a faster first location.
  */
 public class AndroidLocationHubAdapter extends LocationHubAdapter {
 
+    /**
+     * Boolean extra of the setup {@link android.os.Bundle} enabling the fusion mode.
+     */
+    public static final String EXTRA_FUSION = "net.frakbot.android.location.extra.FUSION";
+
     private Context mContext;
     private LocationManager mLocationManager;
     private String mLocationProvider;
@@ -48,16 +67,31 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
 
     private boolean isConnected = false;
     private boolean isConnecting = false;
-    private boolean isMock = false;
+    // The mock mode can be switched on the worker thread while the adapter is used on the hub one
+    private final Object mMockLock = new Object();
+    private volatile boolean isMock = false;
+    private boolean isFusion = false;
 
     private List<ConnectionCallbacks> mConnectionCallbacksList;
     private List<OnConnectionFailedListener> mConnectionFailedListenerList;
     private HashMap<LocationHubListener, AndroidLocationListenerImpl> mListeners;
+    private HashMap<LocationHubListener, ProviderSubscription> mListenerSubscriptions;
+    private HashMap<String, ProviderSubscription> mSubscriptions;
+    private HashMap<LocationHubListener, FusedLocationListener> mFusedListeners;
+    private final HashMap<String, UsageCounters> mProviderUsage;
 
     public AndroidLocationHubAdapter() {
         mConnectionCallbacksList = new ArrayList<ConnectionCallbacks>();
         mConnectionFailedListenerList = new ArrayList<OnConnectionFailedListener>();
         mListeners = new HashMap<LocationHubListener, AndroidLocationListenerImpl>();
+        mListenerSubscriptions = new HashMap<LocationHubListener, ProviderSubscription>();
+        mSubscriptions = new HashMap<String, ProviderSubscription>();
+        mFusedListeners = new HashMap<LocationHubListener, FusedLocationListener>();
+        mProviderUsage = new HashMap<String, UsageCounters>();
+        // The fusion ladder looks these up directly
+        mProviderUsage.put(LocationManager.PASSIVE_PROVIDER, new UsageCounters());
+        mProviderUsage.put(LocationManager.NETWORK_PROVIDER, new UsageCounters());
+        mProviderUsage.put(LocationManager.GPS_PROVIDER, new UsageCounters());
     }
 
     @Override
@@ -69,10 +103,27 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
         if (connectionFailedListener != null) {
             mConnectionFailedListenerList.add(connectionFailedListener);
         }
+        if (bundle != null && bundle.containsKey(EXTRA_FUSION)) {
+            isFusion = bundle.getBoolean(EXTRA_FUSION);
+        }
         // Get the location manager
         mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
     }
 
+    /**
+     * Enables or disables the fusion mode for the requests made from now on.
+     * The fusion mode is never used while the mock mode is enabled.
+     *
+     * @param enabled true to serve the requests from several providers at once.
+     */
+    public void setFusionEnabled(boolean enabled) {
+        isFusion = enabled;
+    }
+
+    public boolean isFusionEnabled() {
+        return isFusion;
+    }
+
     @Override
     public boolean isServiceAvailable(Context context) {
         return true;
@@ -87,8 +138,13 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
         for (ConnectionCallbacks callbacks : mConnectionCallbacksList) {
             callbacks.onConnected(null);
         }
-        // TODO: catch and handle a null provider --> IllegalArgumentException follows
-        updateLocation();
+        // Warm up the last known location without blocking the caller on the binder calls
+        LocationHubWorker.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                updateLocation();
+            }
+        });
     }
 
     @Override
@@ -162,61 +218,143 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
 
     @Override
     public void setMockMode(boolean isMockMode) throws SecurityException {
-        if (isMockMode == isMock) {
-            return;
-        }
-        isMock = isMockMode;
-        if (isMock) {
-            if (Settings.Secure.getInt(mContext.getContentResolver(), Settings.Secure.ALLOW_MOCK_LOCATION, 0) == 0) {
-                throw new SecurityException(
-                        "Mock locations are currently disabled in Settings. " +
-                                "You can't use mock mode without enbabling mock locations.");
-            }
-            if (mContext.checkCallingOrSelfPermission(Manifest.permission.ACCESS_MOCK_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-                throw new SecurityException(
-                        "Current context does not have the android.permission.ACCESS_MOCK_LOCATION permission.");
+        synchronized (mMockLock) {
+            if (isMockMode == isMock) {
+                return;
             }
-            mLocationProvider = MOCK_PROVIDER;
-            if (mLocationManager.getProvider(MOCK_PROVIDER) == null) {
-                mLocationManager.addTestProvider(
-                        mLocationProvider, false, false, false, false, false, false, false,
-                        Criteria.POWER_LOW, Criteria.ACCURACY_FINE);
-                mLocationManager.setTestProviderEnabled(mLocationProvider, true);
-            }
-        } else {
-            if (mLocationManager.getProvider(MOCK_PROVIDER) != null) {
-                mLocationManager.setTestProviderEnabled(mLocationProvider, false);
-                mLocationManager.removeTestProvider(mLocationProvider);
+            if (isMockMode) {
+                enableMockProvider();
+            } else {
+                disableMockProvider();
             }
+            // Only switched once the provider is set up, so a failed switch leaves the mode as it was
+            isMock = isMockMode;
+        }
+    }
+
+    private void enableMockProvider() throws SecurityException {
+        if (Settings.Secure.getInt(mContext.getContentResolver(), Settings.Secure.ALLOW_MOCK_LOCATION, 0) == 0) {
+            throw new SecurityException(
+                    "Mock locations are currently disabled in Settings. " +
+                            "You can't use mock mode without enbabling mock locations.");
+        }
+        if (mContext.checkCallingOrSelfPermission(Manifest.permission.ACCESS_MOCK_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            throw new SecurityException(
+                    "Current context does not have the android.permission.ACCESS_MOCK_LOCATION permission.");
+        }
+        mLocationProvider = MOCK_PROVIDER;
+        if (mLocationManager.getProvider(MOCK_PROVIDER) == null) {
+            mLocationManager.addTestProvider(
+                    mLocationProvider, false, false, false, false, false, false, false,
+                    Criteria.POWER_LOW, Criteria.ACCURACY_FINE);
+            mLocationManager.setTestProviderEnabled(mLocationProvider, true);
+        }
+    }
+
+    private void disableMockProvider() {
+        if (mLocationManager.getProvider(MOCK_PROVIDER) != null) {
+            mLocationManager.setTestProviderEnabled(MOCK_PROVIDER, false);
+            mLocationManager.removeTestProvider(MOCK_PROVIDER);
         }
     }
 
     @Override
     public void setMockLocation(Location mockLocation) throws SecurityException {
-        if (!isMock) {
-            throw new SecurityException("You can't set a mock location if the mock mode is disabled.");
+        synchronized (mMockLock) {
+            if (!isMock) {
+                throw new SecurityException("You can't set a mock location if the mock mode is disabled.");
+            }
+            mLocationManager.setTestProviderLocation(mLocationProvider, mockLocation);
         }
-        mLocationManager.setTestProviderLocation(mLocationProvider, mockLocation);
     }
 
     @Override
     public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener) {
-        AndroidLocationListenerImpl realListener = new AndroidLocationListenerImpl(listener);
-        mListeners.put(listener, realListener);
+        // Requesting again with the same listener replaces its previous request
+        removeLocationUpdates(listener);
+        if (isFusion && !isMock) {
+            FusedLocationListener fusedListener = new FusedLocationListener(mLocationManager, listener, request, mProviderUsage);
+            mFusedListeners.put(listener, fusedListener);
+            fusedListener.start();
+            return;
+        }
+        AndroidLocationListenerImpl realListener = new AndroidLocationListenerImpl(listener, request);
         // build the Criteria from the given request
         Criteria criteria = criteriaFromRequest(request);
         // get only the available providers, given the built request criteria
-        mLocationProvider = getBestProvider(criteria, true);
-        // request location updates with given criteria
-        mLocationManager.requestLocationUpdates(
-                mLocationProvider, request.getInterval(), request.getSmallestDisplacement(), realListener);
+        String provider = getBestProvider(criteria, true);
+        if (provider == null) {
+            // Location is turned off: the LocationManager keeps a registration on a disabled
+            // provider, and starts delivering as soon as the user enables it
+            provider = getBestProvider(criteria, false);
+        }
+        if (provider == null) {
+            throw new IllegalArgumentException("No location provider satisfies the request.");
+        }
+        // share the registration with the other listeners of the same provider and interval
+        String key = ProviderSubscription.getKey(provider, request.getInterval());
+        ProviderSubscription subscription = mSubscriptions.get(key);
+        if (subscription == null) {
+            subscription = new ProviderSubscription(mLocationManager, provider, request.getInterval(),
+                    getProviderUsage(provider));
+            mSubscriptions.put(key, subscription);
+        }
+        mListeners.put(listener, realListener);
+        mListenerSubscriptions.put(listener, subscription);
+        subscription.addListener(realListener);
+    }
+
+    /**
+     * Returns the number of {@link android.location.LocationManager} registrations currently shared
+     * by the listeners, not counting the ones in fusion mode.
+     *
+     * @return the number of provider subscriptions.
+     */
+    public int getSubscriptionCount() {
+        return mSubscriptions.size();
+    }
+
+    /**
+     * Takes a snapshot of the usage of every location provider: how long it has been registered at
+     * each priority, how many locations it delivered and how many times it was registered on the
+     * {@link android.location.LocationManager}.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot}s, by provider name.
+     */
+    public Map<String, UsageSnapshot> getProviderUsage(boolean reset) {
+        Map<String, UsageSnapshot> snapshots = new HashMap<String, UsageSnapshot>();
+        synchronized (mProviderUsage) {
+            for (Map.Entry<String, UsageCounters> entry : mProviderUsage.entrySet()) {
+                snapshots.put(entry.getKey(), entry.getValue().snapshot(reset));
+            }
+        }
+        return snapshots;
+    }
+
+    private UsageCounters getProviderUsage(String provider) {
+        synchronized (mProviderUsage) {
+            UsageCounters usage = mProviderUsage.get(provider);
+            if (usage == null) {
+                usage = new UsageCounters();
+                mProviderUsage.put(provider, usage);
+            }
+            return usage;
+        }
     }
 
     @Override
     public void removeLocationUpdates(LocationHubListener listener) {
-        AndroidLocationListenerImpl realListener = mListeners.get(listener);
-        mListeners.remove(listener);
-        mLocationManager.removeUpdates(realListener);
+        FusedLocationListener fusedListener = mFusedListeners.remove(listener);
+        if (fusedListener != null) {
+            fusedListener.stop();
+            return;
+        }
+        AndroidLocationListenerImpl realListener = mListeners.remove(listener);
+        ProviderSubscription subscription = mListenerSubscriptions.remove(listener);
+        if (realListener != null && subscription != null && subscription.removeListener(realListener)) {
+            mSubscriptions.remove(ProviderSubscription.getKey(subscription.getProvider(), subscription.getInterval()));
+        }
     }
 
     /**
@@ -224,14 +362,17 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
      * For internal use only, this method will be called before disconnecting.
      */
     protected void removeAllLocationUpdates() {
-        for (LocationHubListener hubListener : mListeners.keySet()) {
+        for (LocationHubListener hubListener : new ArrayList<LocationHubListener>(mListeners.keySet())) {
+            removeLocationUpdates(hubListener);
+        }
+        for (LocationHubListener hubListener : new ArrayList<LocationHubListener>(mFusedListeners.keySet())) {
             removeLocationUpdates(hubListener);
         }
     }
 
     @Override
     public String getAdapterName() {
-        return "Android Default Location Hub Adapter";
+        return AndroidLocationHubAdapterDescriptor.ADAPTER_NAME;
     }
 
     /**
@@ -266,23 +407,22 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
     }
 
     /**
-     * Update the location from the {@link android.location.LocationManager}. If the retrieved
-     * {@link android.location.Location} is null, it returns the previously cached one.
+     * Update the location from the {@link android.location.LocationManager}, picking the best
+     * last known location among all of the enabled providers. If no provider has a
+     * {@link android.location.Location}, it returns the previously cached one.
      *
      * @return The last known {@link android.location.Location}. It can be null if no location data is available yet.
      */
-    private Location updateLocation() {
-        // If the location provider is null, try to get the most approximate location using low power
-        if (mLocationProvider == null) {
-            Criteria criteria = new Criteria();
-            criteria.setPowerRequirement(Criteria.POWER_LOW);
-            criteria.setAccuracy(Criteria.ACCURACY_LOW);
-            mLocationProvider = mLocationManager.getBestProvider(criteria, true);
+    private synchronized Location updateLocation() {
+        Location bestLocation = null;
+        for (String provider : mLocationManager.getProviders(true)) {
+            Location location = mLocationManager.getLastKnownLocation(provider);
+            if (LocationQuality.isBetterLocation(location, bestLocation)) {
+                bestLocation = location;
+            }
         }
-        // TODO: catch and handle a null provider
-        Location newLocation = mLocationManager.getLastKnownLocation(mLocationProvider);
-        if (newLocation != null) {
-            mLastKnownLocation = newLocation;
+        if (LocationQuality.isBetterLocation(bestLocation, mLastKnownLocation)) {
+            mLastKnownLocation = bestLocation;
         }
         return mLastKnownLocation;
     }
@@ -301,6 +441,6 @@ public class AndroidLocationHubAdapter extends LocationHubAdapter {
         if (isMock) {
             return MOCK_PROVIDER;
         }
-        return mLocationManager.getBestProvider(criteria, true);
+        return mLocationManager.getBestProvider(criteria, enabledOnly);
     }
 }
@@ -19,22 +19,43 @@ package net.frakbot.android.location.adapter.android;
 import android.location.Location;
 import android.location.LocationListener;
 import android.os.Bundle;
+import android.os.SystemClock;
 
+import net.frakbot.android.location.common.DeliveryGate;
 import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
 
 /**
  * Listener implementation for the Android built-in {@link android.location.LocationListener}.
+ * <p/>
+ * The {@link android.location.LocationManager} treats the minimum time and distance as hints,
+ * and has no notion of a fastest interval at all, so the listener enforces both through a
+ * {@link net.frakbot.android.location.common.DeliveryGate}.
  */
 public class AndroidLocationListenerImpl implements LocationListener {
     private LocationHubListener mHubListener;
+    private LocationHubRequest mRequest;
+    private DeliveryGate mGate;
 
-    public AndroidLocationListenerImpl(LocationHubListener hubListener) {
+    public AndroidLocationListenerImpl(LocationHubListener hubListener, LocationHubRequest request) {
         mHubListener = hubListener;
+        mRequest = request;
+        mGate = new DeliveryGate(request);
+    }
+
+    public LocationHubRequest getRequest() {
+        return mRequest;
+    }
+
+    public DeliveryGate getGate() {
+        return mGate;
     }
 
     @Override
     public void onLocationChanged(Location location) {
-        mHubListener.onLocationChanged(location);
+        if (mGate.accept(location.getLatitude(), location.getLongitude(), SystemClock.elapsedRealtime())) {
+            mHubListener.onLocationChanged(location);
+        }
     }
 
     @Override
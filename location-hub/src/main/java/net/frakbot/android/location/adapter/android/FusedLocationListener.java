@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.adapter.android;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import net.frakbot.android.location.common.DeliveryGate;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.LocationQuality;
+import net.frakbot.android.location.usage.UsageCounters;
+
+import java.util.Map;
+
+/**
+ * Fuses the locations of several {@link android.location.LocationManager} providers into a single
+ * stream for a {@link net.frakbot.android.location.common.LocationHubListener}.
+ * <p/>
+ * The passive, network and GPS providers are subscribed at the same time, as allowed by the request
+ * priority, so the first location comes from whichever provider answers first. A location is
+ * only delivered if it is better than the current best one, unless the best one has gone stale.
+ * A newer location from the same provider wins unless it is significantly less accurate, so a
+ * moving stream isn't held back by its accuracy jitter, while locations of different providers
+ * are compared by their accuracy weighted by the confidence in the provider.
+ * <p/>
+ * Once a provider steadily meets the accuracy target of the priority, all of the providers more
+ * expensive than it are turned off, and they are turned on again as soon as it misses the target.
+ */
+public class FusedLocationListener {
+    /**
+     * Number of consecutive locations meeting the accuracy target after which the more expensive
+     * providers are turned off.
+     */
+    public static final int STEADY_FIX_COUNT = 3;
+
+    /**
+     * Minimum age after which the best location is replaced by any newer one, whatever its accuracy.
+     */
+    public static final long MIN_STALE_AGE = 10 * 1000;
+
+    // Providers in ascending order of power cost
+    private static final String[] PROVIDERS = {
+            LocationManager.PASSIVE_PROVIDER, LocationManager.NETWORK_PROVIDER, LocationManager.GPS_PROVIDER
+    };
+    private static final int PASSIVE = 0;
+
+    private final LocationManager mLocationManager;
+    private final LocationHubListener mHubListener;
+    private final LocationHubRequest mRequest;
+    private final int mPriority;
+    private final DeliveryGate mGate;
+    private final float mAccuracyTarget;
+    private final long mStaleAge;
+
+    private final ProviderListener[] mProviderListeners;
+    private final UsageCounters[] mProviderUsage;
+    private final boolean[] mActive;
+
+    private Location mBestLocation;
+    private int mSteadyProvider = -1;
+    private int mSteadyCount;
+
+    /**
+     * Creates a new fused listener.
+     *
+     * @param locationManager The {@link android.location.LocationManager}.
+     * @param hubListener     The {@link net.frakbot.android.location.common.LocationHubListener} receiving the fused locations.
+     * @param request         The {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * @param providerUsage   The {@link net.frakbot.android.location.usage.UsageCounters} of the passive,
+     *                        network and GPS providers, by provider name.
+     */
+    public FusedLocationListener(LocationManager locationManager, LocationHubListener hubListener, LocationHubRequest request,
+                                 Map<String, UsageCounters> providerUsage) {
+        mLocationManager = locationManager;
+        mHubListener = hubListener;
+        mRequest = request;
+        mGate = new DeliveryGate(request);
+        // A request without a priority is served as a balanced one, not as a passive one
+        mPriority = request.getPriority() != 0 ? request.getPriority()
+                : LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+        mAccuracyTarget = getAccuracyTarget(mPriority);
+        mStaleAge = Math.max(2 * request.getInterval(), MIN_STALE_AGE);
+
+        int providerCount = getMaxProvider(mPriority) + 1;
+        mProviderListeners = new ProviderListener[providerCount];
+        mProviderUsage = new UsageCounters[providerCount];
+        mActive = new boolean[providerCount];
+        for (int i = 0; i < providerCount; i++) {
+            mProviderListeners[i] = new ProviderListener(i);
+            mProviderUsage[i] = providerUsage.get(PROVIDERS[i]);
+        }
+    }
+
+    public DeliveryGate getGate() {
+        return mGate;
+    }
+
+    /**
+     * Subscribes to all of the providers allowed by the request priority.
+     */
+    public void start() {
+        for (int i = 0; i < mProviderListeners.length; i++) {
+            setActive(i, true);
+        }
+    }
+
+    /**
+     * Unsubscribes from all of the providers.
+     */
+    public void stop() {
+        for (int i = 0; i < mProviderListeners.length; i++) {
+            setActive(i, false);
+        }
+        mSteadyProvider = -1;
+        mSteadyCount = 0;
+    }
+
+    /**
+     * Checks whether a provider is currently subscribed.
+     *
+     * @param provider The name of the provider.
+     * @return true if the provider is subscribed.
+     */
+    public boolean isProviderActive(String provider) {
+        for (int i = 0; i < mActive.length; i++) {
+            if (mActive[i] && PROVIDERS[i].equals(provider)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onProviderLocation(int provider, Location location) {
+        if (provider != PASSIVE) {
+            updateProviders(provider, LocationQuality.getAccuracy(location) <= mAccuracyTarget);
+        }
+        if (isBetterFusedLocation(location)) {
+            mBestLocation = location;
+            if (mGate.accept(location.getLatitude(), location.getLongitude(), SystemClock.elapsedRealtime())) {
+                mHubListener.onLocationChanged(location);
+            }
+        }
+    }
+
+    /**
+     * Turns the more expensive providers off when a provider steadily meets the accuracy target,
+     * and back on when it misses it.
+     */
+    private void updateProviders(int provider, boolean meetsTarget) {
+        if (!meetsTarget) {
+            if (provider == mSteadyProvider) {
+                mSteadyProvider = -1;
+                mSteadyCount = 0;
+                start();
+            }
+            return;
+        }
+        if (provider == mSteadyProvider) {
+            mSteadyCount++;
+        } else if (mSteadyProvider < 0 || provider < mSteadyProvider) {
+            // A cheaper provider meeting the target is always worth tracking
+            mSteadyProvider = provider;
+            mSteadyCount = 1;
+        }
+        if (mSteadyCount >= STEADY_FIX_COUNT) {
+            for (int i = mSteadyProvider + 1; i < mActive.length; i++) {
+                setActive(i, false);
+            }
+        }
+    }
+
+    /**
+     * Decides whether a location from any provider replaces the current best one.
+     */
+    private boolean isBetterFusedLocation(Location location) {
+        if (mBestLocation == null) {
+            return true;
+        }
+        long timeDelta = location.getTime() - mBestLocation.getTime();
+        if (timeDelta <= 0) {
+            // The passive provider can hand back locations already received
+            return false;
+        }
+        if (timeDelta >= mStaleAge) {
+            return true;
+        }
+        if (TextUtils.equals(location.getProvider(), mBestLocation.getProvider())) {
+            return LocationQuality.getAccuracy(location) - LocationQuality.getAccuracy(mBestLocation)
+                    <= LocationQuality.SIGNIFICANTLY_LESS_ACCURATE_METERS;
+        }
+        return getWeightedAccuracy(location) <= getWeightedAccuracy(mBestLocation);
+    }
+
+    private void setActive(int provider, boolean active) {
+        if (mActive[provider] == active) {
+            return;
+        }
+        if (active) {
+            if (mLocationManager.getProvider(PROVIDERS[provider]) == null) {
+                // Not available on this device
+                return;
+            }
+            mLocationManager.requestLocationUpdates(PROVIDERS[provider],
+                    mRequest.getInterval(), mRequest.getSmallestDisplacement(), mProviderListeners[provider]);
+            mProviderUsage[provider].onRegistered();
+            mProviderUsage[provider].startActive(mPriority);
+        } else {
+            mLocationManager.removeUpdates(mProviderListeners[provider]);
+            mProviderUsage[provider].stopActive(mPriority);
+        }
+        mActive[provider] = active;
+    }
+
+    /**
+     * Weighs the accuracy of a location by the confidence in its provider: network locations tend
+     * to underestimate their error, while GPS ones are reliable.
+     */
+    private static float getWeightedAccuracy(Location location) {
+        float accuracy = LocationQuality.getAccuracy(location);
+        if (TextUtils.equals(location.getProvider(), LocationManager.GPS_PROVIDER)) {
+            return accuracy;
+        } else if (TextUtils.equals(location.getProvider(), LocationManager.NETWORK_PROVIDER)) {
+            return accuracy * 1.5f;
+        }
+        return accuracy * 2;
+    }
+
+    private static float getAccuracyTarget(int priority) {
+        if (priority == LocationHubRequest.PRIORITY_HIGH_ACCURACY) {
+            return 20;
+        } else if (priority == LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY) {
+            return 100;
+        } else if (priority == LocationHubRequest.PRIORITY_LOW_POWER) {
+            return 1000;
+        }
+        return Float.MAX_VALUE;
+    }
+
+    /**
+     * Returns the most expensive provider allowed by a priority.
+     */
+    private static int getMaxProvider(int priority) {
+        if (priority == LocationHubRequest.PRIORITY_HIGH_ACCURACY
+                || priority == LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY) {
+            return 2;
+        } else if (priority == LocationHubRequest.PRIORITY_LOW_POWER) {
+            return 1;
+        }
+        return PASSIVE;
+    }
+
+    private class ProviderListener implements LocationListener {
+        private final int mProvider;
+
+        public ProviderListener(int provider) {
+            mProvider = provider;
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mProviderUsage[mProvider].onDelivered();
+            onProviderLocation(mProvider, location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+            // don't care (for now)
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            // don't care (for now)
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            if (mProvider == mSteadyProvider) {
+                // The steady provider is gone, fall back on all of the others
+                mSteadyProvider = -1;
+                mSteadyCount = 0;
+                start();
+            }
+        }
+    }
+}
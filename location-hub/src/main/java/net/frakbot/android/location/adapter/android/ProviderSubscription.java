@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.adapter.android;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.usage.UsageCounters;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A single {@link android.location.LocationManager} registration for a provider and an interval,
+ * shared by all of the listeners requesting them.
+ * <p/>
+ * The registration uses the smallest displacement among its listeners, and it is updated in place
+ * when that changes. Each listener still applies its own fastest interval and smallest displacement
+ * through the {@link net.frakbot.android.location.common.DeliveryGate} of its
+ * {@link net.frakbot.android.location.adapter.android.AndroidLocationListenerImpl}.
+ */
+public class ProviderSubscription implements LocationListener {
+    private final LocationManager mLocationManager;
+    private final String mProvider;
+    private final long mInterval;
+    private final CopyOnWriteArrayList<AndroidLocationListenerImpl> mListeners;
+    private final UsageCounters mUsage;
+    private float mMinDistance = -1;
+    private int mActivePriority;
+
+    /**
+     * Creates a new subscription.
+     *
+     * @param locationManager The {@link android.location.LocationManager}.
+     * @param provider        The name of the provider.
+     * @param interval        The update interval, in milliseconds.
+     * @param usage           The {@link net.frakbot.android.location.usage.UsageCounters} of the provider.
+     */
+    public ProviderSubscription(LocationManager locationManager, String provider, long interval, UsageCounters usage) {
+        mLocationManager = locationManager;
+        mProvider = provider;
+        mInterval = interval;
+        mUsage = usage;
+        mListeners = new CopyOnWriteArrayList<AndroidLocationListenerImpl>();
+    }
+
+    /**
+     * Builds the key identifying the subscription for a provider and an interval.
+     */
+    public static String getKey(String provider, long interval) {
+        return provider + "@" + interval;
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
+    public long getInterval() {
+        return mInterval;
+    }
+
+    public int getListenerCount() {
+        return mListeners.size();
+    }
+
+    /**
+     * Attaches a listener, registering on the {@link android.location.LocationManager} if this is
+     * the first listener or if it needs a smaller displacement.
+     *
+     * @param listener The {@link net.frakbot.android.location.adapter.android.AndroidLocationListenerImpl} to attach.
+     */
+    public void addListener(AndroidLocationListenerImpl listener) {
+        mListeners.add(listener);
+        updateRegistration();
+    }
+
+    /**
+     * Detaches a listener, unregistering from the {@link android.location.LocationManager} if it
+     * was the last one.
+     *
+     * @param listener The {@link net.frakbot.android.location.adapter.android.AndroidLocationListenerImpl} to detach.
+     * @return true if the subscription has no listeners left.
+     */
+    public boolean removeListener(AndroidLocationListenerImpl listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty()) {
+            mLocationManager.removeUpdates(this);
+            mMinDistance = -1;
+            setActivePriority(0);
+            return true;
+        }
+        updateRegistration();
+        return false;
+    }
+
+    private void updateRegistration() {
+        float minDistance = Float.MAX_VALUE;
+        int priority = 0;
+        for (AndroidLocationListenerImpl listener : mListeners) {
+            LocationHubRequest request = listener.getRequest();
+            minDistance = Math.min(minDistance, request.getSmallestDisplacement());
+            if (request.getPriority() != 0 && (priority == 0 || request.getPriority() < priority)) {
+                priority = request.getPriority();
+            }
+        }
+        if (minDistance != mMinDistance) {
+            // Registering the same listener again replaces its previous registration
+            mLocationManager.requestLocationUpdates(mProvider, mInterval, minDistance, this);
+            mMinDistance = minDistance;
+            mUsage.onRegistered();
+        }
+        setActivePriority(priority);
+    }
+
+    /**
+     * Moves the active time of the provider to the tightest priority among the listeners.
+     */
+    private void setActivePriority(int priority) {
+        if (priority == mActivePriority) {
+            return;
+        }
+        if (mActivePriority != 0) {
+            mUsage.stopActive(mActivePriority);
+        }
+        if (priority != 0) {
+            mUsage.startActive(priority);
+        }
+        mActivePriority = priority;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        mUsage.onDelivered();
+        for (AndroidLocationListenerImpl listener : mListeners) {
+            listener.onLocationChanged(location);
+        }
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+        for (AndroidLocationListenerImpl listener : mListeners) {
+            listener.onStatusChanged(provider, status, extras);
+        }
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+        for (AndroidLocationListenerImpl listener : mListeners) {
+            listener.onProviderEnabled(provider);
+        }
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+        for (AndroidLocationListenerImpl listener : mListeners) {
+            listener.onProviderDisabled(provider);
+        }
+    }
+}
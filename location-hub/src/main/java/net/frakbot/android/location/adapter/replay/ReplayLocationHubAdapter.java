@@ -0,0 +1,427 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.common.ConnectionCallbacks;
+import net.frakbot.android.location.common.ConnectionResult;
+import net.frakbot.android.location.common.DeliveryGate;
+import net.frakbot.android.location.common.LocationFix;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.OnConnectionFailedListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link net.frakbot.android.location.LocationHubAdapter} implementation replaying a recorded
+ * trace, to drive the whole listener stack in performance and load tests.
+ * <p/>
+ * The trace is streamed by a {@link net.frakbot.android.location.adapter.replay.TraceReader} picked
+ * from the file extension: GPX (.gpx), NMEA 0183 (.nmea, .nmea0183, .log) or CSV (anything else).
+ * It is replayed on a dedicated thread from the connection on by a
+ * {@link net.frakbot.android.location.adapter.replay.TracePlayer}, at the recorded pace scaled by
+ * the speed factor, or as fast as possible with {@link ReplayLocationHubAdapter#SPEED_UNLIMITED}.
+ * The readers and the player are platform-neutral and live in location-hub-core, so the same
+ * traces can be replayed on a plain JVM.
+ * In loop mode, the replay stops anyway after a pass that had no fixes or took no trace time.
+ * <p/>
+ * The replayed locations are stamped with the current time, so the freshness checks and the
+ * delivery latency metrics of the hub work as with live locations. The fastest interval and
+ * smallest displacement of the requests are enforced on the trace timeline, so a request sees the
+ * same locations whatever the replay speed.
+ */
+public class ReplayLocationHubAdapter extends LocationHubAdapter {
+    private static final String TAG = ReplayLocationHubAdapter.class.getSimpleName();
+
+    public static final String REPLAY_PROVIDER = "replay";
+
+    /**
+     * Speed factor replaying the trace as fast as possible.
+     */
+    public static final float SPEED_UNLIMITED = TracePlayer.SPEED_UNLIMITED;
+
+    /**
+     * {@link android.os.Bundle} extra with the path of the trace file, passed to
+     * {@link net.frakbot.android.location.LocationHub#connect(android.os.Bundle)}.
+     */
+    public static final String EXTRA_TRACE_PATH = "net.frakbot.android.location.extra.TRACE_PATH";
+
+    /**
+     * {@link android.os.Bundle} extra with the float speed factor of the replay.
+     */
+    public static final String EXTRA_SPEED = "net.frakbot.android.location.extra.REPLAY_SPEED";
+
+    /**
+     * {@link android.os.Bundle} extra telling whether to start over at the end of the trace.
+     */
+    public static final String EXTRA_LOOP = "net.frakbot.android.location.extra.REPLAY_LOOP";
+
+    private final CopyOnWriteArrayList<Registration> mRegistrations;
+    private final AtomicLong mReplayedCount;
+    private final TracePlayer mPlayer;
+    private List<ConnectionCallbacks> mConnectionCallbacksList;
+    private List<OnConnectionFailedListener> mConnectionFailedListenerList;
+
+    private volatile File mTrace;
+    private volatile boolean isLoop;
+    private volatile Location mLastLocation;
+    private volatile long mTraceTime;
+    private volatile boolean isConnected;
+    private volatile boolean isFinished;
+    private Thread mReplayThread;
+
+    /**
+     * Creates a new replay adapter.
+     *
+     * @param trace The trace {@link java.io.File}, can be null if set through
+     *              {@link ReplayLocationHubAdapter#EXTRA_TRACE_PATH}.
+     * @param speed The speed factor, 1 for real time.
+     */
+    public ReplayLocationHubAdapter(File trace, float speed) {
+        mTrace = trace;
+        mPlayer = new TracePlayer(new TraceListener() {
+            @Override
+            public void onTraceFix(LocationFix fix, long traceTime) {
+                deliver(toLocation(fix), traceTime);
+            }
+        }, speed);
+        mRegistrations = new CopyOnWriteArrayList<Registration>();
+        mReplayedCount = new AtomicLong();
+        mConnectionCallbacksList = new ArrayList<ConnectionCallbacks>();
+        mConnectionFailedListenerList = new ArrayList<OnConnectionFailedListener>();
+    }
+
+    @Override
+    protected void setup(Context context, ConnectionCallbacks callbacks, OnConnectionFailedListener connectionFailedListener, Bundle bundle) {
+        if (callbacks != null) {
+            mConnectionCallbacksList.add(callbacks);
+        }
+        if (connectionFailedListener != null) {
+            mConnectionFailedListenerList.add(connectionFailedListener);
+        }
+        if (bundle != null) {
+            if (bundle.containsKey(EXTRA_TRACE_PATH)) {
+                mTrace = new File(bundle.getString(EXTRA_TRACE_PATH));
+            }
+            if (bundle.containsKey(EXTRA_SPEED)) {
+                setSpeed(bundle.getFloat(EXTRA_SPEED));
+            }
+            if (bundle.containsKey(EXTRA_LOOP)) {
+                isLoop = bundle.getBoolean(EXTRA_LOOP);
+            }
+        }
+    }
+
+    /**
+     * Sets the speed of the replay, taking effect from the next location.
+     *
+     * @param speed The speed factor: 1 for real time, 10 for ten times faster, or
+     *              {@link ReplayLocationHubAdapter#SPEED_UNLIMITED}.
+     * @throws IllegalArgumentException if the speed is less than zero.
+     */
+    public void setSpeed(float speed) throws IllegalArgumentException {
+        mPlayer.setSpeed(speed);
+    }
+
+    public float getSpeed() {
+        return mPlayer.getSpeed();
+    }
+
+    /**
+     * Sets whether the replay starts over at the end of the trace.
+     *
+     * @param loop true to replay the trace in a loop.
+     */
+    public void setLoop(boolean loop) {
+        isLoop = loop;
+    }
+
+    /**
+     * Returns the number of locations replayed since the adapter was created.
+     *
+     * @return the number of replayed locations.
+     */
+    public long getReplayedCount() {
+        return mReplayedCount.get();
+    }
+
+    /**
+     * Checks whether the end of the trace has been reached, which never happens in loop mode.
+     *
+     * @return true if the whole trace was replayed.
+     */
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    @Override
+    public boolean isServiceAvailable(Context context) {
+        File trace = mTrace;
+        return trace != null && trace.canRead();
+    }
+
+    @Override
+    public String getAdapterName() {
+        return ReplayLocationHubAdapterDescriptor.ADAPTER_NAME;
+    }
+
+    @Override
+    public synchronized void connect() {
+        if (isConnected) {
+            return;
+        }
+        final File trace = mTrace;
+        if (trace == null || !trace.canRead()) {
+            notifyConnectionFailed("The trace " + trace + " can't be read.");
+            return;
+        }
+        isConnected = true;
+        isFinished = false;
+        mReplayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay(trace);
+            }
+        }, "LocationHubReplay");
+        mReplayThread.start();
+        for (ConnectionCallbacks callbacks : new ArrayList<ConnectionCallbacks>(mConnectionCallbacksList)) {
+            callbacks.onConnected(null);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        synchronized (this) {
+            if (!isConnected) {
+                return;
+            }
+            isConnected = false;
+            mReplayThread.interrupt();
+            mReplayThread = null;
+        }
+        mRegistrations.clear();
+        for (ConnectionCallbacks callbacks : new ArrayList<ConnectionCallbacks>(mConnectionCallbacksList)) {
+            callbacks.onDisconnected();
+        }
+    }
+
+    @Override
+    public Location getLastLocation() {
+        return mLastLocation;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return false;
+    }
+
+    @Override
+    public void registerConnectionCallbacks(ConnectionCallbacks listener) {
+        if (listener == null) {
+            return;
+        }
+        if (!isConnectionCallbacksRegistered(listener)) {
+            mConnectionCallbacksList.add(listener);
+        }
+        if (isConnected()) {
+            listener.onConnected(null);
+        }
+    }
+
+    @Override
+    public void unregisterConnectionCallbacks(ConnectionCallbacks listener) {
+        mConnectionCallbacksList.remove(listener);
+    }
+
+    @Override
+    public boolean isConnectionCallbacksRegistered(ConnectionCallbacks listener) {
+        return mConnectionCallbacksList.contains(listener);
+    }
+
+    @Override
+    public void registerConnectionFailedListener(OnConnectionFailedListener listener) {
+        if (listener != null && !isConnectionFailedListenerRegistered(listener)) {
+            mConnectionFailedListenerList.add(listener);
+        }
+    }
+
+    @Override
+    public void unregisterConnectionFailedListener(OnConnectionFailedListener listener) {
+        mConnectionFailedListenerList.remove(listener);
+    }
+
+    @Override
+    public boolean isConnectionFailedListenerRegistered(OnConnectionFailedListener listener) {
+        return mConnectionFailedListenerList.contains(listener);
+    }
+
+    /**
+     * A replayed trace is already made of mock locations, so there is no mock mode to switch.
+     */
+    @Override
+    public void setMockMode(boolean isMockMode) throws SecurityException {
+    }
+
+    /**
+     * Delivers a location right away, in between the replayed ones, at the current trace time.
+     */
+    @Override
+    public void setMockLocation(Location mockLocation) throws SecurityException {
+        deliver(new Location(mockLocation), mTraceTime);
+    }
+
+    @Override
+    public void requestLocationUpdates(LocationHubRequest request, LocationHubListener listener) {
+        // Requesting again with the same listener replaces its previous request
+        removeLocationUpdates(listener);
+        mRegistrations.add(new Registration(listener, new DeliveryGate(request)));
+    }
+
+    @Override
+    public void removeLocationUpdates(LocationHubListener listener) {
+        for (Registration registration : mRegistrations) {
+            if (registration.mListener == listener) {
+                mRegistrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Runs on the replay thread until the end of the trace, or until the adapter is disconnected.
+     */
+    private void replay(File trace) {
+        try {
+            // The trace time keeps growing across loops, the delivery gates needing a monotonic clock
+            long baseTime = 0;
+            do {
+                TraceReader reader = openTrace(trace);
+                long endTime;
+                try {
+                    endTime = mPlayer.play(reader, baseTime);
+                } finally {
+                    reader.close();
+                }
+                if (endTime <= baseTime && isLoop) {
+                    // Looping over an empty or instantaneous trace would just spin
+                    Log.w(TAG, "The trace " + trace + " has nothing to replay in a loop, stopping.");
+                    break;
+                }
+                baseTime = endTime;
+            } while (isLoop && isConnected && !Thread.currentThread().isInterrupted());
+            isFinished = isConnected;
+        } catch (InterruptedException e) {
+            // Disconnected
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to replay the trace " + trace, e);
+            isFinished = true;
+        }
+    }
+
+    private static Location toLocation(LocationFix fix) {
+        Location location = new Location(fix.getProvider());
+        location.setTime(fix.getTime());
+        location.setLatitude(fix.getLatitude());
+        location.setLongitude(fix.getLongitude());
+        if (fix.hasAltitude()) {
+            location.setAltitude(fix.getAltitude());
+        }
+        if (fix.hasAccuracy()) {
+            location.setAccuracy(fix.getAccuracy());
+        }
+        if (fix.hasSpeed()) {
+            location.setSpeed(fix.getSpeed());
+        }
+        if (fix.hasBearing()) {
+            location.setBearing(fix.getBearing());
+        }
+        return location;
+    }
+
+    /**
+     * Stamps a location with the current time and delivers it to the registered listeners.
+     *
+     * @param location  The {@link android.location.Location} to deliver.
+     * @param traceTime The time of the location on the trace timeline, in milliseconds.
+     */
+    private void deliver(Location location, long traceTime) {
+        location.setProvider(REPLAY_PROVIDER);
+        location.setTime(System.currentTimeMillis());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        }
+        mLastLocation = location;
+        mTraceTime = traceTime;
+        mReplayedCount.incrementAndGet();
+        for (Registration registration : mRegistrations) {
+            if (registration.mGate.accept(location.getLatitude(), location.getLongitude(), traceTime)) {
+                registration.mListener.onLocationChanged(location);
+            }
+        }
+    }
+
+    private void notifyConnectionFailed(final String message) {
+        ConnectionResult result = new ConnectionResult() {
+            @Override
+            public String toString() {
+                return message;
+            }
+        };
+        for (OnConnectionFailedListener listener : new ArrayList<OnConnectionFailedListener>(mConnectionFailedListenerList)) {
+            listener.onConnectionFailed(result);
+        }
+    }
+
+    /**
+     * Opens a {@link net.frakbot.android.location.adapter.replay.TraceReader} for a trace file,
+     * picking the format from its extension.
+     *
+     * @param trace The trace {@link java.io.File}.
+     * @return The {@link net.frakbot.android.location.adapter.replay.TraceReader}.
+     * @throws IOException if the file can't be opened.
+     */
+    public static TraceReader openTrace(File trace) throws IOException {
+        return TracePlayer.openTrace(trace, REPLAY_PROVIDER);
+    }
+
+    private static class Registration {
+        private final LocationHubListener mListener;
+        private final DeliveryGate mGate;
+
+        public Registration(LocationHubListener listener, DeliveryGate gate) {
+            mListener = listener;
+            mGate = gate;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.adapter.replay;
+
+import android.content.Context;
+
+import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.LocationHubAdapterDescriptor;
+
+import java.io.File;
+
+/**
+ * Descriptor for the {@link net.frakbot.android.location.adapter.replay.ReplayLocationHubAdapter}.
+ * Add it first to the descriptors of the {@link net.frakbot.android.location.LocationHubAdapterResolver}
+ * to replace the live locations with a trace:
+ * <pre>
+ * resolver.getDescriptorList().add(0, new ReplayLocationHubAdapterDescriptor(trace, 10));
+ * </pre>
+ */
+public class ReplayLocationHubAdapterDescriptor extends LocationHubAdapterDescriptor {
+    public static final String ADAPTER_NAME = "Replay Location Hub Adapter";
+
+    private final File mTrace;
+    private final float mSpeed;
+
+    /**
+     * Creates a new descriptor.
+     *
+     * @param trace The trace {@link java.io.File}.
+     * @param speed The speed factor, 1 for real time or
+     *              {@link net.frakbot.android.location.adapter.replay.ReplayLocationHubAdapter#SPEED_UNLIMITED}.
+     */
+    public ReplayLocationHubAdapterDescriptor(File trace, float speed) {
+        mTrace = trace;
+        mSpeed = speed;
+    }
+
+    @Override
+    public String getAdapterName() {
+        return ADAPTER_NAME;
+    }
+
+    /**
+     * The replay is available as long as the trace can be read.
+     */
+    @Override
+    public boolean isServiceAvailable(Context context) {
+        return mTrace != null && mTrace.canRead();
+    }
+
+    @Override
+    protected LocationHubAdapter createAdapter() {
+        return new ReplayLocationHubAdapter(mTrace, mSpeed);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.async;
+
+/**
+ * Receives the outcome of an asynchronous {@link net.frakbot.android.location.LocationHub} call.
+ *
+ * @param <T> The type of the result.
+ */
+public interface AsyncCallback<T> {
+    /**
+     * Called when the call completes successfully.
+     *
+     * @param result The result of the call, null for the calls that don't have any.
+     */
+    public abstract void onSuccess(T result);
+
+    /**
+     * Called when the call fails.
+     *
+     * @param error The {@link java.lang.Throwable} thrown by the call, or a
+     *              {@link net.frakbot.android.location.async.ConnectionFailedException} for connections.
+     */
+    public abstract void onFailure(Throwable error);
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.async;
+
+import android.os.Handler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The {@link java.util.concurrent.Future} of an asynchronous call, that also delivers its outcome
+ * to an optional {@link net.frakbot.android.location.async.AsyncCallback} on the thread of a
+ * {@link android.os.Handler}.
+ * <p/>
+ * It either runs a {@link java.util.concurrent.Callable}, or it is completed from the outside for
+ * the calls whose outcome arrives through other callbacks. The callback is not called if the
+ * call is cancelled.
+ *
+ * @param <T> The type of the result.
+ */
+public class AsyncResult<T> extends FutureTask<T> {
+    private final AsyncCallback<T> mCallback;
+    private final Handler mCallbackHandler;
+
+    /**
+     * Creates a result computed by a {@link java.util.concurrent.Callable}, once this is run.
+     *
+     * @param callable        The {@link java.util.concurrent.Callable} computing the result.
+     * @param callback        The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @param callbackHandler The {@link android.os.Handler} the callback is called on.
+     */
+    public AsyncResult(Callable<T> callable, AsyncCallback<T> callback, Handler callbackHandler) {
+        super(callable);
+        mCallback = callback;
+        mCallbackHandler = callbackHandler;
+    }
+
+    /**
+     * Creates a result completed from the outside, through {@link AsyncResult#complete(Object)} and
+     * {@link AsyncResult#fail(Throwable)}.
+     *
+     * @param callback        The {@link net.frakbot.android.location.async.AsyncCallback}, can be null.
+     * @param callbackHandler The {@link android.os.Handler} the callback is called on.
+     */
+    public AsyncResult(AsyncCallback<T> callback, Handler callbackHandler) {
+        this(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                throw new IllegalStateException("This result is completed from the outside.");
+            }
+        }, callback, callbackHandler);
+    }
+
+    /**
+     * Completes the call successfully. Does nothing if it is already complete.
+     *
+     * @param result The result.
+     */
+    public void complete(T result) {
+        set(result);
+    }
+
+    /**
+     * Completes the call with a failure. Does nothing if it is already complete.
+     *
+     * @param error The {@link java.lang.Throwable} the call failed with.
+     */
+    public void fail(Throwable error) {
+        setException(error);
+    }
+
+    @Override
+    protected void done() {
+        if (mCallback == null || isCancelled()) {
+            return;
+        }
+        mCallbackHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                T result;
+                try {
+                    result = get();
+                } catch (ExecutionException e) {
+                    mCallback.onFailure(e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    return;
+                } catch (InterruptedException e) {
+                    // Can't happen, the call is done
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                mCallback.onSuccess(result);
+            }
+        });
+    }
+}
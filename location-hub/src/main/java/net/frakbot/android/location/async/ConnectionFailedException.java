@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.async;
+
+import net.frakbot.android.location.common.ConnectionResult;
+
+/**
+ * Thrown, or passed to {@link net.frakbot.android.location.async.AsyncCallback#onFailure(Throwable)},
+ * when an asynchronous connection fails.
+ */
+public class ConnectionFailedException extends Exception {
+    private final ConnectionResult mConnectionResult;
+
+    public ConnectionFailedException(ConnectionResult connectionResult) {
+        super("Unable to connect to any location hub adapter: " + connectionResult);
+        mConnectionResult = connectionResult;
+    }
+
+    public ConnectionResult getConnectionResult() {
+        return mConnectionResult;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.async;
+
+import android.os.Bundle;
+
+import net.frakbot.android.location.ILocationHub;
+import net.frakbot.android.location.common.ConnectionCallbacks;
+import net.frakbot.android.location.common.ConnectionResult;
+import net.frakbot.android.location.common.OnConnectionFailedListener;
+
+/**
+ * Completes the {@link net.frakbot.android.location.async.AsyncResult} of an asynchronous connection
+ * on the first connection event of an {@link net.frakbot.android.location.ILocationHub}, then
+ * unregisters itself.
+ */
+public class ConnectionResultListener implements ConnectionCallbacks, OnConnectionFailedListener {
+    private final ILocationHub mHub;
+    private final AsyncResult<Bundle> mResult;
+
+    public ConnectionResultListener(ILocationHub hub, AsyncResult<Bundle> result) {
+        mHub = hub;
+        mResult = result;
+    }
+
+    /**
+     * Registers the listener with the hub, completing the result right away if the hub is already connected.
+     */
+    public void register() {
+        mHub.registerConnectionFailedListener(this);
+        mHub.registerConnectionCallbacks(this);
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        unregister();
+        mResult.complete(connectionHint);
+    }
+
+    @Override
+    public void onDisconnected() {
+        // Only the outcome of the connection matters
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult result) {
+        unregister();
+        mResult.fail(new ConnectionFailedException(result));
+    }
+
+    private void unregister() {
+        mHub.unregisterConnectionCallbacks(this);
+        mHub.unregisterConnectionFailedListener(this);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.async;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The single background thread the blocking calls of the hub and of its adapters run on, so that
+ * they never run on the main thread.
+ * <p/>
+ * The thread is a {@link android.os.HandlerThread}, started on first use with a background priority,
+ * and shared by the whole process: the calls it runs are short binder calls, so they are simply
+ * run one after another.
+ */
+public class LocationHubWorker implements Executor {
+    private static LocationHubWorker sInstance;
+
+    private final Handler mHandler;
+
+    private LocationHubWorker() {
+        HandlerThread thread = new HandlerThread("LocationHubWorker", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Returns the worker, starting its thread the first time.
+     *
+     * @return The {@link net.frakbot.android.location.async.LocationHubWorker}.
+     */
+    public static synchronized LocationHubWorker getInstance() {
+        if (sInstance == null) {
+            sInstance = new LocationHubWorker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Checks whether the calling thread is the worker thread.
+     *
+     * @return true if called on the worker thread.
+     */
+    public boolean isWorkerThread() {
+        return mHandler.getLooper().getThread() == Thread.currentThread();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        mHandler.post(command);
+    }
+}
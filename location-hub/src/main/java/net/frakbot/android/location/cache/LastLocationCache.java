@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.cache;
+
+import android.location.Location;
+
+import net.frakbot.android.location.common.LocationQuality;
+
+/**
+ * In-memory cache of the best and of the newest location seen so far, across all of the providers.
+ * <p/>
+ * Every offered {@link android.location.Location} is compared to the best one by age and
+ * accuracy with {@link net.frakbot.android.location.common.LocationQuality#isBetterLocation(android.location.Location, android.location.Location)},
+ * so both offering and reading are O(1). The best location can be up to a couple of minutes older
+ * than the newest one, so the newest location is kept as well, for the callers with tight age thresholds.
+ */
+public class LastLocationCache {
+    private Location mBestLocation;
+    private Location mNewestLocation;
+
+    /**
+     * Offers a new {@link android.location.Location} to the cache, which keeps it if it is better
+     * than the best cached one, or newer than the newest one.
+     *
+     * @param location The new {@link android.location.Location}, can be null.
+     * @return true if the location replaced the best cached one.
+     */
+    public synchronized boolean offer(Location location) {
+        if (location == null) {
+            return false;
+        }
+        if (mNewestLocation == null || location.getTime() >= mNewestLocation.getTime()) {
+            mNewestLocation = location;
+        }
+        if (LocationQuality.isBetterLocation(location, mBestLocation)) {
+            mBestLocation = location;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the best cached {@link android.location.Location}, whatever its age and accuracy.
+     *
+     * @return The cached {@link android.location.Location}, or null if none was offered yet.
+     */
+    public synchronized Location get() {
+        return mBestLocation;
+    }
+
+    /**
+     * Returns the newest cached {@link android.location.Location}, whatever its accuracy.
+     *
+     * @return The newest cached {@link android.location.Location}, or null if none was offered yet.
+     */
+    public synchronized Location getNewest() {
+        return mNewestLocation;
+    }
+
+    /**
+     * Returns the best cached {@link android.location.Location} if it satisfies the given thresholds,
+     * or else the newest one if it does.
+     *
+     * @param maxAge      The maximum age, in milliseconds.
+     * @param minAccuracy The largest acceptable accuracy radius, in meters.
+     * @return The cached {@link android.location.Location}, or null if neither satisfies the thresholds.
+     */
+    public synchronized Location get(long maxAge, float minAccuracy) {
+        long now = System.currentTimeMillis();
+        if (LocationQuality.isSatisfying(mBestLocation, now, maxAge, minAccuracy)) {
+            return mBestLocation;
+        }
+        if (LocationQuality.isSatisfying(mNewestLocation, now, maxAge, minAccuracy)) {
+            return mNewestLocation;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the cached locations.
+     */
+    public synchronized void clear() {
+        mBestLocation = null;
+        mNewestLocation = null;
+    }
+}
@@ -18,9 +18,26 @@ package net.frakbot.android.location.common;
 
 import android.location.Location;
 
+import java.util.List;
+
 /**
  * Created by fpontillo on 17/02/14.
  */
 public abstract class LocationHubListener {
     public abstract void onLocationChanged(Location location);
+
+    /**
+     * Called with a batch of locations when the listener was registered with a batching
+     * {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * <p/>
+     * The default implementation calls {@link LocationHubListener#onLocationChanged(android.location.Location)}
+     * for every location in the batch; override it to handle the whole batch at once.
+     *
+     * @param locations The {@link android.location.Location}s in the batch, oldest first.
+     */
+    public void onLocationsBatch(List<Location> locations) {
+        for (Location location : locations) {
+            onLocationChanged(location);
+        }
+    }
 }
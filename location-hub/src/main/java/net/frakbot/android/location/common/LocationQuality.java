@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.common;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for comparing {@link android.location.Location}s by age and accuracy.
+ */
+public final class LocationQuality {
+
+    /**
+     * A location this much newer than another one is always considered better, whatever its accuracy.
+     */
+    public static final long SIGNIFICANTLY_NEWER_MILLIS = 2 * 60 * 1000;
+
+    /**
+     * A location whose accuracy is worse than another one by more than this is considered significantly less accurate.
+     */
+    public static final float SIGNIFICANTLY_LESS_ACCURATE_METERS = 200;
+
+    private LocationQuality() {
+    }
+
+    /**
+     * Returns the age of a {@link android.location.Location}, from its UTC time.
+     *
+     * @param location The {@link android.location.Location}.
+     * @param now      The current UTC time, in milliseconds since January 1, 1970.
+     * @return the age in milliseconds.
+     */
+    public static long getAge(Location location, long now) {
+        return now - location.getTime();
+    }
+
+    /**
+     * Returns how long ago a {@link android.location.Location} was fixed.
+     * <p/>
+     * Uses the elapsed realtime of the fix where the platform provides it, which is immune to wall
+     * clock changes, and falls back to its UTC time otherwise.
+     *
+     * @param location The {@link android.location.Location}.
+     * @return the age in nanoseconds.
+     */
+    public static long getElapsedAgeNanos(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && location.getElapsedRealtimeNanos() > 0) {
+            return SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos();
+        }
+        return TimeUnit.MILLISECONDS.toNanos(getAge(location, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the accuracy of a {@link android.location.Location}, or {@link java.lang.Float#MAX_VALUE}
+     * if it has none.
+     *
+     * @param location The {@link android.location.Location}.
+     * @return the accuracy in meters.
+     */
+    public static float getAccuracy(Location location) {
+        return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether a {@link android.location.Location} is at most as old as, and at least as
+     * accurate as the given thresholds.
+     *
+     * @param location    The {@link android.location.Location}.
+     * @param now         The current UTC time, in milliseconds since January 1, 1970.
+     * @param maxAge      The maximum age, in milliseconds.
+     * @param minAccuracy The largest acceptable accuracy radius, in meters.
+     * @return true if the location satisfies both thresholds.
+     */
+    public static boolean isSatisfying(Location location, long now, long maxAge, float minAccuracy) {
+        return location != null && getAge(location, now) <= maxAge && getAccuracy(location) <= minAccuracy;
+    }
+
+    /**
+     * Determines whether a {@link android.location.Location} is better than the current best one.
+     * <p/>
+     * A significantly newer location always wins, and a significantly older one always loses.
+     * Otherwise the more accurate location wins, and a newer location also wins if it is as accurate,
+     * or if it comes from the same provider and is not significantly less accurate.
+     *
+     * @param location     The new {@link android.location.Location}.
+     * @param bestLocation The current best {@link android.location.Location}, can be null.
+     * @return true if the new location is better.
+     */
+    public static boolean isBetterLocation(Location location, Location bestLocation) {
+        if (location == null) {
+            return false;
+        }
+        if (bestLocation == null) {
+            return true;
+        }
+
+        long timeDelta = location.getTime() - bestLocation.getTime();
+        if (timeDelta > SIGNIFICANTLY_NEWER_MILLIS) {
+            return true;
+        } else if (timeDelta < -SIGNIFICANTLY_NEWER_MILLIS) {
+            return false;
+        }
+        boolean isNewer = timeDelta > 0;
+
+        float accuracyDelta = getAccuracy(location) - getAccuracy(bestLocation);
+        if (accuracyDelta < 0) {
+            return true;
+        } else if (isNewer && accuracyDelta == 0) {
+            return true;
+        }
+        boolean isSameProvider = TextUtils.equals(location.getProvider(), bestLocation.getProvider());
+        return isNewer && isSameProvider && accuracyDelta <= SIGNIFICANTLY_LESS_ACCURATE_METERS;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.common;
+
+/**
+ * Provides a callback for the {@link net.frakbot.android.location.common.LocationHubListener}s
+ * whose callbacks take longer than the budget of the
+ * {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog}.
+ */
+public interface OnSlowCallbackListener {
+    /**
+     * Called on the thread that ran the slow callback, right after it returned. Keep it short.
+     *
+     * @param listener   The slow {@link net.frakbot.android.location.common.LocationHubListener}.
+     * @param duration   How long the callback took, in nanoseconds.
+     * @param isIsolated true if the listener is now called on the isolation executor.
+     */
+    public abstract void onSlowCallback(LocationHubListener listener, long duration, boolean isIsolated);
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.current;
+
+import android.location.Location;
+
+/**
+ * Receives the result of a single-shot
+ * {@link net.frakbot.android.location.ILocationHub#getCurrentLocation(float, long, CurrentLocationCallback)} call.
+ */
+public abstract class CurrentLocationCallback {
+
+    /**
+     * Called once, when the operation completes: as soon as a location reaches the target
+     * accuracy, or when the deadline expires. The underlying subscription has already been removed.
+     *
+     * @param location The best {@link android.location.Location} obtained, which doesn't reach the
+     *                 target accuracy if the deadline expired, or null if no location was obtained at all.
+     */
+    public abstract void onCurrentLocation(Location location);
+
+    /**
+     * Called every time a location better than the previous ones arrives, but it doesn't reach the
+     * target accuracy yet. The default implementation does nothing; override it to show a
+     * progressively refined position while waiting.
+     *
+     * @param location The provisional {@link android.location.Location}.
+     */
+    public void onProvisionalLocation(Location location) {
+    }
+}
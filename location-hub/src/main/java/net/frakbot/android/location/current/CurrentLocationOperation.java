@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.current;
+
+import android.location.Location;
+import android.os.Handler;
+
+import net.frakbot.android.location.ILocationHub;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.LocationQuality;
+
+/**
+ * A single-shot location operation, that subscribes to the updates of an
+ * {@link net.frakbot.android.location.ILocationHub} only until a location reaches a target accuracy
+ * or a deadline expires, whichever comes first.
+ * <p/>
+ * The subscription is always removed when the operation completes or is cancelled, so it can't be
+ * leaked. Its priority is picked from the target accuracy, so a coarse target never turns the GPS on.
+ */
+public class CurrentLocationOperation extends LocationHubListener implements Runnable {
+    /**
+     * Maximum age of a cached location that completes the operation right away.
+     */
+    public static final long DEFAULT_MAX_AGE = 30 * 1000;
+
+    private static final long UPDATE_INTERVAL = 1000;
+    private static final float HIGH_ACCURACY_TARGET = 100;
+    private static final float BALANCED_ACCURACY_TARGET = 1000;
+
+    private final ILocationHub mLocationHub;
+    private final float mAccuracy;
+    private final long mDeadline;
+    private final CurrentLocationCallback mCallback;
+    private final Handler mHandler;
+
+    private Location mBestLocation;
+    private boolean isStarted;
+    private boolean isDone;
+
+    /**
+     * Creates a new operation. It does nothing until it is started.
+     *
+     * @param locationHub The {@link net.frakbot.android.location.ILocationHub} to subscribe to.
+     * @param accuracy    The target accuracy, in meters.
+     * @param deadline    The longest time to wait for the target accuracy, in milliseconds.
+     * @param callback    The {@link net.frakbot.android.location.current.CurrentLocationCallback} receiving the result.
+     * @param handler     The {@link android.os.Handler} the deadline expires on.
+     * @throws IllegalArgumentException if the accuracy or the deadline are not positive, or the callback is null.
+     */
+    public CurrentLocationOperation(ILocationHub locationHub, float accuracy, long deadline,
+                                    CurrentLocationCallback callback, Handler handler) throws IllegalArgumentException {
+        if (accuracy <= 0) {
+            throw new IllegalArgumentException("Target accuracy must be greater than 0.");
+        }
+        if (deadline <= 0) {
+            throw new IllegalArgumentException("Deadline must be greater than 0.");
+        }
+        if (callback == null) {
+            throw new IllegalArgumentException("The callback must be non-null.");
+        }
+        mLocationHub = locationHub;
+        mAccuracy = accuracy;
+        mDeadline = deadline;
+        mCallback = callback;
+        mHandler = handler;
+    }
+
+    /**
+     * Starts the operation. If the cached location is recent and accurate enough, the operation
+     * completes right away without subscribing; otherwise the cached location, if any, is
+     * delivered as the first provisional location. A cached location older than
+     * {@link CurrentLocationOperation#DEFAULT_MAX_AGE} is never the result of the operation.
+     *
+     * @param cachedLocation The last known {@link android.location.Location}, can be null.
+     * @throws IllegalStateException if the operation was already started.
+     */
+    public void start(Location cachedLocation) throws IllegalStateException {
+        synchronized (this) {
+            if (isStarted) {
+                throw new IllegalStateException("The operation has already been started.");
+            }
+            isStarted = true;
+        }
+        long now = System.currentTimeMillis();
+        if (cachedLocation != null && LocationQuality.isSatisfying(cachedLocation, now, DEFAULT_MAX_AGE, mAccuracy)) {
+            synchronized (this) {
+                mBestLocation = cachedLocation;
+                isDone = true;
+            }
+            // Nothing to tear down, the operation never subscribed
+            mCallback.onCurrentLocation(cachedLocation);
+            return;
+        }
+        mHandler.postDelayed(this, mDeadline);
+        mLocationHub.requestLocationUpdates(buildRequest(), this);
+        if (cachedLocation == null) {
+            return;
+        }
+        if (LocationQuality.getAge(cachedLocation, now) <= DEFAULT_MAX_AGE) {
+            onLocationChanged(cachedLocation);
+        } else {
+            // A stale location is only a hint: it must never complete the operation as the result
+            mCallback.onProvisionalLocation(cachedLocation);
+        }
+    }
+
+    /**
+     * Cancels the operation and removes its subscription, without calling the callback.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            isDone = true;
+        }
+        tearDown();
+    }
+
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        boolean isOnTarget;
+        synchronized (this) {
+            if (isDone || !LocationQuality.isBetterLocation(location, mBestLocation)) {
+                return;
+            }
+            mBestLocation = location;
+            isOnTarget = LocationQuality.getAccuracy(location) <= mAccuracy;
+        }
+        if (isOnTarget) {
+            complete();
+        } else {
+            mCallback.onProvisionalLocation(location);
+        }
+    }
+
+    /**
+     * Called when the deadline expires.
+     */
+    @Override
+    public void run() {
+        complete();
+    }
+
+    private void complete() {
+        Location location;
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            isDone = true;
+            location = mBestLocation;
+        }
+        tearDown();
+        mCallback.onCurrentLocation(location);
+    }
+
+    private void tearDown() {
+        mHandler.removeCallbacks(this);
+        mLocationHub.removeLocationUpdates(this);
+    }
+
+    private LocationHubRequest buildRequest() {
+        int priority;
+        if (mAccuracy < HIGH_ACCURACY_TARGET) {
+            priority = LocationHubRequest.PRIORITY_HIGH_ACCURACY;
+        } else if (mAccuracy < BALANCED_ACCURACY_TARGET) {
+            priority = LocationHubRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+        } else {
+            priority = LocationHubRequest.PRIORITY_LOW_POWER;
+        }
+        return new LocationHubRequest()
+                .setPriority(priority)
+                .setInterval(UPDATE_INTERVAL)
+                .setFastestInterval(0);
+    }
+}
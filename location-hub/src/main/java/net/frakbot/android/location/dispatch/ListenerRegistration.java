@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.common.LocationQuality;
+import net.frakbot.android.location.usage.UsageCounters;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds a single {@link net.frakbot.android.location.common.LocationHubListener} registered on the
+ * {@link net.frakbot.android.location.dispatch.LocationDispatcher}, together with the
+ * {@link net.frakbot.android.location.common.LocationHubRequest} it was registered with.
+ * <p/>
+ * The gating, batching, mailboxes and metrics are those of the platform-neutral
+ * {@link net.frakbot.android.location.dispatch.FixRegistration}; this binds them to
+ * {@link android.location.Location}s, accounts the usage of the listener, and has the callback
+ * durations checked by the {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog},
+ * which can isolate a slow listener by giving it a mailbox. Batches that time out are delivered on
+ * the dispatching thread when it has a {@link android.os.Looper}.
+ */
+public class ListenerRegistration extends FixRegistration<Location> {
+    private final LocationHubListener mListener;
+    private final UsageCounters mUsage;
+    private final SlowListenerWatchdog mWatchdog;
+    private Handler mBatchHandler;
+
+    public ListenerRegistration(LocationHubRequest request, LocationHubListener listener) {
+        this(request, listener, null);
+    }
+
+    public ListenerRegistration(LocationHubRequest request, LocationHubListener listener, Executor executor) {
+        this(request, listener, executor, null, null);
+    }
+
+    /**
+     * Creates a registration replacing a previous one of the same listener. The usage counters and
+     * the metrics of the previous registration are carried over, so that they survive the listener
+     * being registered again with a new request.
+     *
+     * An isolated listener stays isolated, unless it now asks for its own executor.
+     *
+     * @param previous The replaced {@link net.frakbot.android.location.dispatch.ListenerRegistration}, can be null.
+     * @param watchdog The {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog}, can be null.
+     */
+    public ListenerRegistration(LocationHubRequest request, LocationHubListener listener, Executor executor,
+                                ListenerRegistration previous, SlowListenerWatchdog watchdog) {
+        super(request, executor, previous);
+        mListener = listener;
+        mWatchdog = watchdog;
+        mUsage = previous != null ? previous.mUsage : new UsageCounters();
+        mUsage.startActive(request.getPriority());
+    }
+
+    public LocationHubListener getListener() {
+        return mListener;
+    }
+
+    public UsageCounters getUsage() {
+        return mUsage;
+    }
+
+    @Override
+    public void close() {
+        mUsage.stopActive(getRequest().getPriority());
+        super.close();
+    }
+
+    @Override
+    protected double getLatitude(Location location) {
+        return location.getLatitude();
+    }
+
+    @Override
+    protected double getLongitude(Location location) {
+        return location.getLongitude();
+    }
+
+    @Override
+    protected long getElapsedAgeNanos(Location location) {
+        return LocationQuality.getElapsedAgeNanos(location);
+    }
+
+    @Override
+    protected void onFix(Location location) {
+        mListener.onLocationChanged(location);
+    }
+
+    @Override
+    protected void onFixBatch(List<Location> locations) {
+        mListener.onLocationsBatch(locations);
+    }
+
+    @Override
+    protected boolean isExecutorThread(Executor executor) {
+        // A listener registered with a Looper is drained on it, even while it is delivering
+        return executor instanceof HandlerExecutor
+                && ((HandlerExecutor) executor).getLooper() == Looper.myLooper();
+    }
+
+    @Override
+    protected void scheduleBatchTimeout(Runnable task, long delayMillis) {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            super.scheduleBatchTimeout(task, delayMillis);
+            return;
+        }
+        Handler handler;
+        synchronized (this) {
+            if (mBatchHandler == null || mBatchHandler.getLooper() != looper) {
+                mBatchHandler = new Handler(looper);
+            }
+            handler = mBatchHandler;
+        }
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    protected void onAccepted() {
+        mUsage.onDelivered();
+    }
+
+    @Override
+    protected void onCallbackReturned(long duration) {
+        super.onCallbackReturned(duration);
+        if (mWatchdog != null) {
+            mWatchdog.onCallback(this, duration);
+        }
+    }
+}
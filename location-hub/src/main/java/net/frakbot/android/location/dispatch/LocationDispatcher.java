@@ -0,0 +1,618 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.cache.LastLocationCache;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+import net.frakbot.android.location.filter.KalmanLocationFilter;
+import net.frakbot.android.location.history.LocationHistory;
+import net.frakbot.android.location.metrics.ListenerMetrics;
+import net.frakbot.android.location.processor.LocationProcessor;
+import net.frakbot.android.location.scheduler.MotionScheduler;
+import net.frakbot.android.location.usage.UsageCounters;
+import net.frakbot.android.location.usage.UsageSnapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multiplexes all of the {@link net.frakbot.android.location.common.LocationHubRequest}s made on a
+ * {@link net.frakbot.android.location.LocationHub} into a single subscription on its
+ * {@link net.frakbot.android.location.LocationHubAdapter}.
+ * <p/>
+ * The subscription uses the tightest priority, the shortest interval, the shortest fastest interval
+ * and the smallest displacement among the active requests, and it is only re-issued to the adapter when
+ * adding or removing a listener actually changes it, as computed by the platform-neutral
+ * {@link net.frakbot.android.location.dispatch.RequestCoalescer}. Each received {@link android.location.Location}
+ * is then fanned out to the listeners through their {@link net.frakbot.android.location.dispatch.ListenerRegistration}.
+ * <p/>
+ * The dispatcher is also the registry of the active requests, so the whole subscription can be moved
+ * to another adapter at once with {@link LocationDispatcher#setAdapter(net.frakbot.android.location.LocationHubAdapter)}.
+ * <p/>
+ * Each received location first goes through the {@link net.frakbot.android.location.processor.LocationProcessor}
+ * pipeline, which is skipped altogether when no processor is registered.
+ * While adaptive requests are registered, the subscription also follows the motion state estimated
+ * by the {@link net.frakbot.android.location.scheduler.MotionScheduler}.
+ * Locations are only run through the {@link net.frakbot.android.location.filter.KalmanLocationFilter}
+ * while at least one listener asked for smoothed locations.
+ */
+public class LocationDispatcher {
+    private static final String TAG = LocationDispatcher.class.getSimpleName();
+    private static final ListenerRegistration[] NO_REGISTRATIONS = new ListenerRegistration[0];
+    private static final LocationProcessor[] NO_PROCESSORS = new LocationProcessor[0];
+
+    private LocationHubAdapter mAdapter;
+    private final LocationHubListener mUpstreamListener;
+
+    private final HashMap<LocationHubListener, ListenerRegistration> mRegistrationMap;
+    private final HashMap<LocationHubAdapter, UsageCounters> mAdapterUsage;
+    private volatile UsageCounters mCurrentAdapterUsage;
+    private volatile ListenerRegistration[] mRegistrations = NO_REGISTRATIONS;
+    private volatile LocationProcessor[] mProcessors = NO_PROCESSORS;
+
+    private final RequestCoalescer mCoalescer;
+    private volatile int mSmoothedCount;
+    private volatile int mAdaptiveCount;
+    private final AtomicLong mSuppressedCount;
+
+    private LocationHubRequest mSubscription;
+    private volatile long mLastActivityTime;
+    private volatile long mLastLocationTime;
+    private volatile LocationHistory mHistory;
+    private final LastLocationCache mLastLocationCache;
+    private final KalmanLocationFilter mFilter;
+    private final MotionScheduler mMotionScheduler;
+    private final SlowListenerWatchdog mWatchdog;
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param adapter The {@link net.frakbot.android.location.LocationHubAdapter} to subscribe on,
+     *                or null to hold the subscription until one is set.
+     */
+    public LocationDispatcher(LocationHubAdapter adapter) {
+        mAdapter = adapter;
+        mRegistrationMap = new HashMap<LocationHubListener, ListenerRegistration>();
+        mAdapterUsage = new HashMap<LocationHubAdapter, UsageCounters>();
+        mCurrentAdapterUsage = adapter != null ? getAdapterUsage(adapter) : null;
+        mCoalescer = new RequestCoalescer();
+        mLastLocationCache = new LastLocationCache();
+        mFilter = new KalmanLocationFilter();
+        mMotionScheduler = new MotionScheduler();
+        mWatchdog = new SlowListenerWatchdog();
+        mSuppressedCount = new AtomicLong();
+        mUpstreamListener = new LocationHubListener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                dispatch(location);
+            }
+        };
+    }
+
+    /**
+     * Registers a listener, or replaces the request of an already registered one.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} of the listener.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} to register.
+     */
+    public void addListener(LocationHubRequest request, LocationHubListener listener) {
+        addListener(request, listener, null);
+    }
+
+    /**
+     * Registers a listener whose updates are delivered on the given {@link java.util.concurrent.Executor},
+     * or replaces the request of an already registered one.
+     * <p/>
+     * The request is copied, so changing it afterwards has no effect until it is registered again.
+     *
+     * @param request  The {@link net.frakbot.android.location.common.LocationHubRequest} of the listener.
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} to register.
+     * @param executor The {@link java.util.concurrent.Executor} the listener is called on, or null to
+     *                 call it directly on the dispatching thread.
+     */
+    public synchronized void addListener(LocationHubRequest request, LocationHubListener listener, Executor executor) {
+        if (request == null || listener == null) {
+            throw new IllegalArgumentException("Both the request and the listener must be non-null.");
+        }
+        // The registration and the coalescer must see the request as it was when it was added
+        request = new LocationHubRequest(request);
+        ListenerRegistration previous = mRegistrationMap.remove(listener);
+        if (previous != null) {
+            previous.close();
+            removeRequest(previous.getRequest());
+        }
+        mRegistrationMap.put(listener, new ListenerRegistration(request, listener, executor, previous, mWatchdog));
+        addRequest(request);
+        onRegistrationsChanged();
+    }
+
+    /**
+     * Unregisters a listener. If the listener is not registered, this method has no effect.
+     *
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} to unregister.
+     */
+    public synchronized void removeListener(LocationHubListener listener) {
+        ListenerRegistration registration = mRegistrationMap.remove(listener);
+        if (registration == null) {
+            return;
+        }
+        registration.close();
+        removeRequest(registration.getRequest());
+        onRegistrationsChanged();
+    }
+
+    /**
+     * Unregisters all of the listeners and drops the subscription on the adapter.
+     */
+    public synchronized void removeAllListeners() {
+        for (ListenerRegistration registration : mRegistrationMap.values()) {
+            registration.close();
+        }
+        mRegistrationMap.clear();
+        mCoalescer.clear();
+        mSmoothedCount = 0;
+        mFilter.reset();
+        mAdaptiveCount = 0;
+        mMotionScheduler.reset();
+        onRegistrationsChanged();
+    }
+
+    /**
+     * Appends a {@link net.frakbot.android.location.processor.LocationProcessor} to the pipeline.
+     *
+     * @param processor The {@link net.frakbot.android.location.processor.LocationProcessor} to append.
+     */
+    public synchronized void addProcessor(LocationProcessor processor) {
+        if (processor == null) {
+            throw new IllegalArgumentException("The processor must be non-null.");
+        }
+        LocationProcessor[] processors = new LocationProcessor[mProcessors.length + 1];
+        System.arraycopy(mProcessors, 0, processors, 0, mProcessors.length);
+        processors[mProcessors.length] = processor;
+        mProcessors = processors;
+    }
+
+    /**
+     * Removes a {@link net.frakbot.android.location.processor.LocationProcessor} from the pipeline.
+     * If the processor is not in the pipeline, this method has no effect.
+     *
+     * @param processor The {@link net.frakbot.android.location.processor.LocationProcessor} to remove.
+     */
+    public synchronized void removeProcessor(LocationProcessor processor) {
+        LocationProcessor[] current = mProcessors;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == processor) {
+                LocationProcessor[] processors = new LocationProcessor[current.length - 1];
+                System.arraycopy(current, 0, processors, 0, i);
+                System.arraycopy(current, i + 1, processors, i, current.length - i - 1);
+                mProcessors = processors;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delivers the pending batch of a listener right away.
+     *
+     * @param listener The {@link net.frakbot.android.location.common.LocationHubListener} to flush.
+     */
+    public void flush(LocationHubListener listener) {
+        ListenerRegistration registration;
+        synchronized (this) {
+            registration = mRegistrationMap.get(listener);
+        }
+        if (registration != null) {
+            registration.flush();
+        }
+    }
+
+    /**
+     * Delivers the pending batches of all of the listeners right away.
+     */
+    public void flushAll() {
+        for (ListenerRegistration registration : mRegistrations) {
+            registration.flush();
+        }
+    }
+
+    /**
+     * Returns the coalesced request currently subscribed on the adapter.
+     *
+     * @return The subscribed {@link net.frakbot.android.location.common.LocationHubRequest}, or null
+     * if there are no listeners or the adapter refused the subscription.
+     */
+    public synchronized LocationHubRequest getSubscription() {
+        return mSubscription;
+    }
+
+    /**
+     * Moves the subscription to another {@link net.frakbot.android.location.LocationHubAdapter}.
+     * <p/>
+     * The subscription is dropped from the current adapter, if any, and the coalesced request of all
+     * of the registered listeners is replayed on the new one. The listeners are not affected.
+     *
+     * @param adapter The new {@link net.frakbot.android.location.LocationHubAdapter}, or null to
+     *                hold the subscription until an adapter is set again.
+     */
+    public synchronized void setAdapter(LocationHubAdapter adapter) {
+        unsubscribe();
+        mAdapter = adapter;
+        mCurrentAdapterUsage = adapter != null ? getAdapterUsage(adapter) : null;
+        updateSubscription(buildSubscription());
+    }
+
+    /**
+     * Returns the usage counters of an adapter, creating them the first time.
+     *
+     * @param adapter The {@link net.frakbot.android.location.LocationHubAdapter}.
+     * @return The {@link net.frakbot.android.location.usage.UsageCounters} of the adapter.
+     */
+    public synchronized UsageCounters getAdapterUsage(LocationHubAdapter adapter) {
+        UsageCounters usage = mAdapterUsage.get(adapter);
+        if (usage == null) {
+            usage = new UsageCounters();
+            mAdapterUsage.put(adapter, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * Takes a snapshot of the usage of every adapter that was ever subscribed or connected.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot}s, by adapter name.
+     */
+    public synchronized Map<String, UsageSnapshot> getAdapterUsageSnapshots(boolean reset) {
+        Map<String, UsageSnapshot> snapshots = new HashMap<String, UsageSnapshot>();
+        for (Map.Entry<LocationHubAdapter, UsageCounters> entry : mAdapterUsage.entrySet()) {
+            snapshots.put(entry.getKey().getAdapterName(), entry.getValue().snapshot(reset));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Takes a snapshot of the delivery metrics of every registered listener. Like the usage, the
+     * metrics of a listener are kept when it is registered again with another request.
+     *
+     * @param reset true to empty the histograms and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.metrics.ListenerMetrics}, by listener.
+     */
+    public synchronized Map<LocationHubListener, ListenerMetrics> getListenerMetrics(boolean reset) {
+        Map<LocationHubListener, ListenerMetrics> metrics = new HashMap<LocationHubListener, ListenerMetrics>();
+        for (Map.Entry<LocationHubListener, ListenerRegistration> entry : mRegistrationMap.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getMetrics(reset));
+        }
+        return metrics;
+    }
+
+    /**
+     * Takes a snapshot of the usage of every registered listener. The counters of a listener are
+     * kept when it is registered again with another request, and dropped when it is removed.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot}s, by listener.
+     */
+    public synchronized Map<LocationHubListener, UsageSnapshot> getListenerUsageSnapshots(boolean reset) {
+        Map<LocationHubListener, UsageSnapshot> snapshots = new HashMap<LocationHubListener, UsageSnapshot>();
+        for (Map.Entry<LocationHubListener, ListenerRegistration> entry : mRegistrationMap.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().getUsage().snapshot(reset));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.LocationHubAdapter} the subscription is placed on.
+     *
+     * @return The current {@link net.frakbot.android.location.LocationHubAdapter}, or null if there is none.
+     */
+    public synchronized LocationHubAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Returns the last time the dispatcher either received a location or placed a new subscription
+     * on its adapter, which is the time the next location is expected from.
+     *
+     * @return the time in milliseconds of {@link android.os.SystemClock#elapsedRealtime()}.
+     */
+    public long getLastActivityTime() {
+        return mLastActivityTime;
+    }
+
+    /**
+     * Returns the last time the dispatcher received a location from its adapter.
+     *
+     * @return the time in milliseconds of {@link android.os.SystemClock#elapsedRealtime()}, or 0 if
+     * no location was received yet.
+     */
+    public long getLastLocationTime() {
+        return mLastLocationTime;
+    }
+
+    /**
+     * Restarts the wait for the next location from now, as if the subscription had just been placed.
+     */
+    public void resetLastActivityTime() {
+        mLastActivityTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Sets the {@link net.frakbot.android.location.history.LocationHistory} every received location
+     * is appended to.
+     *
+     * @param history The {@link net.frakbot.android.location.history.LocationHistory}, or null to stop recording.
+     */
+    public void setHistory(LocationHistory history) {
+        mHistory = history;
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.cache.LastLocationCache} every received
+     * location is offered to.
+     *
+     * @return The dispatcher {@link net.frakbot.android.location.cache.LastLocationCache}.
+     */
+    public LastLocationCache getLastLocationCache() {
+        return mLastLocationCache;
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.scheduler.MotionScheduler} adapting the
+     * subscription to the motion of the device.
+     *
+     * @return The dispatcher {@link net.frakbot.android.location.scheduler.MotionScheduler}.
+     */
+    public MotionScheduler getMotionScheduler() {
+        return mMotionScheduler;
+    }
+
+    /**
+     * Returns the {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog} checking the
+     * duration of the listener callbacks.
+     *
+     * @return The dispatcher {@link net.frakbot.android.location.dispatch.SlowListenerWatchdog}.
+     */
+    public SlowListenerWatchdog getSlowListenerWatchdog() {
+        return mWatchdog;
+    }
+
+    /**
+     * Returns how many callbacks were suppressed because they didn't satisfy the fastest interval
+     * or the smallest displacement of their listener, since the dispatcher was created.
+     *
+     * @return the number of suppressed callbacks.
+     */
+    public long getSuppressedCount() {
+        return mSuppressedCount.get();
+    }
+
+    /**
+     * Returns the number of registered listeners.
+     *
+     * @return the number of registered listeners.
+     */
+    public int getListenerCount() {
+        return mRegistrations.length;
+    }
+
+    /**
+     * Fans out a {@link android.location.Location} to all of the registered listeners.
+     *
+     * @param location The new {@link android.location.Location}.
+     */
+    protected void dispatch(Location location) {
+        mLastActivityTime = SystemClock.elapsedRealtime();
+        mLastLocationTime = mLastActivityTime;
+        UsageCounters adapterUsage = mCurrentAdapterUsage;
+        if (adapterUsage != null) {
+            adapterUsage.onDelivered();
+        }
+        LocationProcessor[] processors = mProcessors;
+        for (int i = 0; i < processors.length && location != null; i++) {
+            location = processors[i].process(location);
+        }
+        if (location == null) {
+            return;
+        }
+        mLastLocationCache.offer(location);
+        if (mAdaptiveCount > 0 && mMotionScheduler.onLocation(location)) {
+            onMotionStateChanged();
+        }
+        LocationHistory history = mHistory;
+        if (history != null) {
+            history.append(location);
+        }
+        // The smoothed location is a new object, as listeners may hold on to the ones they receive
+        Location smoothedLocation = mSmoothedCount > 0 ? smooth(location) : location;
+        ListenerRegistration[] registrations = mRegistrations;
+        long now = SystemClock.elapsedRealtime();
+        int suppressed = 0;
+        for (ListenerRegistration registration : registrations) {
+            if (!registration.getRequest().isSmoothed()) {
+                if (!registration.deliver(location, now)) {
+                    suppressed++;
+                }
+            } else if (smoothedLocation == null || !registration.deliver(smoothedLocation, now)) {
+                // A location rejected by the filter would jump back in time for a smoothed listener
+                suppressed++;
+            }
+        }
+        if (suppressed > 0) {
+            mSuppressedCount.addAndGet(suppressed);
+        }
+    }
+
+    /**
+     * Runs a location through the Kalman filter.
+     *
+     * @param location The new {@link android.location.Location}.
+     * @return A new, smoothed {@link android.location.Location}, or null if the filter rejected it,
+     * being out of order.
+     */
+    private Location smooth(Location location) {
+        synchronized (mFilter) {
+            if (!mFilter.update(location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : KalmanLocationFilter.DEFAULT_MEASUREMENT_ACCURACY,
+                    location.getTime())) {
+                return null;
+            }
+            Location smoothedLocation = new Location(location);
+            smoothedLocation.setLatitude(mFilter.getLatitude());
+            smoothedLocation.setLongitude(mFilter.getLongitude());
+            smoothedLocation.setAccuracy(mFilter.getAccuracy());
+            smoothedLocation.setSpeed(mFilter.getSpeed());
+            smoothedLocation.setBearing(mFilter.getBearing());
+            return smoothedLocation;
+        }
+    }
+
+    private void addRequest(LocationHubRequest request) {
+        mCoalescer.add(request);
+        if (request.isSmoothed()) {
+            mSmoothedCount++;
+        }
+        if (request.isAdaptive()) {
+            mAdaptiveCount++;
+        }
+    }
+
+    private void removeRequest(LocationHubRequest request) {
+        mCoalescer.remove(request);
+        if (request.isSmoothed() && --mSmoothedCount == 0) {
+            // Start over from the next location when smoothing is needed again
+            mFilter.reset();
+        }
+        if (request.isAdaptive() && --mAdaptiveCount == 0) {
+            mMotionScheduler.reset();
+        }
+    }
+
+    /**
+     * Re-subscribes the adapter with the request adapted to the new motion state.
+     */
+    private synchronized void onMotionStateChanged() {
+        if (mAdaptiveCount > 0) {
+            onRegistrationsChanged();
+        }
+    }
+
+    /**
+     * Publishes the new set of registrations to the dispatching path and re-subscribes the adapter
+     * if the coalesced request has changed.
+     */
+    private void onRegistrationsChanged() {
+        mRegistrations = mRegistrationMap.values().toArray(new ListenerRegistration[mRegistrationMap.size()]);
+        updateSubscription(buildSubscription());
+    }
+
+    /**
+     * Replaces the subscription on the adapter, unless it is the same as the current one.
+     * <p/>
+     * If the adapter refuses the new subscription, none is kept, so that the next change of the
+     * registrations, or of the adapter, tries to place it again.
+     *
+     * @param subscription The new coalesced {@link net.frakbot.android.location.common.LocationHubRequest},
+     *                     or null to drop the subscription.
+     */
+    private void updateSubscription(LocationHubRequest subscription) {
+        if (RequestCoalescer.isSameRequest(subscription, mSubscription)) {
+            return;
+        }
+        unsubscribe();
+        if (mAdapter == null || subscription == null) {
+            // Without an adapter, the subscription is held until one is set
+            mSubscription = subscription;
+            return;
+        }
+        try {
+            mAdapter.requestLocationUpdates(subscription, mUpstreamListener);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "The adapter " + mAdapter.getAdapterName() + " refused the subscription.", e);
+            return;
+        }
+        mSubscription = subscription;
+        mLastActivityTime = SystemClock.elapsedRealtime();
+        mCurrentAdapterUsage.onRegistered();
+        mCurrentAdapterUsage.startActive(subscription.getPriority());
+    }
+
+    /**
+     * Drops the current subscription from the adapter, if any.
+     */
+    private void unsubscribe() {
+        if (mAdapter != null && mSubscription != null) {
+            mCurrentAdapterUsage.stopActive(mSubscription.getPriority());
+            try {
+                mAdapter.removeLocationUpdates(mUpstreamListener);
+            } catch (IllegalStateException e) {
+                // The adapter has already lost its connection, and with it the subscription
+            }
+        }
+        mSubscription = null;
+    }
+
+    /**
+     * Builds the coalesced request out of the currently active ones.
+     *
+     * @return The coalesced {@link net.frakbot.android.location.common.LocationHubRequest}, or null
+     * if there are no active requests.
+     */
+    private LocationHubRequest buildSubscription() {
+        if (mCoalescer.isEmpty()) {
+            return null;
+        }
+        if (mAdaptiveCount > 0 && mMotionScheduler.getState() != MotionScheduler.MOTION_FAST) {
+            return buildAdaptedSubscription();
+        }
+        return mCoalescer.build();
+    }
+
+    /**
+     * Builds the coalesced request out of the currently active ones, as adapted to the motion state.
+     * This walks all of the registrations, but only happens when the motion state changes.
+     *
+     * @return The coalesced {@link net.frakbot.android.location.common.LocationHubRequest}.
+     */
+    private LocationHubRequest buildAdaptedSubscription() {
+        long interval = Long.MAX_VALUE;
+        int priority = Integer.MAX_VALUE;
+        for (ListenerRegistration registration : mRegistrationMap.values()) {
+            LocationHubRequest request = registration.getRequest();
+            interval = Math.min(interval, mMotionScheduler.getInterval(request));
+            int requestPriority = mMotionScheduler.getPriority(request);
+            if (RequestCoalescer.isPrioritySet(requestPriority)) {
+                priority = Math.min(priority, requestPriority);
+            }
+        }
+        LocationHubRequest subscription = new LocationHubRequest()
+                .setInterval(interval)
+                .setFastestInterval(Math.min(mCoalescer.getFastestInterval(), interval))
+                .setSmallestDisplacement(mCoalescer.getSmallestDisplacement());
+        if (priority != Integer.MAX_VALUE) {
+            subscription.setPriority(priority);
+        }
+        return subscription;
+    }
+}
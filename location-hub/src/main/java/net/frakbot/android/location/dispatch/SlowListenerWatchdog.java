@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.dispatch;
+
+import android.util.Log;
+
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.OnSlowCallbackListener;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the duration of the listener callbacks, and reports the ones over budget.
+ * <p/>
+ * Listeners called directly on the dispatching thread delay every listener after them, so when an
+ * isolation {@link java.util.concurrent.Executor} is set, a listener that goes over budget
+ * {@link SlowListenerWatchdog#getIsolationThreshold()} times is moved onto it, behind its own
+ * {@link net.frakbot.android.location.dispatch.ListenerMailbox}. The isolation lasts as long as the
+ * listener stays registered, and it survives the listener being registered again.
+ */
+public class SlowListenerWatchdog {
+    private static final String TAG = SlowListenerWatchdog.class.getSimpleName();
+
+    /**
+     * Default callback budget, in milliseconds.
+     */
+    public static final long DEFAULT_BUDGET = 50;
+
+    /**
+     * Default number of callbacks over budget before a listener is isolated.
+     */
+    public static final int DEFAULT_ISOLATION_THRESHOLD = 3;
+
+    private final CopyOnWriteArrayList<OnSlowCallbackListener> mListeners;
+    private volatile long mBudgetNanos;
+    private volatile Executor mIsolationExecutor;
+    private volatile int mIsolationThreshold;
+
+    public SlowListenerWatchdog() {
+        mListeners = new CopyOnWriteArrayList<OnSlowCallbackListener>();
+        mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET);
+        mIsolationThreshold = DEFAULT_ISOLATION_THRESHOLD;
+    }
+
+    /**
+     * Sets the longest a listener callback may take.
+     *
+     * @param budget The budget in milliseconds, 0 to disable the watchdog.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the budget is less than zero.
+     */
+    public SlowListenerWatchdog setBudget(long budget) throws IllegalArgumentException {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Callback budget cannot be less than 0.");
+        }
+        mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(budget);
+        return this;
+    }
+
+    public long getBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(mBudgetNanos);
+    }
+
+    /**
+     * Sets the {@link java.util.concurrent.Executor} the slow listeners are moved onto.
+     *
+     * @param executor The {@link java.util.concurrent.Executor}, or null to only report the slow listeners.
+     * @return the same object, so that setters can be chained.
+     */
+    public SlowListenerWatchdog setIsolationExecutor(Executor executor) {
+        mIsolationExecutor = executor;
+        return this;
+    }
+
+    public Executor getIsolationExecutor() {
+        return mIsolationExecutor;
+    }
+
+    /**
+     * Sets how many callbacks over budget isolate a listener, so a single hiccup like a garbage
+     * collection doesn't.
+     *
+     * @param threshold The number of callbacks over budget.
+     * @return the same object, so that setters can be chained.
+     * @throws IllegalArgumentException if the threshold is less than 1.
+     */
+    public SlowListenerWatchdog setIsolationThreshold(int threshold) throws IllegalArgumentException {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Isolation threshold cannot be less than 1.");
+        }
+        mIsolationThreshold = threshold;
+        return this;
+    }
+
+    public int getIsolationThreshold() {
+        return mIsolationThreshold;
+    }
+
+    public void addOnSlowCallbackListener(OnSlowCallbackListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnSlowCallbackListener(OnSlowCallbackListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Checks the duration of a callback, reporting and possibly isolating its listener if it went
+     * over budget.
+     *
+     * @param registration The {@link net.frakbot.android.location.dispatch.ListenerRegistration} of the listener.
+     * @param duration     How long the callback took, in nanoseconds.
+     */
+    void onCallback(ListenerRegistration registration, long duration) {
+        long budget = mBudgetNanos;
+        if (budget == 0 || duration <= budget) {
+            return;
+        }
+        int overruns = registration.onOverBudget();
+        Executor executor = mIsolationExecutor;
+        if (executor != null && overruns >= mIsolationThreshold) {
+            registration.isolate(executor);
+        }
+        LocationHubListener listener = registration.getListener();
+        boolean isIsolated = registration.isIsolated();
+        Log.w(TAG, String.format("Listener %s took %.1f ms to handle a location (budget %d ms)%s",
+                listener, duration / 1e6, TimeUnit.NANOSECONDS.toMillis(budget), isIsolated ? ", isolated" : ""));
+        for (OnSlowCallbackListener slowCallbackListener : mListeners) {
+            slowCallbackListener.onSlowCallback(listener, duration, isIsolated);
+        }
+    }
+}
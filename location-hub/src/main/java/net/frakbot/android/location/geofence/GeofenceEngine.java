@@ -0,0 +1,419 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.geofence;
+
+import android.location.Location;
+
+import net.frakbot.android.location.common.LocationHubListener;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * In-process engine watching any number of circular geofences against a stream of locations.
+ * <p/>
+ * Geofences are kept in parallel primitive arrays and indexed by a uniform grid, so each location is
+ * only checked against the geofences overlapping its grid cell and the ones it is currently inside
+ * of. Processing a location doesn't allocate. Adding or removing geofences only touches the cells
+ * they cover, without rebuilding the index.
+ * <p/>
+ * A location enters a geofence within its radius, and exits it only beyond its radius plus the
+ * hysteresis, so a location jittering across the border doesn't produce a storm of transitions.
+ * Dwelling is evaluated on each received location.
+ * <p/>
+ * Feed the engine by registering {@link GeofenceEngine#asLocationHubListener()} with
+ * {@link net.frakbot.android.location.LocationHub#requestLocationUpdates(net.frakbot.android.location.common.LocationHubRequest, net.frakbot.android.location.common.LocationHubListener)}.
+ */
+public class GeofenceEngine {
+    /**
+     * Default side of a grid cell, in degrees, that is about 1.1 km of latitude.
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    public static final float DEFAULT_HYSTERESIS = 25;
+
+    private static final double EARTH_RADIUS = 6371009;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final GeofenceListener mGeofenceListener;
+    private final GeofenceGrid mGrid;
+    private final HashMap<String, Integer> mSlots;
+    private float mHysteresis = DEFAULT_HYSTERESIS;
+
+    // Geofences, by slot
+    private String[] mRequestIds;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private float[] mRadii;
+    private int[] mTransitionTypes;
+    private long[] mLoiteringDelays;
+    private long[] mEnterTimes;
+    private boolean[] mDwelled;
+    private int[] mInsideIndexes;
+    private int[] mVisits;
+    private int mSlotCount;
+
+    // Freed slots, reused before growing the arrays
+    private int[] mFreeSlots;
+    private int mFreeCount;
+
+    // Slots of the geofences the last location is inside of
+    private int[] mInside;
+    private int mInsideCount;
+
+    private int mVisit;
+    private LocationHubListener mListener;
+
+    /**
+     * Creates a new engine with the default grid cell size.
+     *
+     * @param listener The {@link net.frakbot.android.location.geofence.GeofenceListener} receiving the transitions.
+     */
+    public GeofenceEngine(GeofenceListener listener) {
+        this(listener, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates a new engine.
+     * <p/>
+     * A geofence is put in every cell it overlaps, so the cell size should be in the order of the
+     * typical geofence radius: smaller cells mean fewer candidates per location, but more cells per geofence.
+     *
+     * @param listener The {@link net.frakbot.android.location.geofence.GeofenceListener} receiving the transitions.
+     * @param cellSize The side of a grid cell, in degrees.
+     * @throws IllegalArgumentException if the listener is null or the cell size is not positive.
+     */
+    public GeofenceEngine(GeofenceListener listener, double cellSize) throws IllegalArgumentException {
+        if (listener == null) {
+            throw new IllegalArgumentException("The geofence listener cannot be null.");
+        }
+        if (cellSize <= 0 || cellSize > 180) {
+            throw new IllegalArgumentException("The cell size must be greater than 0 and at most 180 degrees.");
+        }
+        mGeofenceListener = listener;
+        mGrid = new GeofenceGrid(cellSize);
+        mSlots = new HashMap<String, Integer>();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Sets the distance beyond the radius a location has to reach to exit a geofence.
+     *
+     * @param meters The hysteresis, in meters.
+     * @throws IllegalArgumentException if the hysteresis is less than zero.
+     */
+    public synchronized void setHysteresis(float meters) throws IllegalArgumentException {
+        if (meters < 0) {
+            throw new IllegalArgumentException("Hysteresis cannot be less than 0.");
+        }
+        mHysteresis = meters;
+    }
+
+    /**
+     * Adds a geofence, or replaces the one with the same request ID.
+     *
+     * @param geofence The {@link net.frakbot.android.location.geofence.LocationHubGeofence} to add.
+     * @throws IllegalArgumentException if the geofence has no request ID or no region.
+     */
+    public synchronized void addGeofence(LocationHubGeofence geofence) throws IllegalArgumentException {
+        if (geofence.getRequestId() == null || geofence.getRadius() <= 0) {
+            throw new IllegalArgumentException("The geofence must have a request ID and a circular region.");
+        }
+        removeGeofence(geofence.getRequestId());
+        int slot = obtainSlot();
+        mRequestIds[slot] = geofence.getRequestId();
+        mLatitudes[slot] = geofence.getLatitude();
+        mLongitudes[slot] = geofence.getLongitude();
+        mRadii[slot] = geofence.getRadius();
+        mTransitionTypes[slot] = geofence.getTransitionTypes();
+        mLoiteringDelays[slot] = geofence.getLoiteringDelay();
+        mDwelled[slot] = false;
+        mInsideIndexes[slot] = -1;
+        mSlots.put(geofence.getRequestId(), slot);
+        index(slot, true);
+    }
+
+    /**
+     * Adds many geofences at once.
+     *
+     * @param geofences The {@link net.frakbot.android.location.geofence.LocationHubGeofence}s to add.
+     * @see GeofenceEngine#addGeofence(LocationHubGeofence)
+     */
+    public synchronized void addGeofences(List<LocationHubGeofence> geofences) {
+        for (LocationHubGeofence geofence : geofences) {
+            addGeofence(geofence);
+        }
+    }
+
+    /**
+     * Removes a geofence. No transition is reported for it, even if the last location was inside it.
+     *
+     * @param requestId The request ID of the geofence.
+     * @return true if the geofence was found and removed.
+     */
+    public synchronized boolean removeGeofence(String requestId) {
+        Integer slot = mSlots.remove(requestId);
+        if (slot == null) {
+            return false;
+        }
+        index(slot, false);
+        if (mInsideIndexes[slot] >= 0) {
+            removeInside(slot);
+        }
+        mRequestIds[slot] = null;
+        mFreeSlots[mFreeCount++] = slot;
+        return true;
+    }
+
+    /**
+     * Removes many geofences at once.
+     *
+     * @param requestIds The request IDs of the geofences.
+     */
+    public synchronized void removeGeofences(List<String> requestIds) {
+        for (String requestId : requestIds) {
+            removeGeofence(requestId);
+        }
+    }
+
+    /**
+     * Removes all of the geofences.
+     */
+    public synchronized void removeAllGeofences() {
+        mSlots.clear();
+        mGrid.clear();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of watched geofences.
+     *
+     * @return the number of geofences.
+     */
+    public synchronized int getGeofenceCount() {
+        return mSlots.size();
+    }
+
+    /**
+     * Checks whether the last location was inside a geofence.
+     *
+     * @param requestId The request ID of the geofence.
+     * @return true if the geofence exists and the last location was inside it.
+     */
+    public synchronized boolean isInside(String requestId) {
+        Integer slot = mSlots.get(requestId);
+        return slot != null && mInsideIndexes[slot] >= 0;
+    }
+
+    /**
+     * Checks a {@link android.location.Location} against the geofences, and reports the transitions
+     * it makes to the {@link net.frakbot.android.location.geofence.GeofenceListener}.
+     *
+     * @param location The new {@link android.location.Location}.
+     */
+    public synchronized void onLocation(Location location) {
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        long time = location.getTime();
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int visit = ++mVisit;
+
+        // First the geofences the location was inside of, which may have been left
+        for (int i = mInsideCount - 1; i >= 0; i--) {
+            int slot = mInside[i];
+            mVisits[slot] = visit;
+            double distance = distance(latitude, longitude, cosLatitude, slot);
+            if (distance > mRadii[slot] + mHysteresis) {
+                removeInside(slot);
+                notify(slot, LocationHubGeofence.GEOFENCE_TRANSITION_EXIT, location);
+            } else if (!mDwelled[slot] && time - mEnterTimes[slot] >= mLoiteringDelays[slot]) {
+                mDwelled[slot] = true;
+                notify(slot, LocationHubGeofence.GEOFENCE_TRANSITION_DWELL, location);
+            }
+        }
+
+        // Then the geofences overlapping the cell of the location, which may have been entered
+        int cell = mGrid.find(GeofenceGrid.getKey(mGrid.getLatitudeCell(latitude), mGrid.getLongitudeCell(longitude)));
+        if (cell < 0) {
+            return;
+        }
+        int[] members = mGrid.getMembers(cell);
+        int size = mGrid.getSize(cell);
+        for (int i = 0; i < size; i++) {
+            int slot = members[i];
+            if (mVisits[slot] == visit) {
+                continue;
+            }
+            mVisits[slot] = visit;
+            if (distance(latitude, longitude, cosLatitude, slot) <= mRadii[slot]) {
+                addInside(slot);
+                mEnterTimes[slot] = time;
+                mDwelled[slot] = false;
+                notify(slot, LocationHubGeofence.GEOFENCE_TRANSITION_ENTER, location);
+                if (mLoiteringDelays[slot] == 0) {
+                    mDwelled[slot] = true;
+                    notify(slot, LocationHubGeofence.GEOFENCE_TRANSITION_DWELL, location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link net.frakbot.android.location.common.LocationHubListener} feeding the engine
+     * with every received location.
+     *
+     * @return The {@link net.frakbot.android.location.common.LocationHubListener} of the engine.
+     */
+    public synchronized LocationHubListener asLocationHubListener() {
+        if (mListener == null) {
+            mListener = new LocationHubListener() {
+                @Override
+                public void onLocationChanged(Location location) {
+                    onLocation(location);
+                }
+            };
+        }
+        return mListener;
+    }
+
+    private void notify(int slot, int transition, Location location) {
+        if ((mTransitionTypes[slot] & transition) != 0) {
+            mGeofenceListener.onGeofenceTransition(mRequestIds[slot], transition, location);
+        }
+    }
+
+    /**
+     * Approximates the distance between a location and the center of a geofence with an
+     * equirectangular projection, which is accurate enough at geofence scale.
+     */
+    private double distance(double latitude, double longitude, double cosLatitude, int slot) {
+        double deltaLongitude = longitude - mLongitudes[slot];
+        if (deltaLongitude > 180) {
+            deltaLongitude -= 360;
+        } else if (deltaLongitude < -180) {
+            deltaLongitude += 360;
+        }
+        double x = deltaLongitude * cosLatitude;
+        double y = latitude - mLatitudes[slot];
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Adds a geofence to, or removes it from, all of the grid cells its circle overlaps.
+     */
+    private void index(int slot, boolean add) {
+        double latitude = mLatitudes[slot];
+        double latitudeSpan = mRadii[slot] / METERS_PER_DEGREE;
+        double cosLatitude = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        double longitudeSpan = Math.min(latitudeSpan / cosLatitude, 180);
+
+        int fromLatitude = mGrid.getLatitudeCell(Math.max(latitude - latitudeSpan, -90));
+        int toLatitude = mGrid.getLatitudeCell(Math.min(latitude + latitudeSpan, 90));
+        int fromLongitude = mGrid.getLongitudeCell(mLongitudes[slot] - longitudeSpan);
+        int longitudeCells = Math.min(
+                (int) Math.ceil(2 * longitudeSpan / mGrid.getCellSize()) + 1, mGrid.getLongitudeCellCount());
+        for (int latitudeCell = fromLatitude; latitudeCell <= toLatitude; latitudeCell++) {
+            for (int i = 0; i < longitudeCells; i++) {
+                int longitudeCell = (fromLongitude + i) % mGrid.getLongitudeCellCount();
+                long key = GeofenceGrid.getKey(latitudeCell, longitudeCell);
+                if (add) {
+                    mGrid.add(key, slot);
+                } else {
+                    mGrid.remove(key, slot);
+                }
+            }
+        }
+    }
+
+    private void addInside(int slot) {
+        mInsideIndexes[slot] = mInsideCount;
+        mInside[mInsideCount++] = slot;
+    }
+
+    private void removeInside(int slot) {
+        int index = mInsideIndexes[slot];
+        int last = mInside[--mInsideCount];
+        mInside[index] = last;
+        mInsideIndexes[last] = index;
+        mInsideIndexes[slot] = -1;
+    }
+
+    private int obtainSlot() {
+        if (mFreeCount > 0) {
+            return mFreeSlots[--mFreeCount];
+        }
+        if (mSlotCount == mRequestIds.length) {
+            grow(mRequestIds.length * 2);
+        }
+        return mSlotCount++;
+    }
+
+    private void allocate(int capacity) {
+        mRequestIds = new String[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mRadii = new float[capacity];
+        mTransitionTypes = new int[capacity];
+        mLoiteringDelays = new long[capacity];
+        mEnterTimes = new long[capacity];
+        mDwelled = new boolean[capacity];
+        mInsideIndexes = new int[capacity];
+        mVisits = new int[capacity];
+        mFreeSlots = new int[capacity];
+        mInside = new int[capacity];
+        mSlotCount = 0;
+        mFreeCount = 0;
+        mInsideCount = 0;
+    }
+
+    private void grow(int capacity) {
+        int count = mSlotCount;
+        String[] requestIds = mRequestIds;
+        double[] latitudes = mLatitudes;
+        double[] longitudes = mLongitudes;
+        float[] radii = mRadii;
+        int[] transitionTypes = mTransitionTypes;
+        long[] loiteringDelays = mLoiteringDelays;
+        long[] enterTimes = mEnterTimes;
+        boolean[] dwelled = mDwelled;
+        int[] insideIndexes = mInsideIndexes;
+        int[] visits = mVisits;
+        int[] freeSlots = mFreeSlots;
+        int[] inside = mInside;
+        int freeCount = mFreeCount;
+        int insideCount = mInsideCount;
+
+        allocate(capacity);
+        System.arraycopy(requestIds, 0, mRequestIds, 0, count);
+        System.arraycopy(latitudes, 0, mLatitudes, 0, count);
+        System.arraycopy(longitudes, 0, mLongitudes, 0, count);
+        System.arraycopy(radii, 0, mRadii, 0, count);
+        System.arraycopy(transitionTypes, 0, mTransitionTypes, 0, count);
+        System.arraycopy(loiteringDelays, 0, mLoiteringDelays, 0, count);
+        System.arraycopy(enterTimes, 0, mEnterTimes, 0, count);
+        System.arraycopy(dwelled, 0, mDwelled, 0, count);
+        System.arraycopy(insideIndexes, 0, mInsideIndexes, 0, count);
+        System.arraycopy(visits, 0, mVisits, 0, count);
+        System.arraycopy(freeSlots, 0, mFreeSlots, 0, freeCount);
+        System.arraycopy(inside, 0, mInside, 0, insideCount);
+        mSlotCount = count;
+        mFreeCount = freeCount;
+        mInsideCount = insideCount;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.geofence;
+
+import android.location.Location;
+
+/**
+ * Receives the transitions of the geofences watched by a {@link net.frakbot.android.location.geofence.GeofenceEngine}.
+ */
+public interface GeofenceListener {
+
+    /**
+     * Called when a location makes a geofence transition.
+     *
+     * @param requestId  The request ID of the {@link net.frakbot.android.location.geofence.LocationHubGeofence}.
+     * @param transition The transition, one of {@link LocationHubGeofence#GEOFENCE_TRANSITION_ENTER},
+     *                   {@link LocationHubGeofence#GEOFENCE_TRANSITION_EXIT} and
+     *                   {@link LocationHubGeofence#GEOFENCE_TRANSITION_DWELL}.
+     * @param location   The {@link android.location.Location} that triggered the transition.
+     */
+    public void onGeofenceTransition(String requestId, int transition, Location location);
+}
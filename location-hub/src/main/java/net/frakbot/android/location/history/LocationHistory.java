@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.history;
+
+import android.location.Location;
+
+/**
+ * Fixed-capacity history of the most recent locations, kept as parallel primitive arrays.
+ * <p/>
+ * Once the history is full, every new location overwrites the oldest one. Appending never
+ * allocates, and the stored values are read back by index without creating any
+ * {@link android.location.Location}. Index 0 is always the oldest stored location and
+ * {@link LocationHistory#size()} - 1 the newest one.
+ * <p/>
+ * Accuracy, speed and bearing are {@link java.lang.Float#NaN} when the original location didn't have them.
+ */
+public class LocationHistory {
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final float[] mAccuracies;
+    private final float[] mSpeeds;
+    private final float[] mBearings;
+    private final long[] mTimes;
+
+    private int mStart;
+    private int mSize;
+
+    /**
+     * Creates a new history.
+     *
+     * @param capacity The maximum number of locations kept in the history.
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public LocationHistory(int capacity) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History capacity cannot be less than 1.");
+        }
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mAccuracies = new float[capacity];
+        mSpeeds = new float[capacity];
+        mBearings = new float[capacity];
+        mTimes = new long[capacity];
+    }
+
+    /**
+     * Appends a {@link android.location.Location} to the history.
+     *
+     * @param location The {@link android.location.Location} to append.
+     */
+    public void append(Location location) {
+        append(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN,
+                location.getTime());
+    }
+
+    /**
+     * Appends a location to the history, overwriting the oldest one if the history is full.
+     *
+     * @param latitude  The latitude, in degrees.
+     * @param longitude The longitude, in degrees.
+     * @param accuracy  The accuracy, in meters, or {@link java.lang.Float#NaN}.
+     * @param speed     The speed, in meters/second, or {@link java.lang.Float#NaN}.
+     * @param bearing   The bearing, in degrees, or {@link java.lang.Float#NaN}.
+     * @param time      The UTC time of the fix, in milliseconds since January 1, 1970.
+     */
+    public synchronized void append(double latitude, double longitude, float accuracy, float speed, float bearing, long time) {
+        int slot;
+        if (mSize < mTimes.length) {
+            slot = (mStart + mSize) % mTimes.length;
+            mSize++;
+        } else {
+            slot = mStart;
+            mStart = (mStart + 1) % mTimes.length;
+        }
+        mLatitudes[slot] = latitude;
+        mLongitudes[slot] = longitude;
+        mAccuracies[slot] = accuracy;
+        mSpeeds[slot] = speed;
+        mBearings[slot] = bearing;
+        mTimes[slot] = time;
+    }
+
+    /**
+     * Removes all of the locations from the history.
+     */
+    public synchronized void clear() {
+        mStart = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the maximum number of locations kept in the history.
+     *
+     * @return the capacity of the history.
+     */
+    public int getCapacity() {
+        return mTimes.length;
+    }
+
+    /**
+     * Returns the number of locations currently stored.
+     *
+     * @return the number of stored locations.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized double getLatitude(int index) {
+        return mLatitudes[slotOf(index)];
+    }
+
+    public synchronized double getLongitude(int index) {
+        return mLongitudes[slotOf(index)];
+    }
+
+    public synchronized float getAccuracy(int index) {
+        return mAccuracies[slotOf(index)];
+    }
+
+    public synchronized float getSpeed(int index) {
+        return mSpeeds[slotOf(index)];
+    }
+
+    public synchronized float getBearing(int index) {
+        return mBearings[slotOf(index)];
+    }
+
+    public synchronized long getTime(int index) {
+        return mTimes[slotOf(index)];
+    }
+
+    /**
+     * Finds the oldest stored location whose time is at or after the given one.
+     * Locations are expected to be appended in time order, so this is a binary search.
+     *
+     * @param time The UTC time, in milliseconds since January 1, 1970.
+     * @return The index of the location, or {@link LocationHistory#size()} if all of the stored
+     * locations are older.
+     */
+    public synchronized int indexAtOrAfter(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTimes[slotOf(mid)] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the newest stored location whose time is at or before the given one.
+     *
+     * @param time The UTC time, in milliseconds since January 1, 1970.
+     * @return The index of the location, or -1 if all of the stored locations are newer.
+     */
+    public synchronized int indexAtOrBefore(long time) {
+        return indexAtOrAfter(time + 1) - 1;
+    }
+
+    /**
+     * Copies the latitudes and longitudes of a time window into caller-provided arrays.
+     *
+     * @param fromTime   The start of the window, inclusive.
+     * @param toTime     The end of the window, inclusive.
+     * @param latitudes  The destination array for the latitudes.
+     * @param longitudes The destination array for the longitudes.
+     * @param times      The destination array for the times, or null.
+     * @return The number of copied locations, bound by the length of the destination arrays.
+     */
+    public synchronized int copyWindow(long fromTime, long toTime, double[] latitudes, double[] longitudes, long[] times) {
+        int from = indexAtOrAfter(fromTime);
+        int to = indexAtOrBefore(toTime);
+        int count = Math.min(to - from + 1, Math.min(latitudes.length, longitudes.length));
+        if (times != null) {
+            count = Math.min(count, times.length);
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(from + i);
+            latitudes[i] = mLatitudes[slot];
+            longitudes[i] = mLongitudes[slot];
+            if (times != null) {
+                times[i] = mTimes[slot];
+            }
+        }
+        return Math.max(count, 0);
+    }
+
+    /**
+     * Maps a logical index, 0 being the oldest location, to its slot in the arrays.
+     */
+    private int slotOf(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of the history bounds (size " + mSize + ").");
+        }
+        return (mStart + index) % mTimes.length;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.journal;
+
+import android.location.Location;
+import android.util.Log;
+
+import net.frakbot.android.location.async.LocationHubWorker;
+import net.frakbot.android.location.common.LocationHubListener;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Durable, append-only journal of locations, stored as fixed-width binary records in
+ * memory-mapped segment files.
+ * <p/>
+ * Appending a location is a handful of writes into a mapped buffer, with no system call and no
+ * allocation, and the records survive the death of the process as soon as they are written.
+ * When the active segment is full, a new one is started; each segment carries a sparse time index
+ * so that time range queries binary search their starting point instead of scanning.
+ * <p/>
+ * Creating and mapping a segment file, and deleting the ones beyond {@link LocationJournal#setMaxSegments(int)},
+ * take disk I/O, so they are done on the {@link net.frakbot.android.location.async.LocationHubWorker}
+ * thread: the next segment is prepared once the active one is half full, and the appending thread,
+ * usually the main one, only waits for it if the active one fills up before it is ready.
+ * <p/>
+ * Segment files that can't be read, for example because the device died while they were being
+ * created, are skipped when the journal is opened, and renamed with a {@code .bad} suffix.
+ * <p/>
+ * Locations are expected to be appended in time order. Feed the journal from the hub by
+ * registering {@link LocationJournal#asLocationHubListener()} with
+ * {@link net.frakbot.android.location.LocationHub#requestLocationUpdates(net.frakbot.android.location.common.LocationHubRequest, net.frakbot.android.location.common.LocationHubListener)}.
+ */
+public class LocationJournal {
+    private static final String TAG = "LocationJournal";
+
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 16384;
+    public static final int DEFAULT_INDEX_STRIDE = 64;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String QUARANTINE_SUFFIX = ".bad";
+
+    private final File mDirectory;
+    private final int mRecordsPerSegment;
+    private final int mIndexStride;
+    private final List<JournalSegment> mSegments;
+    private int mNextSequence;
+    private int mMaxSegments = 0;
+    private FutureTask<JournalSegment> mNextSegment;
+    private boolean isClosed;
+
+    private LocationHubListener mListener;
+
+    /**
+     * Opens the journal in the given directory with the default segment size.
+     *
+     * @param directory The directory holding the segment files. It is created if it doesn't exist.
+     * @throws IOException if the directory can't be created or listed.
+     */
+    public LocationJournal(File directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_INDEX_STRIDE);
+    }
+
+    /**
+     * Opens the journal in the given directory.
+     *
+     * @param directory         The directory holding the segment files. It is created if it doesn't exist.
+     * @param recordsPerSegment The number of records after which a new segment is started.
+     * @param indexStride       The number of records between two entries of the sparse time index.
+     * @throws IOException if the directory can't be created or listed.
+     */
+    public LocationJournal(File directory, int recordsPerSegment, int indexStride) throws IOException {
+        if (recordsPerSegment < 1 || indexStride < 1) {
+            throw new IllegalArgumentException("Records per segment and index stride must be positive.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the journal directory " + directory);
+        }
+        mDirectory = directory;
+        mRecordsPerSegment = recordsPerSegment;
+        mIndexStride = indexStride;
+        mSegments = new ArrayList<JournalSegment>();
+        openSegments();
+    }
+
+    /**
+     * Sets the maximum number of segments kept on disk. When a new segment is started,
+     * the oldest ones are deleted to stay within this limit.
+     *
+     * @param maxSegments The maximum number of segments, 0 to keep all of them.
+     */
+    public synchronized void setMaxSegments(int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("Max segments cannot be less than 0.");
+        }
+        mMaxSegments = maxSegments;
+    }
+
+    /**
+     * Appends a {@link android.location.Location} to the journal.
+     *
+     * @param location The {@link android.location.Location} to append.
+     * @throws IOException if a new segment is needed and can't be created.
+     */
+    public void append(Location location) throws IOException {
+        append(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.hasAltitude() ? (float) location.getAltitude() : Float.NaN,
+                location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.hasBearing() ? location.getBearing() : Float.NaN);
+    }
+
+    /**
+     * Appends a record to the journal, rolling over to a new segment if the active one is full.
+     *
+     * @throws IOException if a new segment is needed and can't be created.
+     */
+    public synchronized void append(long time, double latitude, double longitude, float altitude, float accuracy, float speed, float bearing) throws IOException {
+        if (isClosed) {
+            throw new IOException("The journal is closed.");
+        }
+        JournalSegment segment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (segment == null || segment.isFull()) {
+            segment = startSegment();
+        }
+        segment.append(time, latitude, longitude, altitude, accuracy, speed, bearing);
+        if (mNextSegment == null && segment.getCount() * 2 >= segment.getCapacity()) {
+            prepareSegment();
+        }
+    }
+
+    /**
+     * Reads the records in a time range, in time order. Only the segments overlapping the range are read.
+     *
+     * @param fromTime The start of the range, inclusive.
+     * @param toTime   The end of the range, inclusive.
+     * @param visitor  The {@link net.frakbot.android.location.journal.JournalVisitor} receiving the records.
+     */
+    public synchronized void query(long fromTime, long toTime, JournalVisitor visitor) {
+        for (JournalSegment segment : mSegments) {
+            if (segment.getMaxTime() < fromTime) {
+                continue;
+            }
+            if (segment.getMinTime() > toTime) {
+                break;
+            }
+            if (!segment.query(fromTime, toTime, visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of records in the journal.
+     *
+     * @return the number of records.
+     */
+    public synchronized long getRecordCount() {
+        long count = 0;
+        for (JournalSegment segment : mSegments) {
+            count += segment.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * Flushes the active segment to the storage device. Records already survive the death of the
+     * process without this; it is only needed to survive a crash of the whole system.
+     */
+    public synchronized void force() {
+        if (!mSegments.isEmpty()) {
+            mSegments.get(mSegments.size() - 1).force();
+        }
+    }
+
+    /**
+     * Closes the journal: the active segment is flushed and all of the segments are dropped, so
+     * that their mappings can be released. The journal can't be appended to or queried afterwards.
+     * <p/>
+     * Unregister the {@link LocationJournal#asLocationHubListener()} from the hub before closing
+     * the journal; locations it still receives are ignored.
+     */
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        force();
+        isClosed = true;
+        mSegments.clear();
+        if (mNextSegment != null) {
+            // A segment already prepared is left on disk empty, and reused when the journal is opened again
+            mNextSegment.cancel(false);
+            mNextSegment = null;
+        }
+    }
+
+    /**
+     * Checks whether the journal has been closed.
+     *
+     * @return true if the journal is closed.
+     */
+    public synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Returns a {@link net.frakbot.android.location.common.LocationHubListener} that appends every
+     * location it receives to this journal.
+     *
+     * @return The journal {@link net.frakbot.android.location.common.LocationHubListener}.
+     */
+    public synchronized LocationHubListener asLocationHubListener() {
+        if (mListener == null) {
+            mListener = new LocationHubListener() {
+                @Override
+                public void onLocationChanged(Location location) {
+                    if (isClosed()) {
+                        return;
+                    }
+                    try {
+                        append(location);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Unable to append the location to the journal.", e);
+                    }
+                }
+            };
+        }
+        return mListener;
+    }
+
+    private void openSegments() throws IOException {
+        File[] files = mDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Cannot list the journal directory " + mDirectory);
+        }
+        // Segment names are zero-padded sequence numbers, so they sort in creation order
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                int sequence = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                mNextSequence = Math.max(mNextSequence, sequence + 1);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Unexpected journal segment name " + name);
+            }
+            try {
+                mSegments.add(new JournalSegment(file, mRecordsPerSegment, mIndexStride));
+            } catch (IOException e) {
+                // A single damaged segment must not make the whole journal unreadable
+                quarantineSegment(file, e);
+            }
+        }
+    }
+
+    /**
+     * Moves an invalid segment file out of the journal, keeping it on disk for inspection.
+     */
+    private static void quarantineSegment(File file, IOException cause) {
+        Log.w(TAG, "Skipping the invalid journal segment " + file, cause);
+        File quarantined = new File(file.getPath() + QUARANTINE_SUFFIX);
+        if (!file.renameTo(quarantined)) {
+            Log.w(TAG, "Unable to quarantine the journal segment " + file);
+        }
+    }
+
+    /**
+     * Starts creating the next segment on the worker thread. Must be called while holding the lock.
+     */
+    private void prepareSegment() {
+        final File file = nextSegmentFile();
+        mNextSegment = new FutureTask<JournalSegment>(new Callable<JournalSegment>() {
+            @Override
+            public JournalSegment call() throws Exception {
+                return new JournalSegment(file, mRecordsPerSegment, mIndexStride);
+            }
+        });
+        LocationHubWorker.getInstance().execute(mNextSegment);
+    }
+
+    private File nextSegmentFile() {
+        File file = new File(mDirectory, String.format("%010d%s", mNextSequence, SEGMENT_SUFFIX));
+        mNextSequence++;
+        return file;
+    }
+
+    private JournalSegment startSegment() throws IOException {
+        JournalSegment segment = null;
+        if (mNextSegment != null) {
+            segment = takeNextSegment();
+        }
+        if (segment == null) {
+            segment = new JournalSegment(nextSegmentFile(), mRecordsPerSegment, mIndexStride);
+        }
+        mSegments.add(segment);
+        while (mMaxSegments > 0 && mSegments.size() > mMaxSegments) {
+            deleteSegment(mSegments.remove(0));
+        }
+        return segment;
+    }
+
+    /**
+     * Takes the prepared segment, waiting for it if it is still being created.
+     *
+     * @return The prepared segment, or null if it couldn't be created.
+     */
+    private JournalSegment takeNextSegment() {
+        FutureTask<JournalSegment> nextSegment = mNextSegment;
+        mNextSegment = null;
+        if (LocationHubWorker.getInstance().isWorkerThread()) {
+            // Appending on the worker itself, the task might be queued behind the caller
+            nextSegment.run();
+        }
+        try {
+            return nextSegment.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Unable to prepare the next journal segment.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void deleteSegment(final JournalSegment segment) {
+        LocationHubWorker.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!segment.getFile().delete()) {
+                    Log.w(TAG, "Unable to delete the journal segment " + segment.getFile());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.processor;
+
+import android.location.Location;
+
+/**
+ * A stage of the processing pipeline every {@link android.location.Location} goes through between
+ * the {@link net.frakbot.android.location.LocationHubAdapter} and the listeners of a
+ * {@link net.frakbot.android.location.LocationHub}.
+ * <p/>
+ * A processor can let a location through as it is, modify it, replace it with another one, or drop
+ * it. Processors run in order on the thread the adapter delivers locations on, before the location
+ * reaches the last location cache, the history and the listeners, so they should return quickly.
+ *
+ * @see net.frakbot.android.location.LocationHub#addLocationProcessor(LocationProcessor)
+ */
+public interface LocationProcessor {
+
+    /**
+     * Processes a {@link android.location.Location}.
+     *
+     * @param location The {@link android.location.Location} coming from the adapter or from the previous processor.
+     * @return The {@link android.location.Location} to hand over to the next stage, which can be the
+     * same object, or null to drop it.
+     */
+    public Location process(Location location);
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.resolver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import net.frakbot.android.location.LocationHubAdapterDescriptor;
+import net.frakbot.android.location.async.LocationHubWorker;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches the result of {@link net.frakbot.android.location.LocationHubAdapterDescriptor#isServiceAvailable(android.content.Context)}
+ * in memory for the whole process, and on disk across processes.
+ * <p/>
+ * The cache is invalidated when the service package of an adapter, or the application itself,
+ * is installed, updated or removed: a receiver clears it while the process is alive, and every
+ * disk entry carries a fingerprint of the system build and of the involved packages, so that
+ * changes that happened while the process was dead are detected too.
+ * <p/>
+ * Reading the disk entries and checking their fingerprints takes disk reads and binder calls, so
+ * it is done once per process on the {@link net.frakbot.android.location.async.LocationHubWorker}
+ * thread, starting as soon as the first cache is created. {@link AdapterAvailabilityCache#get(net.frakbot.android.location.LocationHubAdapterDescriptor)}
+ * only reads memory and never waits for that warm-up: until it has finished, every availability
+ * is unknown, and the adapters are probed as if there was no cache.
+ */
+public class AdapterAvailabilityCache {
+    private static final String TAG = "LocationHubResolver";
+
+    private static final String PREFERENCES_NAME = "net.frakbot.android.location.resolver";
+    private static final String KEY_AVAILABLE = "available.";
+    private static final String KEY_FINGERPRINT = "fingerprint.";
+    private static final String KEY_PACKAGE = "package.";
+
+    private static final HashMap<String, Boolean> sAvailability = new HashMap<String, Boolean>();
+    private static final HashMap<String, String> sFingerprints = new HashMap<String, String>();
+    private static final HashSet<String> sWatchedPackages = new HashSet<String>();
+    private static BroadcastReceiver sPackageReceiver;
+    private static FutureTask<Void> sWarmUp;
+
+    private final Context mContext;
+
+    public AdapterAvailabilityCache(Context context) {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        warmUp();
+    }
+
+    /**
+     * Returns the cached availability of an adapter.
+     *
+     * @param adapter The {@link net.frakbot.android.location.LocationHubAdapterDescriptor} of the adapter.
+     * @return The cached availability, or null if it is unknown or the disk entries are still loading.
+     */
+    public Boolean get(LocationHubAdapterDescriptor adapter) {
+        if (!isWarmedUp()) {
+            return null;
+        }
+        synchronized (AdapterAvailabilityCache.class) {
+            return sAvailability.get(adapter.getAdapterName());
+        }
+    }
+
+    /**
+     * Stores the availability of an adapter, both in memory and on disk.
+     *
+     * @param adapter   The {@link net.frakbot.android.location.LocationHubAdapterDescriptor} of the adapter.
+     * @param available Whether the adapter service is available.
+     */
+    public void put(LocationHubAdapterDescriptor adapter, boolean available) {
+        String name = adapter.getAdapterName();
+        String servicePackage = adapter.getServicePackage();
+        synchronized (AdapterAvailabilityCache.class) {
+            sAvailability.put(name, available);
+        }
+        watchPackage(servicePackage);
+        SharedPreferences.Editor editor = getPreferences().edit()
+                .putBoolean(KEY_AVAILABLE + name, available)
+                .putString(KEY_FINGERPRINT + name, getFingerprint(servicePackage));
+        if (servicePackage != null) {
+            editor.putString(KEY_PACKAGE + name, servicePackage);
+        } else {
+            editor.remove(KEY_PACKAGE + name);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Clears the cached availability of all of the adapters.
+     */
+    public void clear() {
+        clear(mContext);
+    }
+
+    private static void clear(Context context) {
+        synchronized (AdapterAvailabilityCache.class) {
+            sAvailability.clear();
+            sFingerprints.clear();
+        }
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
+    private SharedPreferences getPreferences() {
+        return mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Starts loading the disk entries on the worker thread, once per process.
+     */
+    private void warmUp() {
+        FutureTask<Void> warmUp;
+        synchronized (AdapterAvailabilityCache.class) {
+            if (sWarmUp != null) {
+                return;
+            }
+            sWarmUp = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load();
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Unable to load the cached adapter availability", e);
+                    }
+                }
+            }, null);
+            warmUp = sWarmUp;
+        }
+        LocationHubWorker.getInstance().execute(warmUp);
+    }
+
+    /**
+     * Checks whether the disk entries have been loaded, without waiting for them.
+     *
+     * @return true if the warm-up has finished.
+     */
+    private boolean isWarmedUp() {
+        FutureTask<Void> warmUp;
+        synchronized (AdapterAvailabilityCache.class) {
+            warmUp = sWarmUp;
+        }
+        if (LocationHubWorker.getInstance().isWorkerThread()) {
+            // The warm-up might be queued behind the caller, and it is cheap to run here
+            warmUp.run();
+        }
+        return warmUp.isDone();
+    }
+
+    /**
+     * Loads into memory the disk entries whose fingerprint still matches.
+     */
+    private void load() {
+        watchPackage(mContext.getPackageName());
+        Map<String, ?> entries = getPreferences().getAll();
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            if (!entry.getKey().startsWith(KEY_AVAILABLE) || !(entry.getValue() instanceof Boolean)) {
+                continue;
+            }
+            String name = entry.getKey().substring(KEY_AVAILABLE.length());
+            Object servicePackage = entries.get(KEY_PACKAGE + name);
+            String packageName = servicePackage instanceof String ? (String) servicePackage : null;
+            if (getFingerprint(packageName).equals(entries.get(KEY_FINGERPRINT + name))) {
+                watchPackage(packageName);
+                synchronized (AdapterAvailabilityCache.class) {
+                    // A probe that completed in the meantime is more recent
+                    if (!sAvailability.containsKey(name)) {
+                        sAvailability.put(name, (Boolean) entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the fingerprint of the environment the availability of an adapter depends on:
+     * the system build, and the last update time of the application and of the service package.
+     *
+     * @param servicePackage The service package of the adapter, can be null.
+     */
+    private String getFingerprint(String servicePackage) {
+        String key = servicePackage != null ? servicePackage : "";
+        synchronized (AdapterAvailabilityCache.class) {
+            String fingerprint = sFingerprints.get(key);
+            if (fingerprint != null) {
+                return fingerprint;
+            }
+        }
+        String fingerprint = Build.FINGERPRINT
+                + "|" + getLastUpdateTime(mContext.getPackageName())
+                + "|" + getLastUpdateTime(servicePackage);
+        synchronized (AdapterAvailabilityCache.class) {
+            sFingerprints.put(key, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private long getLastUpdateTime(String packageName) {
+        if (packageName == null) {
+            return 0;
+        }
+        try {
+            return mContext.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Registers, once per process, a receiver that clears the cache when a watched package changes,
+     * and adds a package to the watched ones.
+     *
+     * @param packageName The package to watch, can be null.
+     */
+    private void watchPackage(String packageName) {
+        synchronized (AdapterAvailabilityCache.class) {
+            if (packageName != null) {
+                sWatchedPackages.add(packageName);
+            }
+            if (sPackageReceiver != null) {
+                return;
+            }
+            sPackageReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    String packageName = data != null ? data.getSchemeSpecificPart() : null;
+                    boolean watched;
+                    synchronized (AdapterAvailabilityCache.class) {
+                        watched = packageName != null && sWatchedPackages.contains(packageName);
+                    }
+                    if (watched) {
+                        clear(context);
+                    }
+                }
+            };
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(sPackageReceiver, filter);
+    }
+}
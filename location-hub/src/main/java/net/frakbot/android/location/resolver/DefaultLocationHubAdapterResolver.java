@@ -17,40 +17,247 @@
 package net.frakbot.android.location.resolver;
 
 import android.content.Context;
+import android.util.Log;
 
-import net.frakbot.android.location.ILocationHubAdapterResolver;
 import net.frakbot.android.location.LocationHubAdapter;
+import net.frakbot.android.location.LocationHubAdapterDescriptor;
+import net.frakbot.android.location.LocationHubAdapterResolver;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Default implementation for the {@link net.frakbot.android.location.LocationHubAdapter} interface. It
  * always returns the first available implementation in the list.
  * If you want to use this Adapter implementation, build the {@link java.util.List} of {@link net.frakbot.android.location.LocationHubAdapter}
  * implementations in an ordered way.
+ * <p/>
+ * The availability of the adapters is cached through an {@link net.frakbot.android.location.resolver.AdapterAvailabilityCache},
+ * and the adapters with an unknown availability are probed concurrently, each within the probe timeout.
+ * An adapter whose probe times out is considered unavailable, and its result is not cached.
+ * Adapters are registered through their {@link net.frakbot.android.location.LocationHubAdapterDescriptor},
+ * and only the chosen one is instantiated.
  */
-public class DefaultLocationHubAdapterResolver implements ILocationHubAdapterResolver {
-    protected List<LocationHubAdapter> mLocationAdapters;
+public class DefaultLocationHubAdapterResolver extends LocationHubAdapterResolver {
+    private static final String TAG = "LocationHubResolver";
+
+    public static final long DEFAULT_PROBE_TIMEOUT = 2000;
+
+    private static ExecutorService sProbeExecutor;
+
+    protected List<LocationHubAdapterDescriptor> mDescriptors;
     private Context mContext;
+    private AdapterAvailabilityCache mAvailabilityCache;
+    private long mProbeTimeout = DEFAULT_PROBE_TIMEOUT;
+
+    private volatile long mLastResolutionTime = -1;
+    private volatile int mLastProbeCount;
 
     public DefaultLocationHubAdapterResolver(Context context) {
-        mLocationAdapters = new ArrayList<LocationHubAdapter>();
+        mDescriptors = new ArrayList<LocationHubAdapterDescriptor>();
         mContext = context;
+        mAvailabilityCache = new AdapterAvailabilityCache(context);
+    }
+
+    @Override
+    public List<LocationHubAdapterDescriptor> getDescriptorList() {
+        return mDescriptors;
     }
 
+    /**
+     * Returns a live view of the registered adapters. Adapter instances added to this list are
+     * wrapped with {@link net.frakbot.android.location.LocationHubAdapterDescriptor#of(net.frakbot.android.location.LocationHubAdapter)},
+     * while reading it instantiates the described adapters.
+     */
     @Override
+    @Deprecated
     public List<LocationHubAdapter> getAdapterList() {
-        return mLocationAdapters;
+        return new AbstractList<LocationHubAdapter>() {
+            @Override
+            public LocationHubAdapter get(int location) {
+                return mDescriptors.get(location).getAdapter();
+            }
+
+            @Override
+            public int size() {
+                return mDescriptors.size();
+            }
+
+            @Override
+            public void add(int location, LocationHubAdapter adapter) {
+                mDescriptors.add(location, LocationHubAdapterDescriptor.of(adapter));
+            }
+
+            @Override
+            public LocationHubAdapter set(int location, LocationHubAdapter adapter) {
+                return mDescriptors.set(location, LocationHubAdapterDescriptor.of(adapter)).getAdapter();
+            }
+
+            @Override
+            public LocationHubAdapter remove(int location) {
+                return mDescriptors.remove(location).getAdapter();
+            }
+        };
+    }
+
+    /**
+     * Sets how long the resolver waits for the availability probe of each adapter.
+     *
+     * @param millis The probe timeout, in milliseconds.
+     */
+    public void setProbeTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Probe timeout cannot be less than 0.");
+        }
+        mProbeTimeout = millis;
+    }
+
+    /**
+     * Forgets the cached availability of all of the adapters, so that they are probed again on
+     * the next {@link DefaultLocationHubAdapterResolver#getAdapter()} call.
+     */
+    public void refresh() {
+        mAvailabilityCache.clear();
+    }
+
+    /**
+     * Returns how long the last {@link DefaultLocationHubAdapterResolver#getAdapter()} call took.
+     *
+     * @return the resolution time in nanoseconds, or -1 if no adapter has been resolved yet.
+     */
+    public long getLastResolutionTime() {
+        return mLastResolutionTime;
+    }
+
+    /**
+     * Returns how many adapters had to be probed by the last {@link DefaultLocationHubAdapterResolver#getAdapter()}
+     * call, because their availability was not cached.
+     *
+     * @return the number of probed adapters.
+     */
+    public int getLastProbeCount() {
+        return mLastProbeCount;
     }
 
     @Override
     public LocationHubAdapter getAdapter() {
-        for (LocationHubAdapter adapter : mLocationAdapters) {
-            if (adapter.isServiceAvailable(mContext)) {
-                return adapter;
+        long start = System.nanoTime();
+        LocationHubAdapterDescriptor descriptor = resolve(0);
+        LocationHubAdapter adapter = descriptor != null ? descriptor.getAdapter() : null;
+        mLastResolutionTime = System.nanoTime() - start;
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, String.format("Resolved %s in %.3f ms, %d adapters probed",
+                    descriptor != null ? descriptor.getAdapterName() : "no adapter",
+                    mLastResolutionTime / 1000000.0, mLastProbeCount));
+        }
+        return adapter;
+    }
+
+    /**
+     * Returns the first available adapter registered after the given one. The availability of the
+     * failed adapter itself is not changed, so it is still resolved by {@link DefaultLocationHubAdapterResolver#getAdapter()}
+     * and can be retried later.
+     */
+    @Override
+    public LocationHubAdapter getFallbackAdapter(LocationHubAdapter failedAdapter) {
+        int failedIndex = -1;
+        for (int i = 0; i < mDescriptors.size() && failedIndex < 0; i++) {
+            LocationHubAdapterDescriptor descriptor = mDescriptors.get(i);
+            if (descriptor.isAdapterCreated() && descriptor.getAdapter() == failedAdapter) {
+                failedIndex = i;
+            }
+        }
+        if (failedIndex < 0) {
+            return null;
+        }
+        LocationHubAdapterDescriptor descriptor = resolve(failedIndex + 1);
+        return descriptor != null ? descriptor.getAdapter() : null;
+    }
+
+    /**
+     * Picks the descriptor of the first available adapter, starting from the given position.
+     *
+     * @param fromIndex The position of the first candidate descriptor.
+     * @return The chosen {@link net.frakbot.android.location.LocationHubAdapterDescriptor}, or null if none is available.
+     */
+    private LocationHubAdapterDescriptor resolve(int fromIndex) {
+        int count = mDescriptors.size();
+        Boolean[] availability = new Boolean[count];
+        for (int i = fromIndex; i < count; i++) {
+            availability[i] = mAvailabilityCache.get(mDescriptors.get(i));
+        }
+
+        // Probe all of the unknown adapters at once, then pick the first available one in order
+        List<Future<Boolean>> probes = new ArrayList<Future<Boolean>>(count);
+        int probeCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (i >= fromIndex && availability[i] == null) {
+                probes.add(probe(mDescriptors.get(i)));
+                probeCount++;
+            } else {
+                probes.add(null);
             }
         }
-        return null;
+        mLastProbeCount = probeCount;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mProbeTimeout);
+        LocationHubAdapterDescriptor chosenDescriptor = null;
+        for (int i = fromIndex; i < count && chosenDescriptor == null; i++) {
+            if (probes.get(i) != null) {
+                availability[i] = awaitProbe(mDescriptors.get(i), probes.get(i), deadline);
+            }
+            if (Boolean.TRUE.equals(availability[i])) {
+                chosenDescriptor = mDescriptors.get(i);
+            }
+        }
+        return chosenDescriptor;
+    }
+
+    private Future<Boolean> probe(final LocationHubAdapterDescriptor adapter) {
+        return getProbeExecutor().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                boolean available = adapter.isServiceAvailable(mContext);
+                mAvailabilityCache.put(adapter, available);
+                return available;
+            }
+        });
+    }
+
+    private Boolean awaitProbe(LocationHubAdapterDescriptor adapter, Future<Boolean> probe, long deadline) {
+        try {
+            return probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // A failing probe means the adapter can't be used
+            mAvailabilityCache.put(adapter, false);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static synchronized ExecutorService getProbeExecutor() {
+        if (sProbeExecutor == null) {
+            sProbeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LocationHubAdapterProbe");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sProbeExecutor;
     }
 }
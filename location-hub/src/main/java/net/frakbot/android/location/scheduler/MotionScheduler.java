@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.scheduler;
+
+import android.location.Location;
+
+import net.frakbot.android.location.common.LocationHubRequest;
+
+/**
+ * Estimates the motion state of the device from the recent locations, and adapts the interval and
+ * the priority of the adaptive {@link net.frakbot.android.location.common.LocationHubRequest}s to it.
+ * <p/>
+ * The speed is taken from the locations that have one, and otherwise estimated from the
+ * displacement across the recent locations minus their accuracy, so that jitter doesn't look like
+ * movement. It is then smoothed and classified as still, slow or fast. A faster state is entered
+ * right away, while a slower one has to be confirmed by {@link MotionScheduler#DEFAULT_DOWNGRADE_CONFIRMATIONS}
+ * consecutive locations.
+ * <p/>
+ * Estimating the state never allocates.
+ */
+public class MotionScheduler {
+    public static final int MOTION_STILL = 0;
+    public static final int MOTION_SLOW = 1;
+    public static final int MOTION_FAST = 2;
+
+    /**
+     * Default speed below which the device is considered still, in meters/second.
+     */
+    public static final float DEFAULT_STILL_SPEED = 0.5f;
+
+    /**
+     * Default speed above which the device is considered moving fast, in meters/second.
+     */
+    public static final float DEFAULT_FAST_SPEED = 3;
+
+    public static final int DEFAULT_DOWNGRADE_CONFIRMATIONS = 3;
+
+    private static final int WINDOW = 5;
+    private static final double METERS_PER_DEGREE = 6371009 * Math.PI / 180;
+
+    private final double[] mLatitudes = new double[WINDOW];
+    private final double[] mLongitudes = new double[WINDOW];
+    private final float[] mAccuracies = new float[WINDOW];
+    private final long[] mTimes = new long[WINDOW];
+    private int mHead;
+    private int mCount;
+
+    private float mStillSpeed = DEFAULT_STILL_SPEED;
+    private float mFastSpeed = DEFAULT_FAST_SPEED;
+    private int mDowngradeConfirmations = DEFAULT_DOWNGRADE_CONFIRMATIONS;
+
+    private float mSpeed = Float.NaN;
+    private int mState = MOTION_FAST;
+    private int mPendingState = MOTION_FAST;
+    private int mPendingCount;
+    private long mTransitionCount;
+    private long mLastTransitionTime;
+
+    /**
+     * Sets the speed thresholds between the motion states.
+     *
+     * @param stillSpeed The speed below which the device is still, in meters/second.
+     * @param fastSpeed  The speed above which the device moves fast, in meters/second.
+     * @throws IllegalArgumentException if the thresholds are negative or not in order.
+     */
+    public synchronized void setSpeedThresholds(float stillSpeed, float fastSpeed) throws IllegalArgumentException {
+        if (stillSpeed < 0 || fastSpeed < stillSpeed) {
+            throw new IllegalArgumentException("Speed thresholds must be positive, and the still speed not above the fast one.");
+        }
+        mStillSpeed = stillSpeed;
+        mFastSpeed = fastSpeed;
+    }
+
+    /**
+     * Sets how many consecutive locations have to confirm a slower motion state before it is entered.
+     *
+     * @param confirmations The number of confirmations.
+     * @throws IllegalArgumentException if the number is less than 1.
+     */
+    public synchronized void setDowngradeConfirmations(int confirmations) throws IllegalArgumentException {
+        if (confirmations < 1) {
+            throw new IllegalArgumentException("Downgrade confirmations cannot be less than 1.");
+        }
+        mDowngradeConfirmations = confirmations;
+    }
+
+    /**
+     * Updates the motion estimate with a new {@link android.location.Location}.
+     *
+     * @param location The new {@link android.location.Location}.
+     * @return true if the motion state has changed.
+     */
+    public synchronized boolean onLocation(Location location) {
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        float speed = Float.NaN;
+        if (location.hasSpeed()) {
+            speed = location.getSpeed();
+        } else if (mCount > 0) {
+            int oldest = (mHead - mCount + WINDOW) % WINDOW;
+            double seconds = (location.getTime() - mTimes[oldest]) / 1000.0;
+            if (seconds > 0) {
+                double displacement = distance(location.getLatitude(), location.getLongitude(),
+                        mLatitudes[oldest], mLongitudes[oldest]);
+                double noise = Math.max(accuracy, mAccuracies[oldest]);
+                speed = (float) (Math.max(0, displacement - noise) / seconds);
+            }
+        }
+
+        mLatitudes[mHead] = location.getLatitude();
+        mLongitudes[mHead] = location.getLongitude();
+        mAccuracies[mHead] = accuracy;
+        mTimes[mHead] = location.getTime();
+        mHead = (mHead + 1) % WINDOW;
+        mCount = Math.min(mCount + 1, WINDOW);
+
+        if (Float.isNaN(speed)) {
+            return false;
+        }
+        mSpeed = Float.isNaN(mSpeed) ? speed : (mSpeed + speed) / 2;
+        return updateState(classify(mSpeed), location.getTime());
+    }
+
+    /**
+     * Forgets the recent locations and goes back to the fast state.
+     */
+    public synchronized void reset() {
+        mCount = 0;
+        mSpeed = Float.NaN;
+        mPendingState = MOTION_FAST;
+        mPendingCount = 0;
+        if (mState != MOTION_FAST) {
+            mState = MOTION_FAST;
+            mTransitionCount++;
+        }
+    }
+
+    /**
+     * Returns the current motion state.
+     *
+     * @return one of {@link MotionScheduler#MOTION_STILL}, {@link MotionScheduler#MOTION_SLOW} and
+     * {@link MotionScheduler#MOTION_FAST}.
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * Returns the smoothed speed estimate.
+     *
+     * @return the speed, in meters/second, or {@link java.lang.Float#NaN} if it is not known yet.
+     */
+    public synchronized float getEstimatedSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Returns how many times the motion state has changed.
+     *
+     * @return the number of state transitions.
+     */
+    public synchronized long getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * Returns the time of the location that caused the last state transition.
+     *
+     * @return the UTC time in milliseconds since January 1, 1970, or 0 if the state never changed.
+     */
+    public synchronized long getLastTransitionTime() {
+        return mLastTransitionTime;
+    }
+
+    /**
+     * Returns the interval an adaptive request is served at in the current motion state.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * @return the adapted interval, in milliseconds.
+     */
+    public synchronized long getInterval(LocationHubRequest request) {
+        if (!request.isAdaptive() || mState == MOTION_FAST) {
+            return request.getInterval();
+        } else if (mState == MOTION_SLOW) {
+            return Math.max(request.getInterval(), Math.min(2 * request.getInterval(), request.getStationaryInterval()));
+        }
+        return Math.max(request.getInterval(), request.getStationaryInterval());
+    }
+
+    /**
+     * Returns the priority an adaptive request is served at in the current motion state.
+     * The priority is never tightened.
+     *
+     * @param request The {@link net.frakbot.android.location.common.LocationHubRequest}.
+     * @return the adapted priority.
+     */
+    public synchronized int getPriority(LocationHubRequest request) {
+        if (!request.isAdaptive() || mState != MOTION_STILL || request.getStationaryPriority() == 0) {
+            return request.getPriority();
+        }
+        // Higher priority values are the looser ones
+        return Math.max(request.getPriority(), request.getStationaryPriority());
+    }
+
+    private int classify(float speed) {
+        if (speed < mStillSpeed) {
+            return MOTION_STILL;
+        } else if (speed < mFastSpeed) {
+            return MOTION_SLOW;
+        }
+        return MOTION_FAST;
+    }
+
+    private boolean updateState(int state, long time) {
+        if (state == mState) {
+            mPendingCount = 0;
+            return false;
+        }
+        if (state < mState) {
+            // Slowing down has to be confirmed, to avoid ramping down at every stop
+            if (state != mPendingState) {
+                mPendingState = state;
+                mPendingCount = 0;
+            }
+            if (++mPendingCount < mDowngradeConfirmations) {
+                return false;
+            }
+        }
+        mState = state;
+        mPendingCount = 0;
+        mTransitionCount++;
+        mLastTransitionTime = time;
+        return true;
+    }
+
+    private static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double x = (longitude1 - longitude2) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = latitude1 - latitude2;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+}
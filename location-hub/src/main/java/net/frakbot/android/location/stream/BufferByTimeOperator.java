@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implements {@link net.frakbot.android.location.stream.LocationStream#bufferByTime(long, int)}.
+ * <p/>
+ * It keeps at most one upstream location requested, and stops requesting while a complete list
+ * waits for downstream demand, so it never holds more than two lists.
+ * <p/>
+ * A window is closed by a timer when its timespan elapses, posted on the thread that delivered its
+ * first location, or on the main thread if that one has no {@link android.os.Looper}.
+ */
+class BufferByTimeOperator implements Publisher<List<Location>> {
+    private final LocationStream mUpstream;
+    private final long mTimespan;
+    private final int mMaxSize;
+
+    BufferByTimeOperator(LocationStream upstream, long timespan, int maxSize) {
+        mUpstream = upstream;
+        mTimespan = timespan;
+        mMaxSize = maxSize;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super List<Location>> subscriber) {
+        mUpstream.subscribe(new BufferSubscriber(subscriber));
+    }
+
+    private class BufferSubscriber implements Subscriber<Location>, Subscription, Runnable {
+        private final Subscriber<? super List<Location>> mDownstream;
+        private final AtomicLong mDemand;
+        private final AtomicInteger mWip;
+        private Subscription mUpstream;
+        private volatile Handler mHandler;
+        private volatile Throwable mError;
+        private volatile boolean isCancelled;
+
+        // Guarded by this
+        private ArrayList<Location> mCurrent;
+        private long mCurrentStart;
+        private ArrayList<Location> mReady;
+        private boolean isUpstreamRequested;
+        private boolean isDone;
+        private boolean isTerminated;
+
+        public BufferSubscriber(Subscriber<? super List<Location>> downstream) {
+            mDownstream = downstream;
+            mDemand = new AtomicLong();
+            mWip = new AtomicInteger();
+            mCurrent = newBuffer();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            mUpstream = subscription;
+            mDownstream.onSubscribe(this);
+            requestUpstream();
+        }
+
+        @Override
+        public void onNext(Location location) {
+            long now = SystemClock.elapsedRealtime();
+            boolean isStarted = false;
+            synchronized (this) {
+                isUpstreamRequested = false;
+                if (!mCurrent.isEmpty() && now - mCurrentStart >= mTimespan) {
+                    closeCurrent();
+                }
+                if (mCurrent.isEmpty()) {
+                    mCurrentStart = now;
+                    isStarted = true;
+                }
+                mCurrent.add(location);
+                if (mReady == null && mCurrent.size() >= mMaxSize) {
+                    closeCurrent();
+                    isStarted = false;
+                }
+            }
+            if (isStarted) {
+                scheduleTimeout(mTimespan);
+            }
+            drain();
+            requestUpstream();
+        }
+
+        /**
+         * Closes the current window once its timespan has elapsed, even if no other location arrives.
+         */
+        @Override
+        public void run() {
+            long remaining = -1;
+            synchronized (this) {
+                if (!mCurrent.isEmpty() && !isTerminated) {
+                    remaining = mCurrentStart + mTimespan - SystemClock.elapsedRealtime();
+                }
+            }
+            if (remaining > 0) {
+                // The window was closed and a new one started since this timer was posted
+                scheduleTimeout(remaining);
+                return;
+            }
+            drain();
+            requestUpstream();
+        }
+
+        private void scheduleTimeout(long delay) {
+            Handler handler = mHandler;
+            if (handler == null) {
+                Looper looper = Looper.myLooper();
+                handler = new Handler(looper != null ? looper : Looper.getMainLooper());
+                mHandler = handler;
+            }
+            handler.removeCallbacks(this);
+            handler.postDelayed(this, delay);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            mError = error;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                isDone = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                mError = new IllegalArgumentException(String.format("Request of %d buffers is not an accepted value.", n));
+                cancel();
+                drain();
+                return;
+            }
+            Demand.add(mDemand, n);
+            drain();
+            requestUpstream();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            Handler handler = mHandler;
+            if (handler != null) {
+                handler.removeCallbacks(this);
+            }
+            mUpstream.cancel();
+        }
+
+        /**
+         * Requests the next upstream location, unless one is already requested or a complete
+         * list is waiting for demand.
+         */
+        private void requestUpstream() {
+            synchronized (this) {
+                if (isUpstreamRequested || mReady != null || isDone || isCancelled) {
+                    return;
+                }
+                isUpstreamRequested = true;
+            }
+            mUpstream.request(1);
+        }
+
+        /**
+         * Moves the current list to the ready slot. Must be called while holding the lock, with
+         * the ready slot empty.
+         */
+        private void closeCurrent() {
+            mReady = mCurrent;
+            mCurrent = newBuffer();
+        }
+
+        private ArrayList<Location> newBuffer() {
+            return new ArrayList<Location>(Math.min(mMaxSize, 64));
+        }
+
+        private void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (true) {
+                    Throwable error = mError;
+                    List<Location> buffer = null;
+                    boolean isComplete = false;
+                    synchronized (this) {
+                        if (isTerminated) {
+                            break;
+                        }
+                        if (error != null) {
+                            isTerminated = true;
+                        } else {
+                            if (mReady == null && !mCurrent.isEmpty() && (isDone || mCurrent.size() >= mMaxSize
+                                    || SystemClock.elapsedRealtime() - mCurrentStart >= mTimespan)) {
+                                closeCurrent();
+                            }
+                            if (mReady != null && mDemand.get() > 0) {
+                                buffer = mReady;
+                                mReady = null;
+                            } else if (mReady == null && isDone) {
+                                isTerminated = true;
+                                isComplete = true;
+                            }
+                        }
+                    }
+                    if (error != null) {
+                        if (!isCancelled) {
+                            mUpstream.cancel();
+                        }
+                        mDownstream.onError(error);
+                        break;
+                    }
+                    if (isComplete) {
+                        mDownstream.onComplete();
+                        break;
+                    }
+                    if (buffer == null || isCancelled) {
+                        break;
+                    }
+                    Demand.produced(mDemand);
+                    mDownstream.onNext(buffer);
+                }
+                missed = mWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
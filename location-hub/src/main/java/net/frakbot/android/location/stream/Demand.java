@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helpers for keeping the outstanding demand of a {@link net.frakbot.android.location.stream.Subscription}.
+ */
+final class Demand {
+
+    private Demand() {
+    }
+
+    /**
+     * Adds to the demand, capping it to {@link java.lang.Long#MAX_VALUE}, which means unbounded.
+     *
+     * @return the demand before the addition.
+     */
+    static long add(AtomicLong demand, long n) {
+        while (true) {
+            long current = demand.get();
+            if (current == Long.MAX_VALUE) {
+                return current;
+            }
+            long updated = current + n;
+            if (updated < 0) {
+                updated = Long.MAX_VALUE;
+            }
+            if (demand.compareAndSet(current, updated)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Takes one element off the demand, unless it is unbounded.
+     */
+    static void produced(AtomicLong demand) {
+        while (true) {
+            long current = demand.get();
+            if (current == Long.MAX_VALUE || demand.compareAndSet(current, current - 1)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+
+/**
+ * Implements {@link net.frakbot.android.location.stream.LocationStream#distinctUntilMoved(float)}.
+ */
+class DistinctUntilMovedOperator extends LocationStream {
+    private final LocationStream mUpstream;
+    private final float mDistance;
+
+    DistinctUntilMovedOperator(LocationStream upstream, float distance) {
+        mUpstream = upstream;
+        mDistance = distance;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Location> subscriber) {
+        mUpstream.subscribe(new FilteringSubscriber(subscriber) {
+            // Reused for every distance computation
+            private final float[] mResults = new float[1];
+            private boolean hasLast;
+            private double mLastLatitude;
+            private double mLastLongitude;
+
+            @Override
+            protected boolean accept(Location location) {
+                if (hasLast) {
+                    Location.distanceBetween(mLastLatitude, mLastLongitude,
+                            location.getLatitude(), location.getLongitude(), mResults);
+                    if (mResults[0] < mDistance) {
+                        return false;
+                    }
+                }
+                hasLast = true;
+                mLastLatitude = location.getLatitude();
+                mLastLongitude = location.getLongitude();
+                return true;
+            }
+        });
+    }
+}
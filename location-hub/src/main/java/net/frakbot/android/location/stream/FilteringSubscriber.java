@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+
+/**
+ * Base for the operators that let a location through or drop it, and request a replacement from
+ * upstream for every dropped one so the downstream demand is still honored.
+ */
+abstract class FilteringSubscriber implements Subscriber<Location>, Subscription {
+    private final Subscriber<? super Location> mDownstream;
+    private Subscription mUpstream;
+
+    FilteringSubscriber(Subscriber<? super Location> downstream) {
+        mDownstream = downstream;
+    }
+
+    /**
+     * Decides whether a location is let through. Called for every location, in order.
+     */
+    protected abstract boolean accept(Location location);
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        mUpstream = subscription;
+        mDownstream.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(Location location) {
+        if (accept(location)) {
+            mDownstream.onNext(location);
+        } else {
+            mUpstream.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        mDownstream.onError(error);
+    }
+
+    @Override
+    public void onComplete() {
+        mDownstream.onComplete();
+    }
+
+    @Override
+    public void request(long n) {
+        mUpstream.request(n);
+    }
+
+    @Override
+    public void cancel() {
+        mUpstream.cancel();
+    }
+}
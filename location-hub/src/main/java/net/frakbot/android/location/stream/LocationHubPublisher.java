@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+
+import net.frakbot.android.location.ILocationHub;
+import net.frakbot.android.location.common.LocationHubListener;
+import net.frakbot.android.location.common.LocationHubRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The source {@link net.frakbot.android.location.stream.LocationStream} of the locations of an
+ * {@link net.frakbot.android.location.ILocationHub}.
+ * <p/>
+ * Every subscriber gets its own registration on the hub, made on its first request. The locations
+ * arriving while the subscriber has no demand are conflated into a single pending one, that is
+ * delivered as soon as it requests more. If a second location arrives before that, the
+ * registration is removed from the hub until the next request, so a subscriber that can't keep
+ * up throttles the source instead of letting locations pile up.
+ */
+public class LocationHubPublisher extends LocationStream {
+    private final ILocationHub mLocationHub;
+    private final LocationHubRequest mRequest;
+
+    /**
+     * Creates a new publisher.
+     *
+     * @param locationHub The {@link net.frakbot.android.location.ILocationHub} to register on.
+     * @param request     The {@link net.frakbot.android.location.common.LocationHubRequest} of the registrations.
+     */
+    public LocationHubPublisher(ILocationHub locationHub, LocationHubRequest request) {
+        mLocationHub = locationHub;
+        mRequest = request;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Location> subscriber) {
+        subscriber.onSubscribe(new HubSubscription(subscriber));
+    }
+
+    private class HubSubscription extends LocationHubListener implements Subscription {
+        private final Subscriber<? super Location> mDownstream;
+        private final AtomicLong mDemand;
+        private final AtomicReference<Location> mPending;
+        private final AtomicInteger mWip;
+        private volatile Throwable mError;
+        private volatile boolean isCancelled;
+        private boolean isRegistered;
+
+        public HubSubscription(Subscriber<? super Location> downstream) {
+            mDownstream = downstream;
+            mDemand = new AtomicLong();
+            mPending = new AtomicReference<Location>();
+            mWip = new AtomicInteger();
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            if (isCancelled) {
+                return;
+            }
+            if (mPending.getAndSet(location) != null) {
+                // The subscriber is not keeping up
+                pause();
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (isCancelled) {
+                return;
+            }
+            if (n <= 0) {
+                mError = new IllegalArgumentException(String.format("Request of %d locations is not an accepted value.", n));
+                drain();
+                return;
+            }
+            Demand.add(mDemand, n);
+            resume();
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            unregister();
+            mPending.set(null);
+        }
+
+        private synchronized void pause() {
+            // Checked under the lock, so a concurrent request can't be left without a registration
+            if (mDemand.get() == 0) {
+                unregister();
+            }
+        }
+
+        private synchronized void resume() {
+            if (isRegistered || isCancelled) {
+                return;
+            }
+            try {
+                mLocationHub.requestLocationUpdates(mRequest, this);
+                isRegistered = true;
+            } catch (RuntimeException e) {
+                mError = e;
+            }
+        }
+
+        private synchronized void unregister() {
+            if (isRegistered) {
+                mLocationHub.removeLocationUpdates(this);
+                isRegistered = false;
+            }
+        }
+
+        /**
+         * Delivers the pending location while there is demand. Only one thread at a time runs the
+         * loop, the others just make it go round once more.
+         */
+        private void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!isCancelled) {
+                    Throwable error = mError;
+                    if (error != null) {
+                        cancel();
+                        mDownstream.onError(error);
+                        break;
+                    }
+                    if (mDemand.get() == 0) {
+                        break;
+                    }
+                    Location location = mPending.getAndSet(null);
+                    if (location == null) {
+                        break;
+                    }
+                    Demand.produced(mDemand);
+                    mDownstream.onNext(location);
+                }
+                missed = mWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+
+import java.util.List;
+
+/**
+ * A {@link net.frakbot.android.location.stream.Publisher} of {@link android.location.Location}s,
+ * that can be composed with operators. Every operator returns a new stream, and each
+ * {@link net.frakbot.android.location.stream.Subscriber} of the resulting stream gets its own
+ * chain of operator state.
+ * <p/>
+ * The operators keep a fixed amount of state per subscription and don't allocate per location,
+ * and they forward the demand upstream, so a subscriber that stops requesting ends up throttling
+ * the source instead of making locations pile up.
+ */
+public abstract class LocationStream implements Publisher<Location> {
+
+    /**
+     * Lets through at most one location per period: the first one that arrives after the period
+     * since the previous one expired. The dropped locations are replaced by requesting more from upstream.
+     *
+     * @param period The period, in milliseconds.
+     * @return The sampled {@link net.frakbot.android.location.stream.LocationStream}.
+     * @throws IllegalArgumentException if the period is less than zero.
+     */
+    public LocationStream sample(long period) throws IllegalArgumentException {
+        if (period < 0) {
+            throw new IllegalArgumentException("Sample period cannot be less than 0.");
+        }
+        return new SampleOperator(this, period);
+    }
+
+    /**
+     * Drops the locations closer than a distance to the last location let through.
+     *
+     * @param distance The distance, in meters.
+     * @return The filtered {@link net.frakbot.android.location.stream.LocationStream}.
+     * @throws IllegalArgumentException if the distance is less than zero.
+     */
+    public LocationStream distinctUntilMoved(float distance) throws IllegalArgumentException {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance cannot be less than 0.");
+        }
+        return new DistinctUntilMovedOperator(this, distance);
+    }
+
+    /**
+     * Collects the locations into lists spanning a time window, or holding a maximum number of
+     * locations, whichever comes first. A window is closed as soon as its time elapses, even if no
+     * other location arrives.
+     * <p/>
+     * The demand is counted in lists. While a complete list waits for demand, at most one more
+     * location is requested from upstream.
+     *
+     * @param timespan The time window, in milliseconds.
+     * @param maxSize  The maximum number of locations in a list.
+     * @return The {@link net.frakbot.android.location.stream.Publisher} of the lists.
+     * @throws IllegalArgumentException if the timespan is less than 0, or the size is less than 1.
+     */
+    public Publisher<List<Location>> bufferByTime(long timespan, int maxSize) throws IllegalArgumentException {
+        if (timespan < 0) {
+            throw new IllegalArgumentException("Buffer timespan cannot be less than 0.");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Buffer size cannot be less than 1.");
+        }
+        return new BufferByTimeOperator(this, timespan, maxSize);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+/**
+ * A provider of a potentially unbounded number of elements, published to the
+ * {@link net.frakbot.android.location.stream.Subscriber}s according to the demand they signal.
+ * <p/>
+ * Modelled on the Reactive Streams specification, which can't be depended upon on the platform
+ * versions the library supports.
+ *
+ * @param <T> The type of the published elements.
+ */
+public interface Publisher<T> {
+    /**
+     * Starts publishing to a {@link net.frakbot.android.location.stream.Subscriber}. Nothing is
+     * published until the subscriber requests it through its
+     * {@link net.frakbot.android.location.stream.Subscription}.
+     *
+     * @param subscriber The {@link net.frakbot.android.location.stream.Subscriber}.
+     */
+    public abstract void subscribe(Subscriber<? super T> subscriber);
+}
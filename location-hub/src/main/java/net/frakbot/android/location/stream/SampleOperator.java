@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+/**
+ * Implements {@link net.frakbot.android.location.stream.LocationStream#sample(long)}.
+ */
+class SampleOperator extends LocationStream {
+    private final LocationStream mUpstream;
+    private final long mPeriod;
+
+    SampleOperator(LocationStream upstream, long period) {
+        mUpstream = upstream;
+        mPeriod = period;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Location> subscriber) {
+        mUpstream.subscribe(new FilteringSubscriber(subscriber) {
+            private long mLastTime = -1;
+
+            @Override
+            protected boolean accept(Location location) {
+                long now = SystemClock.elapsedRealtime();
+                if (mLastTime >= 0 && now - mLastTime < mPeriod) {
+                    return false;
+                }
+                mLastTime = now;
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+/**
+ * Receives the elements of a {@link net.frakbot.android.location.stream.Publisher}. The calls to
+ * a subscriber are never concurrent, but they can come from different threads.
+ *
+ * @param <T> The type of the received elements.
+ */
+public interface Subscriber<T> {
+    /**
+     * Called once, before any other call, with the {@link net.frakbot.android.location.stream.Subscription}
+     * to request elements through.
+     *
+     * @param subscription The {@link net.frakbot.android.location.stream.Subscription}.
+     */
+    public abstract void onSubscribe(Subscription subscription);
+
+    /**
+     * Called with an element, never more times than the requested ones.
+     *
+     * @param element The element.
+     */
+    public abstract void onNext(T element);
+
+    /**
+     * Called when the stream terminates with an error. No other call follows.
+     *
+     * @param error The {@link java.lang.Throwable}.
+     */
+    public abstract void onError(Throwable error);
+
+    /**
+     * Called when the stream terminates normally. No other call follows.
+     */
+    public abstract void onComplete();
+}
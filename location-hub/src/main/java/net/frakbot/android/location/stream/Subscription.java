@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.frakbot.android.location.stream;
+
+/**
+ * The link between a {@link net.frakbot.android.location.stream.Publisher} and one of its
+ * {@link net.frakbot.android.location.stream.Subscriber}s, through which the subscriber signals its
+ * demand. It can be called from any thread, including from within the subscriber callbacks.
+ */
+public interface Subscription {
+    /**
+     * Adds to the number of elements the subscriber is ready to receive.
+     *
+     * @param n The number of elements, {@link java.lang.Long#MAX_VALUE} for an unbounded demand.
+     *          A non positive number terminates the stream with an {@link java.lang.IllegalArgumentException}.
+     */
+    public abstract void request(long n);
+
+    /**
+     * Stops the publishing to the subscriber, and releases the resources held for it.
+     */
+    public abstract void cancel();
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.usage;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free usage counters of a listener, an adapter or a provider: how long it has been subscribed
+ * at each priority, how many locations it delivered, how many platform registrations it made and
+ * how many times it connected and disconnected.
+ * <p/>
+ * The event counters are atomic and never block, so they can be kept on the location delivery path.
+ * Active time only changes when subscriptions start and stop, and it is accounted under a lock.
+ * Several subscriptions can be active at once: the time is accounted once, at the tightest active
+ * priority, since that is what drives the power cost. Reading the counters takes a
+ * {@link net.frakbot.android.location.usage.UsageSnapshot}, optionally resetting them to start a
+ * new reporting window.
+ */
+public class UsageCounters {
+    /**
+     * Number of active time buckets: one per priority value, plus one for requests without a priority.
+     */
+    static final int BUCKETS = 7;
+    static final int BASE_PRIORITY = 100;
+
+    private final long[] mActiveTimes;
+    private final int[] mActiveCounts;
+    private long mLastAccrualTime;
+
+    private final AtomicLong mDeliveredCount;
+    private final AtomicLong mRegistrationCount;
+    private final AtomicLong mConnectCount;
+    private final AtomicLong mDisconnectCount;
+    private final AtomicLong mWindowStart;
+
+    public UsageCounters() {
+        mActiveTimes = new long[BUCKETS];
+        mActiveCounts = new int[BUCKETS];
+        mDeliveredCount = new AtomicLong();
+        mRegistrationCount = new AtomicLong();
+        mConnectCount = new AtomicLong();
+        mDisconnectCount = new AtomicLong();
+        mWindowStart = new AtomicLong(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Records the start of a subscription at a priority.
+     *
+     * @param priority The priority of the subscription.
+     */
+    public synchronized void startActive(int priority) {
+        accrue(SystemClock.elapsedRealtime());
+        mActiveCounts[getBucket(priority)]++;
+    }
+
+    /**
+     * Records the end of a subscription at a priority.
+     *
+     * @param priority The priority the subscription was started with.
+     */
+    public synchronized void stopActive(int priority) {
+        accrue(SystemClock.elapsedRealtime());
+        int bucket = getBucket(priority);
+        if (mActiveCounts[bucket] > 0) {
+            mActiveCounts[bucket]--;
+        }
+    }
+
+    public void onDelivered() {
+        mDeliveredCount.incrementAndGet();
+    }
+
+    public void onRegistered() {
+        mRegistrationCount.incrementAndGet();
+    }
+
+    public void onConnected() {
+        mConnectCount.incrementAndGet();
+    }
+
+    public void onDisconnected() {
+        mDisconnectCount.incrementAndGet();
+    }
+
+    /**
+     * Takes a snapshot of the counters. The ongoing active period, if any, is included up to now.
+     *
+     * @param reset true to reset the counters and start a new reporting window.
+     * @return The {@link net.frakbot.android.location.usage.UsageSnapshot} of the counters.
+     */
+    public UsageSnapshot snapshot(boolean reset) {
+        long now = SystemClock.elapsedRealtime();
+        long windowStart = reset ? mWindowStart.getAndSet(now) : mWindowStart.get();
+        long[] activeTimes = new long[BUCKETS];
+        synchronized (this) {
+            accrue(now);
+            System.arraycopy(mActiveTimes, 0, activeTimes, 0, BUCKETS);
+            if (reset) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    mActiveTimes[i] = 0;
+                }
+            }
+        }
+        return new UsageSnapshot(windowStart, now, activeTimes,
+                reset ? mDeliveredCount.getAndSet(0) : mDeliveredCount.get(),
+                reset ? mRegistrationCount.getAndSet(0) : mRegistrationCount.get(),
+                reset ? mConnectCount.getAndSet(0) : mConnectCount.get(),
+                reset ? mDisconnectCount.getAndSet(0) : mDisconnectCount.get());
+    }
+
+    /**
+     * Adds the time elapsed since the last accrual to the tightest active priority, if any.
+     * Must be called while holding the counters lock.
+     */
+    private void accrue(long now) {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mActiveCounts[i] > 0) {
+                mActiveTimes[i] += now - mLastAccrualTime;
+                break;
+            }
+        }
+        mLastAccrualTime = now;
+    }
+
+    /**
+     * Maps a priority to its active time bucket.
+     */
+    static int getBucket(int priority) {
+        int bucket = priority - BASE_PRIORITY;
+        return bucket >= 0 && bucket < BUCKETS - 1 ? bucket : BUCKETS - 1;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Frakbot (Francesco Pontillo, Sebastiano Poggi)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.frakbot.android.location.usage;
+
+/**
+ * Immutable snapshot of {@link net.frakbot.android.location.usage.UsageCounters} over a reporting window.
+ */
+public class UsageSnapshot {
+    private final long mWindowStart;
+    private final long mWindowEnd;
+    private final long[] mActiveTimes;
+    private final long mDeliveredCount;
+    private final long mRegistrationCount;
+    private final long mConnectCount;
+    private final long mDisconnectCount;
+
+    UsageSnapshot(long windowStart, long windowEnd, long[] activeTimes, long deliveredCount,
+                  long registrationCount, long connectCount, long disconnectCount) {
+        mWindowStart = windowStart;
+        mWindowEnd = windowEnd;
+        mActiveTimes = activeTimes;
+        mDeliveredCount = deliveredCount;
+        mRegistrationCount = registrationCount;
+        mConnectCount = connectCount;
+        mDisconnectCount = disconnectCount;
+    }
+
+    /**
+     * Returns the start of the reporting window.
+     *
+     * @return the time in milliseconds of {@link android.os.SystemClock#elapsedRealtime()}.
+     */
+    public long getWindowStart() {
+        return mWindowStart;
+    }
+
+    /**
+     * Returns the end of the reporting window, that is when the snapshot was taken.
+     *
+     * @return the time in milliseconds of {@link android.os.SystemClock#elapsedRealtime()}.
+     */
+    public long getWindowEnd() {
+        return mWindowEnd;
+    }
+
+    /**
+     * Returns how long the subscription was active at a priority during the window.
+     *
+     * @param priority A priority constant of {@link net.frakbot.android.location.common.LocationHubRequest},
+     *                 or 0 for requests without a priority.
+     * @return the active time, in milliseconds.
+     */
+    public long getActiveTime(int priority) {
+        return mActiveTimes[UsageCounters.getBucket(priority)];
+    }
+
+    /**
+     * Returns how long the subscription was active at any priority during the window.
+     *
+     * @return the active time, in milliseconds.
+     */
+    public long getTotalActiveTime() {
+        long total = 0;
+        for (long activeTime : mActiveTimes) {
+            total += activeTime;
+        }
+        return total;
+    }
+
+    public long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    public long getRegistrationCount() {
+        return mRegistrationCount;
+    }
+
+    public long getConnectCount() {
+        return mConnectCount;
+    }
+
+    public long getDisconnectCount() {
+        return mDisconnectCount;
+    }
+
+    @Override
+    public String toString() {
+        return "UsageSnapshot{window=" + (mWindowEnd - mWindowStart) + "ms"
+                + ", active=" + getTotalActiveTime() + "ms"
+                + ", delivered=" + mDeliveredCount
+                + ", registrations=" + mRegistrationCount
+                + ", connects=" + mConnectCount
+                + ", disconnects=" + mDisconnectCount + "}";
+    }
+}